@@ -0,0 +1,185 @@
+package eu.sqooss.impl.service.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.osgi.framework.BundleContext;
+
+import eu.sqooss.service.cache.CacheService;
+import eu.sqooss.service.cache.CacheStats;
+import eu.sqooss.service.logging.Logger;
+
+public class CacheServiceImpl implements CacheService {
+
+    public static final String CACHE_IMPL = "eu.sqooss.service.cache.impl";
+    
+    private static final String LEGACY_PACKAGE = "eu.sqooss.service.cache.";
+    
+    private static List<Class<? extends CacheService>> impls;
+    
+    static {
+        impls = new ArrayList<Class<? extends CacheService>>();
+        impls.add(OnDiskCache.class);
+        impls.add(InMemoryCache.class);
+        impls.add(TieredCache.class);
+    }
+  
+    private CacheService c;
+    private BundleContext bc;
+    private Logger log;
+    
+    public CacheServiceImpl() {}
+    
+    @Override
+    public byte[] get(String key) {
+        return c.get(key);
+    }
+    
+    /*
+     * The streaming methods delegate to the configured implementation.
+     * Implementations that do not override them get the default behaviour,
+     * based on get() and set().
+     */
+    
+    @Override
+    public InputStream getStream(String key) {
+        if (c != null)
+            return c.getStream(key);
+
+        byte[] buff = get(key);
+        
+        if (buff == null)
+            return null;
+        
+        ByteArrayInputStream bais = new ByteArrayInputStream(buff);
+        return bais;
+    }
+
+    @Override
+    public ByteBuffer getBuffer(String key) {
+        if (c != null)
+            return c.getBuffer(key);
+
+        byte[] buff = get(key);
+
+        if (buff == null)
+            return null;
+
+        return ByteBuffer.wrap(buff).asReadOnlyBuffer();
+    }
+
+    @Override
+    public long transferTo(String key, WritableByteChannel target)
+        throws IOException {
+        if (c != null)
+            return c.transferTo(key, target);
+
+        ByteBuffer buff = getBuffer(key);
+
+        if (buff == null)
+            return -1;
+
+        long written = 0;
+        while (buff.hasRemaining())
+            written += target.write(buff);
+        return written;
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        c.set(key, data);
+    }
+
+    @Override
+    public void setStream(String key, InputStream in) {
+        if (c != null) {
+            c.setStream(key, in);
+            return;
+        }
+
+        try {
+            int nRead;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] data = new byte[4096];
+
+            while ((nRead = in.read(data, 0, data.length)) != -1) {
+              buffer.write(data, 0, nRead);
+            }
+
+            buffer.flush();            
+            set(key, buffer.toByteArray());
+            
+        } catch (IOException e) {
+            if (log != null)
+                log.error("Cannot store key " + key + " Error:" + e.getMessage());
+        }
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return c.getStats();
+    }
+
+    @Override
+    public boolean startUp() {
+        String impl = System.getProperty(CACHE_IMPL);
+        
+        if (impl == null)
+            impl = OnDiskCache.class.getName();
+        
+        /* Implementations used to live in the service package */
+        if (impl.startsWith(LEGACY_PACKAGE)) {
+            String moved = CacheServiceImpl.class.getName().replace(
+                    CacheServiceImpl.class.getSimpleName(), "") + 
+                impl.substring(LEGACY_PACKAGE.length());
+            log.warn("Cache implementation " + impl + " has moved to " 
+                    + moved + ", please update property " + CACHE_IMPL);
+            impl = moved;
+        }
+        
+        c = load(impl);
+        
+        if (c == null && !impl.equals(OnDiskCache.class.getName())) {
+            log.warn("Falling back to cache implementation " 
+                    + OnDiskCache.class.getName());
+            c = load(OnDiskCache.class.getName());
+        }
+        
+        return c != null;
+    }
+    
+    private CacheService load(String impl) {
+        try {
+            Class clazz = Thread.currentThread().getContextClassLoader().loadClass(impl);
+            return (CacheService) clazz.newInstance();
+        } catch (ClassNotFoundException e) {
+            log.error("Cannot load cache implementation:" + impl);
+        } catch (InstantiationException e) {
+            log.error("Cannot initialize cache implementation:" + impl + " Error:" + e.getMessage());
+        } catch (IllegalAccessException e) {
+            log.error("Cannot initialize cache implementation:" + impl + " Error:" + e.getMessage());
+        } catch (ClassCastException e) {
+            log.error("Class " + impl + " is not a cache implementation");
+        }
+        return null;
+    }
+
+    @Override
+    public void shutDown() {
+        if (c != null)
+            c.shutDown();
+        c = null;
+    }
+
+    @Override
+    public void setInitParams(BundleContext bc, Logger l) {
+       this.bc = bc;
+       this.log = l;
+    }   
+}
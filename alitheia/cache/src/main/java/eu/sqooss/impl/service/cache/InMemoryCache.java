@@ -0,0 +1,259 @@
+package eu.sqooss.impl.service.cache;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import eu.sqooss.service.cache.CacheStats;
+
+/**
+ * Memory based implementation of the cache service, bounded by the total
+ * size of the cached values. The key space is split in segments, each one
+ * with its own lock and an equal share of the size budget. Within a
+ * segment, entries are evicted in segmented LRU order: new entries start
+ * in a probation area and are promoted to a protected area, which takes
+ * up to 80% of the segment, when they are read again. Entries that are
+ * only set once, such as the contents of a file that is scanned a single
+ * time, are therefore evicted before frequently read ones. Values that
+ * are larger than a segment are not stored, and are counted as rejected.
+ * <br/>
+ * Values are copied when they are set and when they are returned by
+ * {@link #get(String)}, so callers cannot modify the cached copy. The
+ * buffers and streams returned by the other methods are read-only views of
+ * the cached value, and do not copy it.
+ *
+ * Accepts the following system properties:
+ *
+ *  <dl>
+ *      <dt>eu.sqooss.service.cache.mem.size</dt>
+ *      <dd>
+ *          The maximum number of bytes to keep in memory. Defaults to 1/8
+ *          of the maximum heap size.
+ *      </dd>
+ *      <dt>eu.sqooss.service.cache.mem.ttl</dt>
+ *      <dd>
+ *          Number of seconds after which an entry expires. Defaults to 0,
+ *          entries never expire.
+ *      </dd>
+ * </dl>
+ */
+public class InMemoryCache extends CacheServiceImpl {
+
+    public static final String CACHE_SIZE = "eu.sqooss.service.cache.mem.size";
+    public static final String CACHE_TTL = "eu.sqooss.service.cache.mem.ttl";
+
+    /** Approximate memory used by an entry besides its key and value */
+    static final int ENTRY_OVERHEAD = 96;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final long ttl;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public InMemoryCache() {
+        this(Long.getLong(CACHE_SIZE, Runtime.getRuntime().maxMemory() / 8),
+                Long.getLong(CACHE_TTL, 0) * 1000);
+    }
+
+    /**
+     * @param maxSize Maximum number of bytes to keep in memory
+     * @param ttl Milliseconds after which an entry expires, 0 for never
+     */
+    public InMemoryCache(long maxSize, long ttl) {
+        if (maxSize <= 0)
+            throw new IllegalArgumentException("Invalid cache size:" + maxSize);
+        this.ttl = ttl * 1000000;
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment(Math.max(1, maxSize / SEGMENTS));
+    }
+
+    @Override
+    public byte[] get(String key) {
+        byte[] value = lookup(key);
+        return (value == null) ? null : value.clone();
+    }
+
+    @Override
+    public ByteBuffer getBuffer(String key) {
+        byte[] value = lookup(key);
+        return (value == null) ? null
+                : ByteBuffer.wrap(value).asReadOnlyBuffer();
+    }
+
+    @Override
+    public InputStream getStream(String key) {
+        ByteBuffer value = getBuffer(key);
+        return (value == null) ? null : new ByteBufferInputStream(value);
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        segmentFor(key).set(key, data.clone());
+    }
+
+    /**
+     * Drop the value of key, if it is cached.
+     */
+    void remove(String key) {
+        segmentFor(key).remove(key);
+    }
+
+    /*
+     * Get the stored value of key, which must not be handed out writable,
+     * and count the lookup.
+     */
+    private byte[] lookup(String key) {
+        byte[] value = segmentFor(key).get(key);
+        if (value == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return value;
+    }
+
+    @Override
+    public CacheStats getStats() {
+        long entries = 0, size = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                entries += s.probation.size() + s.protect.size();
+                size += s.probationSize + s.protectSize;
+            }
+        }
+        return new CacheStats(hits.get(), misses.get(), evictions.get(),
+                rejected.get(), entries, size,
+                Collections.<String, CacheStats>emptyMap());
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private static class Entry {
+        final byte[] value;
+        final int weight;
+        final long expires;
+
+        Entry(String key, byte[] value, long expires) {
+            this.value = value;
+            this.weight = value.length + 2 * key.length() + ENTRY_OVERHEAD;
+            this.expires = expires;
+        }
+    }
+
+    private class Segment {
+        final long maxSize;
+        final long maxProtectSize;
+
+        /* Both in LRU order, the eldest entry is evicted or demoted first */
+        final LinkedHashMap<String, Entry> probation =
+            new LinkedHashMap<String, Entry>(64, 0.75f, true);
+        final LinkedHashMap<String, Entry> protect =
+            new LinkedHashMap<String, Entry>(64, 0.75f, true);
+        long probationSize = 0;
+        long protectSize = 0;
+
+        Segment(long maxSize) {
+            this.maxSize = maxSize;
+            this.maxProtectSize = maxSize * 4 / 5;
+        }
+
+        synchronized byte[] get(String key) {
+            Entry e = protect.get(key);
+            if (e != null) {
+                if (expired(e)) {
+                    protect.remove(key);
+                    protectSize -= e.weight;
+                    evictions.incrementAndGet();
+                    return null;
+                }
+                return e.value;
+            }
+
+            e = probation.remove(key);
+            if (e == null)
+                return null;
+            probationSize -= e.weight;
+
+            if (expired(e)) {
+                evictions.incrementAndGet();
+                return null;
+            }
+
+            /* Read twice, promote and make room by demoting old entries */
+            protect.put(key, e);
+            protectSize += e.weight;
+            Iterator<Map.Entry<String, Entry>> i = protect.entrySet().iterator();
+            while (protectSize > maxProtectSize && i.hasNext()) {
+                Map.Entry<String, Entry> eldest = i.next();
+                if (eldest.getValue() == e)
+                    break;
+                i.remove();
+                protectSize -= eldest.getValue().weight;
+                probation.put(eldest.getKey(), eldest.getValue());
+                probationSize += eldest.getValue().weight;
+            }
+            return e.value;
+        }
+
+        synchronized void set(String key, byte[] value) {
+            Entry old = protect.remove(key);
+            if (old != null)
+                protectSize -= old.weight;
+            old = probation.remove(key);
+            if (old != null)
+                probationSize -= old.weight;
+
+            Entry e = new Entry(key, value,
+                    (ttl > 0) ? System.nanoTime() + ttl : 0);
+            if (e.weight > maxSize) {
+                rejected.incrementAndGet();
+                return;
+            }
+
+            probation.put(key, e);
+            probationSize += e.weight;
+            evict();
+        }
+
+        synchronized void remove(String key) {
+            Entry e = protect.remove(key);
+            if (e != null)
+                protectSize -= e.weight;
+            e = probation.remove(key);
+            if (e != null)
+                probationSize -= e.weight;
+        }
+
+        private void evict() {
+            while (probationSize + protectSize > maxSize) {
+                LinkedHashMap<String, Entry> from =
+                    probation.isEmpty() ? protect : probation;
+                Iterator<Entry> i = from.values().iterator();
+                Entry eldest = i.next();
+                i.remove();
+                if (from == probation)
+                    probationSize -= eldest.weight;
+                else
+                    protectSize -= eldest.weight;
+                evictions.incrementAndGet();
+            }
+        }
+
+        private boolean expired(Entry e) {
+            return e.expires != 0 && System.nanoTime() - e.expires > 0;
+        }
+    }
+}
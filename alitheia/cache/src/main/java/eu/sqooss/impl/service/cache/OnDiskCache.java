@@ -0,0 +1,794 @@
+package eu.sqooss.impl.service.cache;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import eu.sqooss.service.cache.CacheStats;
+import eu.sqooss.service.logging.Logger;
+
+/**
+ * Disk based implementation of the cache service. Values are appended to
+ * large segment files and located through an in-memory index from key to
+ * segment, offset and length, so a lookup is a single positional read.
+ * The index is rebuilt by scanning the segments when the cache is
+ * created, so cached values survive restarts.
+ * <br/>
+ * Each record is stored as
+ * <tt>key length, value length, CRC32, key (UTF-8), value</tt>; a record
+ * that is incomplete or fails its checksum ends the scan of its segment,
+ * which is then truncated.
+ * <br/>
+ * Segments are compacted in the background, oldest first. A segment is
+ * compacted when the cache exceeds its size budget or when most of its
+ * records have been overwritten. The live values of a compacted segment
+ * are copied to the active segment; when the cache is over budget, only
+ * those that were read after the segment was filled are copied (up to
+ * half a segment, most recently read first) and the rest are evicted, an
+ * approximation of LRU order.
+ * <br/>
+ * Large values are not copied to the heap: {@link #getBuffer(String)} and
+ * {@link #getStream(String)} map them read-only from their segment,
+ * {@link #transferTo(String, WritableByteChannel)} copies them from the
+ * segment to the target channel and {@link #setStream(String, InputStream)}
+ * spools the stream to a temporary file in chunks and then copies the
+ * complete record to the active segment.
+ *
+ * Accepts the following system properties:
+ *
+ *  <dl>
+ *      <dt>
+ *          eu.sqooss.service.cache.dir
+ *      </dt>
+ *      <dd>
+ *          The directory to store cache files to
+ *      </dd>
+ *      <dt>
+ *          eu.sqooss.service.cache.disk.size
+ *      </dt>
+ *      <dd>
+ *          The maximum number of bytes to store on disk, 1GB by default
+ *      </dd>
+ *      <dt>
+ *          eu.sqooss.service.cache.disk.segment
+ *      </dt>
+ *      <dd>
+ *          The size of segment files, 64MB by default. At most a quarter
+ *          of the disk size.
+ *      </dd>
+ * </dl>
+ *
+ */
+public class OnDiskCache extends CacheServiceImpl {
+
+    public static final String CACHE_DIR = "eu.sqooss.service.cache.dir";
+    public static final String CACHE_SIZE = "eu.sqooss.service.cache.disk.size";
+    public static final String SEGMENT_SIZE = "eu.sqooss.service.cache.disk.segment";
+
+    private static final long DEFAULT_CACHE_SIZE = 1L << 30;
+    private static final long DEFAULT_SEGMENT_SIZE = 64L << 20;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String STREAM_PREFIX = "stream-";
+    private static final String STREAM_SUFFIX = ".tmp";
+
+    /* Key length, value length, checksum */
+    private static final int HEADER_SIZE = 12;
+
+    /* Values at least this large are mapped instead of read */
+    private static final int MAP_THRESHOLD = 1 << 16;
+
+    /* Buffer size for streaming values to and from segments */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private File dir;
+    private long maxSize;
+    private long segmentSize;
+
+    private Logger log;
+
+    /* Key to value location, the single source of truth for lookups */
+    private final ConcurrentHashMap<String, Location> index =
+        new ConcurrentHashMap<String, Location>();
+
+    /* Segments by id, oldest first. The last one is the active segment */
+    private final ConcurrentSkipListMap<Long, Segment> segments =
+        new ConcurrentSkipListMap<Long, Segment>();
+
+    /* Guarded by this, along with appends */
+    private Segment active;
+
+    /* Logical time, for access ordering */
+    private final AtomicLong clock = new AtomicLong();
+
+    /* Total size of the segment files */
+    private final AtomicLong size = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+    private final ExecutorService compactor =
+        Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "OnDiskCache compactor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+    public OnDiskCache(String cachedir) throws Exception {
+        this(cachedir, Long.getLong(CACHE_SIZE, DEFAULT_CACHE_SIZE),
+                Long.getLong(SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE));
+    }
+
+    public OnDiskCache() throws Exception {
+        this(defaultDir());
+    }
+
+    /**
+     * @param cachedir The directory to store segments to
+     * @param maxSize The maximum number of bytes to store
+     * @param segmentSize The size of each segment file
+     */
+    public OnDiskCache(String cachedir, long maxSize, long segmentSize)
+        throws Exception {
+        if (maxSize <= 0 || segmentSize <= 0)
+            throw new IllegalArgumentException("Invalid cache size:"
+                    + maxSize + " or segment size:" + segmentSize);
+        this.maxSize = maxSize;
+        this.segmentSize = Math.max(1, Math.min(segmentSize, maxSize / 4));
+        initDir(cachedir);
+        load();
+    }
+
+    private static String defaultDir() {
+        String dirpath = System.getProperty(CACHE_DIR);
+
+        if (dirpath == null) {
+            dirpath = System.getProperty("java.io.tmpdir");
+            if (dirpath == null)
+                dirpath = "tmp";
+        }
+        return dirpath;
+    }
+
+    private void initDir(String path) throws Exception {
+        dir = new File(path);
+
+        if (!dir.exists())
+            dir.mkdirs();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        ByteBuffer result = read(key, false);
+        return (result == null) ? null : result.array();
+    }
+
+    @Override
+    public ByteBuffer getBuffer(String key) {
+        ByteBuffer result = read(key, true);
+        return (result == null || result.isReadOnly()) ? result
+                : result.asReadOnlyBuffer();
+    }
+
+    @Override
+    public InputStream getStream(String key) {
+        ByteBuffer result = read(key, true);
+        return (result == null) ? null : new ByteBufferInputStream(result);
+    }
+
+    /*
+     * Read the value of key to a heap buffer that fits it exactly or, if
+     * map is set and the value is large, map it from its segment.
+     */
+    private ByteBuffer read(String key, boolean map) {
+        ByteBuffer result = null;
+        /* Retry once, the value may have been moved by a compaction */
+        for (int i = 0; i < 2 && result == null; i++) {
+            Location loc = index.get(key);
+            if (loc == null)
+                break;
+
+            try {
+                if (map && loc.length >= MAP_THRESHOLD) {
+                    result = loc.segment.channel.map(
+                            FileChannel.MapMode.READ_ONLY, loc.offset,
+                            loc.length);
+                } else {
+                    result = ByteBuffer.allocate(loc.length);
+                    readFully(loc.segment.channel, result, loc.offset);
+                    result.flip();
+                }
+                loc.lastAccess = clock.incrementAndGet();
+            } catch (IOException e) {
+                result = null;
+                /* An interrupted reader closes the channel for everyone */
+                if (loc.segment.reopen())
+                    continue;
+                if (index.get(key) == loc) {
+                    warn("Cannot read key " + key + " An exception occured: "
+                            + e.getMessage());
+                    break;
+                }
+            }
+        }
+
+        if (result == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return result;
+    }
+
+    @Override
+    public long transferTo(String key, WritableByteChannel target)
+        throws IOException {
+        /* Retry once, the value may have been moved by a compaction */
+        for (int i = 0; ; i++) {
+            Location loc = index.get(key);
+            if (loc == null) {
+                misses.incrementAndGet();
+                return -1;
+            }
+
+            long written = 0;
+            try {
+                while (written < loc.length) {
+                    long n = loc.segment.channel.transferTo(
+                            loc.offset + written, loc.length - written, target);
+                    if (n <= 0 && !loc.segment.channel.isOpen())
+                        throw new ClosedChannelException();
+                    written += n;
+                }
+                loc.lastAccess = clock.incrementAndGet();
+                hits.incrementAndGet();
+                return written;
+            } catch (ClosedChannelException e) {
+                /* Only the segment channel can be closed under our feet */
+                if (written > 0 || i > 0 || e instanceof ClosedByInterruptException
+                        || !target.isOpen())
+                    throw e;
+                loc.segment.reopen();
+            }
+        }
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        byte[] k = key.getBytes(UTF8);
+        if (HEADER_SIZE + k.length + data.length > maxSize / 2) {
+            warn("Cannot store key " + key + " Value too large: "
+                    + data.length + " bytes");
+            return;
+        }
+
+        try {
+            synchronized (this) {
+                Location loc = append(k, data, clock.incrementAndGet());
+                retire(index.put(key, loc));
+            }
+        } catch (IOException e) {
+            warn("Cannot store key " + key +
+                    " An exception occured: "+ e.getMessage());
+        }
+
+        if (size.get() > maxSize)
+            scheduleCompaction();
+    }
+
+    @Override
+    public void setStream(String key, InputStream in) {
+        byte[] k = key.getBytes(UTF8);
+        long limit = Math.min(maxSize / 2, Integer.MAX_VALUE);
+        File tmp = null;
+        RandomAccessFile spool = null;
+
+        /*
+         * Spool the complete record to a temporary file first: the header
+         * can only be written after the whole stream has been read, and
+         * appends cannot wait for a slow stream with the lock held.
+         */
+        try {
+            tmp = File.createTempFile(STREAM_PREFIX, STREAM_SUFFIX, dir);
+            spool = new RandomAccessFile(tmp, "rw");
+            FileChannel ch = spool.getChannel();
+
+            CRC32 crc = new CRC32();
+            crc.update(k);
+            long length = HEADER_SIZE + k.length;
+            writeFully(ch, ByteBuffer.wrap(k), HEADER_SIZE);
+
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int n;
+            while ((n = in.read(chunk)) != -1) {
+                if (length + n > limit) {
+                    warn("Cannot store key " + key + " Value too large: more"
+                            + " than " + (length + n) + " bytes");
+                    return;
+                }
+                crc.update(chunk, 0, n);
+                writeFully(ch, ByteBuffer.wrap(chunk, 0, n), length);
+                length += n;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(k.length).putInt((int) length - HEADER_SIZE - k.length);
+            header.putInt((int) crc.getValue());
+            header.flip();
+            writeFully(ch, header, 0);
+
+            synchronized (this) {
+                Location loc = append(ch, 0, (int) length, k.length,
+                        clock.incrementAndGet());
+                retire(index.put(key, loc));
+            }
+        } catch (IOException e) {
+            warn("Cannot store key " + key +
+                    " An exception occured: "+ e.getMessage());
+        } finally {
+            if (spool != null) {
+                try {
+                    spool.close();
+                } catch (IOException e) {
+                    /* Nothing to do */
+                }
+            }
+            if (tmp != null)
+                tmp.delete();
+        }
+
+        if (size.get() > maxSize)
+            scheduleCompaction();
+    }
+
+    @Override
+    public CacheStats getStats() {
+        return new CacheStats(hits.get(), misses.get(), evictions.get(),
+                index.size(), size.get());
+    }
+
+    @Override
+    public void shutDown() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Segment s : segments.values())
+            s.close();
+    }
+
+    /*
+     * Append a record to the active segment, starting a new one if it is
+     * full. Must be called with the lock held.
+     */
+    private Location append(byte[] key, byte[] data, long lastAccess)
+        throws IOException {
+        int recordSize = HEADER_SIZE + key.length + data.length;
+
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(data);
+
+        ByteBuffer b = ByteBuffer.allocate(recordSize);
+        b.putInt(key.length).putInt(data.length).putInt((int) crc.getValue());
+        b.put(key).put(data);
+        b.flip();
+
+        long offset = reserve(recordSize);
+        writeFully(active.channel, b, offset);
+        return appended(offset, key.length, recordSize, lastAccess);
+    }
+
+    /*
+     * Append a complete record, copied as is from another channel, to the
+     * active segment. Must be called with the lock held.
+     */
+    private Location append(FileChannel src, long start, int recordSize,
+            int keyLength, long lastAccess) throws IOException {
+        long offset = reserve(recordSize);
+        FileChannel dst = active.channel;
+        dst.position(offset);
+        long copied = 0;
+        while (copied < recordSize) {
+            long n = src.transferTo(start + copied, recordSize - copied, dst);
+            if (n <= 0)
+                throw new EOFException();
+            copied += n;
+        }
+        return appended(offset, keyLength, recordSize, lastAccess);
+    }
+
+    /* Make room for a record, returns its offset in the active segment */
+    private long reserve(int recordSize) throws IOException {
+        if (active == null
+                || (active.length > 0 && active.length + recordSize > segmentSize))
+            roll();
+        active.reopen();
+        return active.length;
+    }
+
+    /* Account for a record written at offset of the active segment */
+    private Location appended(long offset, int keyLength, int recordSize,
+            long lastAccess) {
+        active.length += recordSize;
+        active.live.addAndGet(recordSize);
+        size.addAndGet(recordSize);
+
+        return new Location(active, offset + HEADER_SIZE + keyLength,
+                recordSize - HEADER_SIZE - keyLength, recordSize, lastAccess);
+    }
+
+    /* Account for a record that is no longer referenced by the index */
+    private void retire(Location loc) {
+        if (loc != null)
+            loc.segment.live.addAndGet(-loc.recordSize);
+    }
+
+    private void roll() throws IOException {
+        long id = segments.isEmpty() ? 1 : segments.lastKey() + 1;
+        if (active != null)
+            active.sealedAt = clock.get();
+        active = new Segment(id, segmentFile(id));
+        segments.put(id, active);
+        scheduleCompaction();
+    }
+
+    private File segmentFile(long id) {
+        return new File(dir, String.format("%s%012d%s", SEGMENT_PREFIX, id,
+                SEGMENT_SUFFIX));
+    }
+
+    private void scheduleCompaction() {
+        if (!compactionScheduled.compareAndSet(false, true))
+            return;
+        try {
+            compactor.execute(new Runnable() {
+                public void run() {
+                    compactionScheduled.set(false);
+                    compact();
+                }
+            });
+        } catch (Exception e) {
+            /* Shut down */
+            compactionScheduled.set(false);
+        }
+    }
+
+    /**
+     * Compact segments until the cache is within its budget and no
+     * segment is mostly garbage. Runs on the compactor thread.
+     */
+    void compact() {
+        while (true) {
+            Segment victim = null;
+            boolean evict = size.get() > maxSize;
+
+            for (Segment s : segments.values()) {
+                if (s == active)
+                    break;
+                if (evict || s.live.get() * 2 < s.length) {
+                    victim = s;
+                    break;
+                }
+            }
+
+            if (victim == null)
+                return;
+
+            try {
+                rewrite(victim, evict);
+            } catch (IOException e) {
+                warn("Cannot compact segment " + victim.file +
+                        " An exception occured: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    /*
+     * Copy the values of a segment that are still referenced by the index
+     * to the active segment, or evict them, and delete the segment.
+     */
+    private void rewrite(Segment seg, boolean evict) throws IOException {
+        final List<Record> live = new ArrayList<Record>();
+        scan(seg, new RecordHandler() {
+            public void record(String key, Location loc) {
+                Location current = index.get(key);
+                if (current != null && current.segment == loc.segment
+                        && current.offset == loc.offset)
+                    live.add(new Record(key, current));
+            }
+        });
+
+        long keep = Long.MAX_VALUE;
+        if (evict) {
+            /* Second chance for values read since the segment was filled */
+            Collections.sort(live, new Comparator<Record>() {
+                public int compare(Record a, Record b) {
+                    long x = a.loc.lastAccess, y = b.loc.lastAccess;
+                    return (x > y) ? -1 : ((x == y) ? 0 : 1);
+                }
+            });
+            keep = seg.length / 2;
+        }
+
+        long kept = 0;
+        for (Record r : live) {
+            if (evict && (r.loc.lastAccess <= seg.sealedAt
+                    || kept + r.loc.recordSize > keep)) {
+                if (index.remove(r.key, r.loc))
+                    evictions.incrementAndGet();
+                continue;
+            }
+
+            synchronized (this) {
+                /* Skip values that were overwritten in the meantime */
+                if (index.get(r.key) != r.loc)
+                    continue;
+                Location moved = append(seg.channel, r.loc.start(),
+                        r.loc.recordSize, r.loc.keyLength(), r.loc.lastAccess);
+                if (!index.replace(r.key, r.loc, moved))
+                    retire(moved);
+            }
+            kept += r.loc.recordSize;
+        }
+
+        segments.remove(seg.id);
+        size.addAndGet(-seg.length);
+        seg.close();
+        if (!seg.file.delete())
+            warn("Cannot delete segment " + seg.file);
+    }
+
+    /*
+     * Rebuild the index from the segments on disk. Later records of a key
+     * override earlier ones.
+     */
+    private void load() throws IOException {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            public boolean accept(File d, String name) {
+                return name.startsWith(SEGMENT_PREFIX)
+                    && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        if (files == null)
+            return;
+        Arrays.sort(files);
+
+        /* Left behind by stores that did not complete */
+        File[] spooled = dir.listFiles(new FilenameFilter() {
+            public boolean accept(File d, String name) {
+                return name.startsWith(STREAM_PREFIX)
+                    && name.endsWith(STREAM_SUFFIX);
+            }
+        });
+        for (File f : spooled)
+            f.delete();
+
+        for (File f : files) {
+            String name = f.getName();
+            long id;
+            try {
+                id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                        name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            Segment seg = new Segment(id, f);
+            seg.length = seg.channel.size();
+            seg.sealedAt = 0;
+            long valid = scan(seg, new RecordHandler() {
+                public void record(String key, Location loc) {
+                    loc.segment.live.addAndGet(loc.recordSize);
+                    retire(index.put(key, loc));
+                }
+            });
+
+            if (valid < seg.length) {
+                warn("Truncating damaged segment " + f + " at " + valid);
+                seg.channel.truncate(valid);
+                seg.length = valid;
+            }
+            segments.put(id, seg);
+            size.addAndGet(seg.length);
+        }
+
+        if (!segments.isEmpty()) {
+            active = segments.lastEntry().getValue();
+            active.sealedAt = Long.MAX_VALUE;
+        }
+        scheduleCompaction();
+    }
+
+    /*
+     * Read the records of a segment in order, up to its current length.
+     * Returns the offset after the last valid record.
+     */
+    private long scan(Segment seg, RecordHandler h) throws IOException {
+        long limit = seg.length;
+        long offset = 0;
+        byte[] chunk = new byte[CHUNK_SIZE];
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(seg.file), 1 << 16));
+        try {
+            while (offset + HEADER_SIZE <= limit) {
+                int klen = in.readInt();
+                int vlen = in.readInt();
+                int checksum = in.readInt();
+                if (klen < 0 || vlen < 0
+                        || offset + HEADER_SIZE + klen + vlen > limit)
+                    break;
+
+                byte[] key = new byte[klen];
+                in.readFully(key);
+
+                /* Values can be large, check them a chunk at a time */
+                CRC32 crc = new CRC32();
+                crc.update(key);
+                for (int left = vlen; left > 0; ) {
+                    int n = Math.min(left, chunk.length);
+                    in.readFully(chunk, 0, n);
+                    crc.update(chunk, 0, n);
+                    left -= n;
+                }
+                if ((int) crc.getValue() != checksum)
+                    break;
+
+                int recordSize = HEADER_SIZE + klen + vlen;
+                h.record(new String(key, UTF8), new Location(seg,
+                        offset + HEADER_SIZE + klen, vlen, recordSize, 0));
+                offset += recordSize;
+            }
+        } catch (EOFException e) {
+            /* Incomplete record at the end */
+        } finally {
+            in.close();
+        }
+        return offset;
+    }
+
+    private static void readFully(FileChannel ch, ByteBuffer b, long pos)
+        throws IOException {
+        while (b.hasRemaining()) {
+            int n = ch.read(b, pos);
+            if (n < 0)
+                throw new EOFException();
+            pos += n;
+        }
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer b, long pos)
+        throws IOException {
+        while (b.hasRemaining())
+            pos += ch.write(b, pos);
+    }
+
+    private void warn(String message) {
+        if (log != null)
+            log.warn(message);
+        else
+            System.err.println(message);
+    }
+
+    private static class Segment {
+        final long id;
+        final File file;
+        volatile FileChannel channel;
+        volatile boolean deleted = false;
+
+        /* Written under the cache lock, read by the compactor */
+        volatile long length;
+
+        /* Size of the records referenced by the index */
+        final AtomicLong live = new AtomicLong();
+
+        /* Logical time at which the segment stopped accepting records */
+        volatile long sealedAt = Long.MAX_VALUE;
+
+        Segment(long id, File file) throws IOException {
+            this.id = id;
+            this.file = file;
+            this.channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        /**
+         * Reopen the channel if it was closed by an interrupted thread.
+         * @return true if the channel was reopened
+         */
+        synchronized boolean reopen() {
+            if (deleted || channel.isOpen())
+                return false;
+            try {
+                channel = new RandomAccessFile(file, "rw").getChannel();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+
+        synchronized void close() {
+            deleted = true;
+            try {
+                channel.close();
+            } catch (IOException e) {
+                /* Nothing to do */
+            }
+        }
+    }
+
+    private static class Location {
+        final Segment segment;
+        final long offset;
+        final int length;
+        final int recordSize;
+        volatile long lastAccess;
+
+        Location(Segment segment, long offset, int length, int recordSize,
+                long lastAccess) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.recordSize = recordSize;
+            this.lastAccess = lastAccess;
+        }
+
+        /* Offset of the record header */
+        long start() {
+            return offset - (recordSize - length);
+        }
+
+        int keyLength() {
+            return recordSize - length - HEADER_SIZE;
+        }
+    }
+
+    private static class Record {
+        final String key;
+        final Location loc;
+
+        Record(String key, Location loc) {
+            this.key = key;
+            this.loc = loc;
+        }
+    }
+
+    private interface RecordHandler {
+        void record(String key, Location loc);
+    }
+}
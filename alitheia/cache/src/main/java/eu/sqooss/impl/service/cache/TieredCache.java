@@ -0,0 +1,175 @@
+package eu.sqooss.impl.service.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import eu.sqooss.service.cache.CacheStats;
+
+/**
+ * A cache with two tiers: a size bounded {@link InMemoryCache} in front of
+ * an {@link OnDiskCache}. Values are written through to disk and kept in
+ * memory as well, unless they are larger than the promotion limit. A value
+ * found on disk but not in memory is promoted to memory, under the same
+ * limit. Frequently read values therefore stay in memory, while the long
+ * tail is served from disk. As with the tiers themselves, the arrays
+ * returned by {@link #get(String)} are copies that callers may modify.
+ * <br/>
+ * The statistics of the tiered cache combine those of both tiers: hits in
+ * either tier are hits, misses are lookups that were not found on disk.
+ * The statistics of each tier are available through
+ * {@link CacheStats#getTiers()}.
+ *
+ * Accepts the system properties of both tiers, as well as:
+ *
+ *  <dl>
+ *      <dt>eu.sqooss.service.cache.tiered.promote</dt>
+ *      <dd>
+ *          The size in bytes of the largest value to keep in memory, 1MB
+ *          by default.
+ *      </dd>
+ * </dl>
+ */
+public class TieredCache extends CacheServiceImpl {
+
+    public static final String PROMOTE_SIZE = "eu.sqooss.service.cache.tiered.promote";
+
+    private static final long DEFAULT_PROMOTE_SIZE = 1L << 20;
+
+    /*
+     * Serialize updates to the memory tier per key, so that a promotion of
+     * a value read from disk cannot overwrite a newer value.
+     */
+    private static final int LOCKS = 64;
+
+    private final InMemoryCache memory;
+    private final OnDiskCache disk;
+    private final long promoteSize;
+    private final Object[] locks;
+
+    public TieredCache() throws Exception {
+        this(new InMemoryCache(), new OnDiskCache(),
+                Long.getLong(PROMOTE_SIZE, DEFAULT_PROMOTE_SIZE));
+    }
+
+    /**
+     * @param memory The memory tier
+     * @param disk The disk tier
+     * @param promoteSize The size in bytes of the largest value to keep in
+     * memory
+     */
+    public TieredCache(InMemoryCache memory, OnDiskCache disk,
+            long promoteSize) {
+        this.memory = memory;
+        this.disk = disk;
+        this.promoteSize = promoteSize;
+        this.locks = new Object[LOCKS];
+        for (int i = 0; i < LOCKS; i++)
+            locks[i] = new Object();
+    }
+
+    @Override
+    public byte[] get(String key) {
+        byte[] value = memory.get(key);
+        if (value != null)
+            return value;
+
+        synchronized (lockFor(key)) {
+            value = disk.get(key);
+            if (value != null && value.length <= promoteSize)
+                memory.set(key, value);
+        }
+        return value;
+    }
+
+    @Override
+    public ByteBuffer getBuffer(String key) {
+        ByteBuffer value = memory.getBuffer(key);
+        if (value != null)
+            return value;
+        return promote(key);
+    }
+
+    @Override
+    public InputStream getStream(String key) {
+        ByteBuffer value = getBuffer(key);
+        return (value == null) ? null : new ByteBufferInputStream(value);
+    }
+
+    @Override
+    public long transferTo(String key, WritableByteChannel target)
+        throws IOException {
+        ByteBuffer value = getBuffer(key);
+        if (value == null)
+            return -1;
+
+        long written = 0;
+        while (value.hasRemaining())
+            written += target.write(value);
+        return written;
+    }
+
+    /*
+     * Read a value from disk, mapped if it is large, and copy it to memory
+     * if it is small enough.
+     */
+    private ByteBuffer promote(String key) {
+        synchronized (lockFor(key)) {
+            ByteBuffer value = disk.getBuffer(key);
+            if (value != null && value.remaining() <= promoteSize) {
+                byte[] data = new byte[value.remaining()];
+                value.duplicate().get(data);
+                memory.set(key, data);
+            }
+            return value;
+        }
+    }
+
+    @Override
+    public void set(String key, byte[] data) {
+        synchronized (lockFor(key)) {
+            disk.set(key, data);
+            if (data.length <= promoteSize)
+                memory.set(key, data);
+            else
+                memory.remove(key);
+        }
+    }
+
+    @Override
+    public void setStream(String key, InputStream in) {
+        /* Streamed values are usually large, they only go to disk */
+        disk.setStream(key, in);
+        synchronized (lockFor(key)) {
+            memory.remove(key);
+        }
+    }
+
+    @Override
+    public CacheStats getStats() {
+        CacheStats m = memory.getStats();
+        CacheStats d = disk.getStats();
+
+        Map<String, CacheStats> tiers = new LinkedHashMap<String, CacheStats>();
+        tiers.put("memory", m);
+        tiers.put("disk", d);
+
+        /* All values are on disk, memory only holds copies */
+        return new CacheStats(m.getHits() + d.getHits(), d.getMisses(),
+                d.getEvictions(), d.getEntries(), d.getSize(), tiers);
+    }
+
+    @Override
+    public void shutDown() {
+        disk.shutDown();
+    }
+
+    private Object lockFor(String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return locks[h & (LOCKS - 1)];
+    }
+}
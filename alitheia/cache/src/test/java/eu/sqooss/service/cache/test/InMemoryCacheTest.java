@@ -0,0 +1,113 @@
+package eu.sqooss.service.cache.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+import eu.sqooss.impl.service.cache.InMemoryCache;
+import eu.sqooss.service.cache.CacheStats;
+
+public class InMemoryCacheTest {
+
+    @Test
+    public void testGetSet() {
+        InMemoryCache cache = new InMemoryCache(1024 * 1024, 0);
+        byte[] val = "this is val1".getBytes();
+        cache.set("foo", val);
+        val[0] = 'T';
+        assertArrayEquals("this is val1".getBytes(), cache.get("foo"));
+        assertNull(cache.get("bar"));
+
+        CacheStats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getEntries());
+    }
+
+    @Test
+    public void testGetReturnsCopy() {
+        InMemoryCache cache = new InMemoryCache(1024 * 1024, 0);
+        cache.set("foo", "this is val1".getBytes());
+        cache.get("foo")[0] = 'T';
+        assertArrayEquals("this is val1".getBytes(), cache.get("foo"));
+    }
+
+    @Test
+    public void testSizeBound() {
+        long max = 64 * 1024;
+        InMemoryCache cache = new InMemoryCache(max, 0);
+        for (int i = 0; i < 10000; i++)
+            cache.set("foo" + i, new byte[100]);
+
+        CacheStats stats = cache.getStats();
+        assertTrue(stats.getSize() <= max);
+        assertTrue(stats.getEvictions() > 0);
+        assertEquals(10000, stats.getEntries() + stats.getEvictions());
+    }
+
+    @Test
+    public void testFrequentlyReadSurviveScan() {
+        InMemoryCache cache = new InMemoryCache(64 * 1024, 0);
+        for (int i = 0; i < 16; i++) {
+            cache.set("hot" + i, new byte[100]);
+            cache.get("hot" + i);
+        }
+        //Values that are set once, and never read, only push each other out
+        for (int i = 0; i < 10000; i++)
+            cache.set("cold" + i, new byte[100]);
+
+        for (int i = 0; i < 16; i++)
+            assertNotNull(cache.get("hot" + i));
+    }
+
+    @Test
+    public void testExpiry() throws InterruptedException {
+        InMemoryCache cache = new InMemoryCache(1024 * 1024, 50);
+        cache.set("foo", new byte[10]);
+        assertNotNull(cache.get("foo"));
+        Thread.sleep(100);
+        assertNull(cache.get("foo"));
+        assertEquals(1, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void testOversizedValue() {
+        InMemoryCache cache = new InMemoryCache(16 * 1024, 0);
+        cache.set("big", new byte[64 * 1024]);
+        assertNull(cache.get("big"));
+        assertEquals(1, cache.getStats().getRejected());
+        assertEquals(0, cache.getStats().getEvictions());
+    }
+
+    @Test
+    public void testStreams() throws IOException {
+        InMemoryCache cache = new InMemoryCache(1024 * 1024, 0);
+        byte[] val = "this is val1".getBytes();
+        cache.setStream("foo", new ByteArrayInputStream(val));
+
+        InputStream in = cache.getStream("foo");
+        byte[] read = new byte[val.length];
+        assertEquals(val.length, in.read(read));
+        assertArrayEquals(val, read);
+
+        ByteBuffer b = cache.getBuffer("foo");
+        assertTrue(b.isReadOnly());
+        assertEquals(val.length, b.remaining());
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(val.length, cache.transferTo("foo", Channels.newChannel(out)));
+        assertArrayEquals(val, out.toByteArray());
+        assertNull(cache.getBuffer("bar"));
+    }
+}
@@ -1,11 +1,26 @@
 package eu.sqooss.service.cache.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+
+import eu.sqooss.impl.service.cache.OnDiskCache;
+import eu.sqooss.service.cache.CacheStats;
 
-import eu.sqooss.service.cache.OnDiskCache;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
@@ -51,6 +66,138 @@ public class OnDiskCacheTest {
         }
     }
 
+    private static File tempDir(String name) {
+        File d = new File(path, name);
+        if (d.exists())
+            for (File f : d.listFiles())
+                f.delete();
+        return d;
+    }
+    
+    @Test
+    public void testReload() throws Exception {
+        File d = tempDir("reload");
+        OnDiskCache c = new OnDiskCache(d.getPath(), 1 << 20, 1 << 12);
+        for (int i = 0; i < 100; i++)
+            c.set("foo" + i, ("bar" + i).getBytes());
+        c.set("foo0", "baz".getBytes());
+        c.shutDown();
+        
+        c = new OnDiskCache(d.getPath(), 1 << 20, 1 << 12);
+        assertArrayEquals("baz".getBytes(), c.get("foo0"));
+        for (int i = 1; i < 100; i++)
+            assertArrayEquals(("bar" + i).getBytes(), c.get("foo" + i));
+        c.shutDown();
+    }
+    
+    @Test
+    public void testTruncatedSegment() throws Exception {
+        File d = tempDir("truncated");
+        OnDiskCache c = new OnDiskCache(d.getPath(), 1 << 20, 1 << 16);
+        c.set("foo", "bar".getBytes());
+        c.set("baz", "qux".getBytes());
+        c.shutDown();
+        
+        //Lose the last byte of the last record, as in a crash
+        File seg = d.listFiles()[0];
+        RandomAccessFile raf = new RandomAccessFile(seg, "rw");
+        raf.setLength(raf.length() - 1);
+        raf.close();
+        
+        c = new OnDiskCache(d.getPath(), 1 << 20, 1 << 16);
+        assertArrayEquals("bar".getBytes(), c.get("foo"));
+        assertNull(c.get("baz"));
+        c.set("baz", "qux".getBytes());
+        assertArrayEquals("qux".getBytes(), c.get("baz"));
+        c.shutDown();
+    }
+    
+    @Test
+    public void testEviction() throws Exception {
+        File d = tempDir("eviction");
+        long max = 64 * 1024;
+        OnDiskCache c = new OnDiskCache(d.getPath(), max, 4 * 1024);
+        byte[] value = new byte[100];
+        for (int i = 0; i < 5000; i++) {
+            c.set("foo" + i, value);
+            //Keep reading a hot key
+            assertNotNull(c.get("foo0"));
+        }
+        
+        //Compaction runs in the background
+        for (int i = 0; i < 100 && c.getStats().getSize() > max; i++)
+            Thread.sleep(50);
+        
+        CacheStats stats = c.getStats();
+        assertTrue(stats.getSize() <= max);
+        assertTrue(stats.getEvictions() > 0);
+        assertNotNull(c.get("foo0"));
+        assertNotNull(c.get("foo4999"));
+        c.shutDown();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] b = new byte[length];
+        new Random(length).nextBytes(b);
+        return b;
+    }
+    
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] b = new byte[1000];
+        int n;
+        while ((n = in.read(b)) != -1)
+            out.write(b, 0, n);
+        in.close();
+        return out.toByteArray();
+    }
+    
+    @Test
+    public void testStreams() throws Exception {
+        File d = tempDir("streams");
+        OnDiskCache c = new OnDiskCache(d.getPath(), 16 << 20, 4 << 20);
+        byte[] small = randomBytes(100);
+        byte[] large = randomBytes(1 << 20);
+        c.setStream("small", new ByteArrayInputStream(small));
+        c.setStream("large", new ByteArrayInputStream(large));
+        
+        assertArrayEquals(small, c.get("small"));
+        assertArrayEquals(large, c.get("large"));
+        assertArrayEquals(small, readAll(c.getStream("small")));
+        assertArrayEquals(large, readAll(c.getStream("large")));
+        assertNull(c.getStream("foo"));
+        
+        ByteBuffer b = c.getBuffer("large");
+        assertTrue(b.isReadOnly());
+        assertEquals(large.length, b.remaining());
+        byte[] copy = new byte[b.remaining()];
+        b.get(copy);
+        assertArrayEquals(large, copy);
+        assertNull(c.getBuffer("foo"));
+        
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(large.length, c.transferTo("large", Channels.newChannel(out)));
+        assertArrayEquals(large, out.toByteArray());
+        assertEquals(-1, c.transferTo("foo", Channels.newChannel(out)));
+        c.shutDown();
+        
+        //Streamed records are checked like any other on reload
+        c = new OnDiskCache(d.getPath(), 16 << 20, 4 << 20);
+        assertArrayEquals(large, c.get("large"));
+        assertEquals(1, d.list().length);
+        c.shutDown();
+    }
+    
+    @Test
+    public void testStreamTooLarge() throws Exception {
+        File d = tempDir("streamlarge");
+        OnDiskCache c = new OnDiskCache(d.getPath(), 1 << 20, 1 << 18);
+        c.setStream("foo", new ByteArrayInputStream(new byte[1 << 20]));
+        assertNull(c.get("foo"));
+        assertEquals(0, d.list().length);
+        c.shutDown();
+    }
+
     class StresserThread extends Thread {
         OnDiskCache cache;
         
@@ -0,0 +1,83 @@
+package eu.sqooss.service.cache.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+
+import org.junit.Test;
+
+import eu.sqooss.impl.service.cache.InMemoryCache;
+import eu.sqooss.impl.service.cache.OnDiskCache;
+import eu.sqooss.impl.service.cache.TieredCache;
+import eu.sqooss.service.cache.CacheStats;
+
+public class TieredCacheTest {
+
+    private static File tempDir(String name) {
+        File d = new File("tmp", name);
+        if (d.exists())
+            for (File f : d.listFiles())
+                f.delete();
+        return d;
+    }
+
+    @Test
+    public void testWriteThrough() throws Exception {
+        OnDiskCache disk = new OnDiskCache(tempDir("tiered").getPath(),
+                1 << 20, 1 << 16);
+        TieredCache cache = new TieredCache(new InMemoryCache(1 << 20, 0),
+                disk, 1024);
+        cache.set("foo", "bar".getBytes());
+        assertArrayEquals("bar".getBytes(), cache.get("foo"));
+        assertArrayEquals("bar".getBytes(), disk.get("foo"));
+        assertNull(cache.get("baz"));
+
+        CacheStats memory = cache.getStats().getTiers().get("memory");
+        CacheStats onDisk = cache.getStats().getTiers().get("disk");
+        assertEquals(1, memory.getHits());
+        assertEquals(1, memory.getMisses());
+        //Read directly from the disk tier above, and the miss
+        assertEquals(1, onDisk.getHits());
+        assertEquals(1, onDisk.getMisses());
+        assertEquals(2, cache.getStats().getHits());
+        assertEquals(1, cache.getStats().getMisses());
+        disk.shutDown();
+    }
+
+    @Test
+    public void testPromotion() throws Exception {
+        OnDiskCache disk = new OnDiskCache(tempDir("promotion").getPath(),
+                1 << 20, 1 << 16);
+        disk.set("foo", "bar".getBytes());
+        disk.set("big", new byte[2048]);
+        TieredCache cache = new TieredCache(new InMemoryCache(1 << 20, 0),
+                disk, 1024);
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals("bar".getBytes(), cache.get("foo"));
+            assertEquals(2048, cache.getBuffer("big").remaining());
+        }
+
+        //Promoted on the first hit, large values are always read from disk
+        CacheStats memory = cache.getStats().getTiers().get("memory");
+        CacheStats onDisk = cache.getStats().getTiers().get("disk");
+        assertEquals(2, memory.getHits());
+        assertEquals(4, onDisk.getHits());
+        disk.shutDown();
+    }
+
+    @Test
+    public void testStreamInvalidatesMemory() throws Exception {
+        OnDiskCache disk = new OnDiskCache(tempDir("tieredstream").getPath(),
+                1 << 20, 1 << 16);
+        TieredCache cache = new TieredCache(new InMemoryCache(1 << 20, 0),
+                disk, 1024);
+        cache.set("foo", "bar".getBytes());
+        cache.setStream("foo", new ByteArrayInputStream("baz".getBytes()));
+        assertArrayEquals("baz".getBytes(), cache.get("foo"));
+        disk.shutDown();
+    }
+}
@@ -55,6 +55,7 @@ import eu.sqooss.impl.service.tds.TDSServiceImpl;
 import eu.sqooss.impl.service.updater.UpdaterServiceImpl;
 import eu.sqooss.impl.service.webadmin.WebadminServiceImpl;
 import eu.sqooss.service.admin.AdminService;
+import eu.sqooss.service.cache.CacheService;
 import eu.sqooss.service.cluster.ClusterNodeService;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.fds.FDSService;
@@ -338,6 +339,18 @@ public class AlitheiaCore {
         return (FDSService)instances.get(FDSService.class);
     }
 
+    /**
+     * Returns the locally stored Cache component's instance.
+     * <br/>
+     * <i>The cache is provided by a separate bundle, so this method
+     * returns null until that bundle has registered it.</i>
+     * 
+     * @return The Cache component's instance.
+     */
+    public CacheService getCacheService() {
+        return (CacheService)instances.get(CacheService.class);
+    }
+
     /**
      * Returns the locally stored Scheduler component's instance.
      * <br/>
@@ -39,17 +39,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.regex.Pattern;
 
-import eu.sqooss.service.util.FileUtils;
 import org.apache.commons.codec.binary.Hex;
 import org.osgi.framework.BundleContext;
 
 import eu.sqooss.core.AlitheiaCore;
-import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.cache.CacheService;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.StoredProject;
@@ -90,15 +94,18 @@ public class FDSServiceImpl implements FDSService, Runnable {
     private Random randomCheckout = null;
 
     /**
-     * Cache checkouts in a live system. The cache will not be re-populated from
-     * on disk data if the system is shutdown.
+     * Checkouts in a live system, reused and rolled forward between
+     * versions. The pool will not be re-populated from on disk data if the
+     * system is shutdown.
      */
-    private ConcurrentHashMap<String, OnDiskCheckout> checkoutCache;
+    private OnDiskCheckoutPool checkouts;
 
     /**
-     * Number of handles acquired on each cached checkout.
+     * Single file checkouts in progress, by local path. Concurrent requests
+     * for the same file wait for the checkout in progress instead of
+     * starting their own; requests for different files run in parallel.
      */
-    private ConcurrentHashMap<OnDiskCheckout, Integer> checkoutHandles;
+    private ConcurrentHashMap<String, FutureTask<File>> pendingFiles;
 
     private BundleContext bc;
     
@@ -121,6 +128,18 @@ public class FDSServiceImpl implements FDSService, Runnable {
      */
     private static final int INT_AS_HEX_LENGTH = 8;
 
+    /*
+     * File contents are cached by content id, so that identical contents
+     * share one cache entry. A second entry per project file points to the
+     * content id.
+     */
+    /** Cache key prefix for the content id of a project file */
+    private static final String CACHE_FILE_PREFIX = "fds:file:";
+    /** Cache key prefix for file contents, by content id */
+    private static final String CACHE_CONTENT_PREFIX = "fds:content:";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
     public FDSServiceImpl() { }
 
     /**
@@ -143,42 +162,6 @@ public class FDSServiceImpl implements FDSService, Runnable {
         }
     }
 
-    /**
-     * Create, for a given SCM accessor, an on disk checkout at a given
-     * revision. This assumes that there is not already a checkout for this
-     * project in this revision, and uses the SCM itself to do the checkout
-     * somewhere underneath the FDS root.
-     * 
-     * @return
-     */
-    private OnDiskCheckout createCheckout(SCMAccessor scm, ProjectVersion pv, String path) {
-        logger.info("Creating new checkout for " + pv);
-
-        File projectRoot = new File(fdsCheckoutRoot, pv.getProject().getName());
-        // It might not exist yet
-        projectRoot.mkdirs();
-
-        // Side effect: throws if the revision is invalid
-        Revision r = scm.newRevision(pv.getRevisionId());
-        File checkoutRoot = new File(projectRoot, pv.getRevisionId());
-
-        if (checkoutRoot.exists()) {
-            logger.warn("Checkout root <" + checkoutRoot + "> exists. " +
-                    "Cleaning up");
-            FileUtils.deleteRecursive(checkoutRoot);
-        }
-        if (!checkoutRoot.mkdirs()) {
-            logger.warn("Could not create checkout root <" + checkoutRoot
-                    + ">");
-            return null;
-        }
-
-        // Now checkoutRoot exists and is a directory.
-        logger.info("Created checkout root <" + checkoutRoot + ">");
-        OnDiskCheckoutImpl c = new OnDiskCheckoutImpl(scm, path, pv, checkoutRoot);
-        return c;
-    }
-
     /**
      * For a project file, return the SCM revision that it refers to.
      * 
@@ -304,126 +287,64 @@ public class FDSServiceImpl implements FDSService, Runnable {
         return true;
     }
 
-    // Checkout cache ops
-    /**
-     * Atomic get from cache and increment handle count.
-     */
-    private synchronized OnDiskCheckout getCheckoutFromCache(ProjectVersion pv) {
+    // ===[ INTERFACE METHODS ]===============================================
 
-        if (pv == null || pv.getId() == 0) {
+    /** {@inheritDoc} */
+    public File getFile(final ProjectFile pf) {
+        final Revision projectRevision = projectFileRevision(pf);
+        if (projectRevision == null) {
             return null;
         }
 
-        OnDiskCheckout co = checkoutCache.get(cacheKey(pv));
-
-        if (co == null)
-            return null;
-
-        checkoutHandles.put(co, checkoutHandles.get(co) + 1);
-
-        return co;
-    }
-
-    /**
-     * Atomic decrement of checkout handle counts.
-     */
-    private synchronized void returnCheckout(OnDiskCheckout c) {
-        if (c == null)
-            return;
-
-        if (checkoutHandles.contains(c))
-            checkoutHandles.put(c, checkoutHandles.get(c) - 1);
-    }
-
-    /**
-     * Atomic add checkout to both cache tables
-     */
-    private synchronized void addCheckoutToCache(ProjectVersion pv,
-            OnDiskCheckout c) {
-        checkoutCache.putIfAbsent(cacheKey(pv), c);
-        checkoutHandles.putIfAbsent(c, 0);
-    }
-
-    /**
-     * Atomically check whether the checkout can be updated
-     */
-    private synchronized boolean isUpdatable(OnDiskCheckout c) {
-        if (checkoutHandles.get(c) > 0)
-            return false;
-        return true;
-    }
-
-    /**
-     * Check if there is a checkout for a specific project version.
-     */
-    private synchronized boolean cacheContains(ProjectVersion pv) {
-        if (checkoutCache.keySet().contains(cacheKey(pv)))
-            return true;
-        return false;
-    }
-
-    // Cache key ops
-    /**
-     * Munge together info from the provided project version to create a unique
-     * key for indexing cache checkouts.
-     */
-    private String cacheKey(ProjectVersion pv) {
-        return pv.getProject().getName() + "|" + pv.getId() + "|"
-                + pv.getRevisionId();
-    }
-
-    /**
-     * Retrieve the project name part of the provided cache key.
-     */
-    private String cacheKeyProject(String key) {
-        if (key == null || key.length() == 0)
+        final File checkoutFile = projectFileLocal(pf, projectRevision);
+        if (checkoutFile == null) {
             return null;
+        }
 
-        return key.split("|")[0];
-    }
-
-    /**
-     * Retrieve from the provided cache key and resolve from the DB the
-     * ProjectVersion object attached to a checkout.
-     */
-    private ProjectVersion cacheKeyProjectVersion(String key) {
-        if (key == null || key.length() == 0)
-            return null;
+        // Skip the checkout, in case this ProjectFile is already
+        // available (i.e. retrieved in a previous checkout). Files only
+        // appear once they are complete.
+        if (checkoutFile.isFile() && checkoutFile.canRead()) {
+            return checkoutFile;
+        }
 
-        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        FutureTask<File> checkout = new FutureTask<File>(new Callable<File>() {
+            public File call() {
+                return checkoutFile(pf, projectRevision, checkoutFile);
+            }
+        });
+
+        String key = checkoutFile.getAbsolutePath();
+        FutureTask<File> pending = pendingFiles.putIfAbsent(key, checkout);
+        if (pending == null) {
+            pending = checkout;
+            try {
+                checkout.run();
+            } finally {
+                pendingFiles.remove(key, checkout);
+            }
+        }
 
-        Long id = Long.parseLong(key.split("|")[1]);
-        return dbs.getQueryInterface().findObjectById(ProjectVersion.class, id);
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Checkout of " + pf.toString() + " failed: "
+                    + e.getCause());
+        }
+        return null;
     }
 
     /**
-     * Convert between database and SCM revision representations
+     * Check out a single file to a temporary file next to its local path,
+     * and move it in place when it is complete.
      */
-    private static Revision projectVersionToRevision(ProjectVersion pv) {
-        TDSService tds = AlitheiaCore.getInstance().getTDSService();
-        SCMAccessor scm = null;
-
-        if (tds.accessorExists(pv.getProject().getId())) {
-            scm = (SCMAccessor) tds.getAccessor(pv.getProject().getId());
-        } else {
-            return null;
-        }
-
-        return scm.newRevision(pv.getRevisionId());
-    }
-
-    // ===[ INTERFACE METHODS ]===============================================
-
-    /** {@inheritDoc} */
-    public synchronized File getFile(ProjectFile pf) {
-        Revision projectRevision = projectFileRevision(pf);
-        if (projectRevision == null) {
-            return null;
-        }
-
-        File checkoutFile = projectFileLocal(pf, projectRevision);
-        if (checkoutFile == null) {
-            return null;
+    private File checkoutFile(ProjectFile pf, Revision projectRevision,
+            File checkoutFile) {
+        // A checkout that just completed may have created it
+        if (checkoutFile.isFile() && checkoutFile.canRead()) {
+            return checkoutFile;
         }
 
         SCMAccessor scm = projectFileAccessor(pf);
@@ -431,17 +352,18 @@ public class FDSServiceImpl implements FDSService, Runnable {
             return null;
         }
 
+        File partFile = new File(checkoutFile.getPath() + ".part");
         try {
-            // Skip the checkout, in case this ProjectFile is already
-            // available (i.e. retrieved in a previous checkout)
-            if (!(checkoutFile.exists() && checkoutFile.length() <= 0)) {
-                // Create the path to the target file if it doesn't exist
-                if ((checkoutFile.getParentFile() != null)
-                        && (!checkoutFile.getParentFile().exists())) {
-                    checkoutFile.getParentFile().mkdirs();
-                }
-                // Try to checkout the target file
-                scm.getFile(pf.getFileName(), projectRevision, checkoutFile);
+            // Create the path to the target file if it doesn't exist
+            if ((checkoutFile.getParentFile() != null)
+                    && (!checkoutFile.getParentFile().exists())) {
+                checkoutFile.getParentFile().mkdirs();
+            }
+            // Try to checkout the target file
+            scm.getFile(pf.getFileName(), projectRevision, partFile);
+            if (!partFile.renameTo(checkoutFile) && !checkoutFile.isFile()) {
+                logger.error("Cannot move " + partFile + " to "
+                        + checkoutFile);
             }
 
             // Make sure that the target file is accessible
@@ -460,12 +382,29 @@ public class FDSServiceImpl implements FDSService, Runnable {
         } catch (FileNotFoundException e) {
             logger.error("File " + pf.toString() + " not found in the given "
                     + "repository: " + e.getMessage());
+        } finally {
+            if (partFile.exists()) {
+                partFile.delete();
+            }
         }
         return null;
     }
 
     /** {@inheritDoc} */
     public InputStream getFileContents(ProjectFile pf) {
+        CacheService cache = AlitheiaCore.getInstance().getCacheService();
+        String fileKey = CACHE_FILE_PREFIX + pf.getId();
+        String contentKey = null;
+
+        if (cache != null) {
+            byte[] id = cache.get(fileKey);
+            if (id != null) {
+                contentKey = CACHE_CONTENT_PREFIX + new String(id, UTF8);
+                InputStream in = cache.getStream(contentKey);
+                if (in != null)
+                    return in;
+            }
+        }
 
         Revision projectRevision = projectFileRevision(pf);
         if (projectRevision == null) {
@@ -473,9 +412,27 @@ public class FDSServiceImpl implements FDSService, Runnable {
         }
 
         SCMAccessor scm = projectFileAccessor(pf);
+        if (scm == null) {
+            return null;
+        }
+
+        /* Copies, reverted changes etc share their contents */
+        if (cache != null && contentKey == null) {
+            String id = contentId(scm, pf, projectRevision);
+            if (id != null) {
+                contentKey = CACHE_CONTENT_PREFIX + id;
+                cache.set(fileKey, id.getBytes(UTF8));
+                InputStream in = cache.getStream(contentKey);
+                if (in != null)
+                    return in;
+            }
+        }
+
         ByteArrayOutputStream buff = new ByteArrayOutputStream();
+        boolean fetched = false;
         try {
             scm.getFile(pf.getFileName(), projectRevision, buff);
+            fetched = true;
         } catch (InvalidProjectRevisionException e) {
             logger.error("The repository for " + pf.toString()
                     + " is invalid: " + e.getMessage());
@@ -488,9 +445,47 @@ public class FDSServiceImpl implements FDSService, Runnable {
                     + "repository: " + e.getMessage());
         }
 
-        ByteArrayInputStream contents = new ByteArrayInputStream(buff
-                .toByteArray());
-        return contents;
+        byte[] contents = buff.toByteArray();
+
+        if (cache != null && fetched) {
+            if (contentKey == null) {
+                String id = contentHash(contents);
+                contentKey = CACHE_CONTENT_PREFIX + id;
+                cache.set(fileKey, id.getBytes(UTF8));
+            }
+            cache.set(contentKey, contents);
+        }
+
+        ByteArrayInputStream bais = new ByteArrayInputStream(contents);
+        return bais;
+    }
+
+    /**
+     * Ask the repository for the content id of a file, null if it does not
+     * provide one.
+     */
+    private String contentId(SCMAccessor scm, ProjectFile pf, Revision r) {
+        try {
+            String id = scm.getContentId(pf.getFileName(), r);
+            if (id != null)
+                return scm.getName() + ":" + id;
+        } catch (InvalidRepositoryException e) {
+            logger.warn("Cannot get the content id of " + pf.toString()
+                    + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Content id for repositories that do not provide one.
+     */
+    private static String contentHash(byte[] contents) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            return "sha1:" + new String(Hex.encodeHex(md.digest(contents)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     /** {@inheritDoc} */
@@ -544,121 +539,35 @@ public class FDSServiceImpl implements FDSService, Runnable {
         svn.newRevision(pv.getRevisionId());
 
         logger.info("Finding available checkout for " + pv);
-        OnDiskCheckout co = getCheckoutFromCache(pv);
-
-        if (co != null) {
-            // Checkout acquired from cache, return it.
-            return co;
-        }
-
-        // Search for a cached checkout that could be updated
-        /*Set<String> c = checkoutCache.keySet();
-        OnDiskCheckoutImpl updatable = null;
-
-        for (String s : c) {
-            if (cacheKeyProject(s).equals(pv.getProject())) {
-                ProjectVersion cached = cacheKeyProjectVersion(s);
-                if (cached.lt(pv)) {
-                    updatable = (OnDiskCheckoutImpl) getCheckoutFromCache(cached);
-
-                    if (checkoutHandles.get(updatable) == 1) {
-                        try {
-                            updateCheckout(updatable, pv);
-                        } finally {
-                            releaseCheckout(updatable);
-                        }
-                        return getCheckoutFromCache(pv);
-                    }
-                    releaseCheckout(updatable);
-                    updatable = null;
-                }
-            }
-        }
-
-        // No updatable checkout found, create
-        synchronized (pv) {
-            if (!cacheContains(pv))
-                addCheckoutToCache(pv, createCheckout(svn, pv));
-        } */
-        //return getCheckoutFromCache(pv);
-        return createCheckout(svn, pv, path);
+        return checkouts.acquire(svn, pv, path);
     }
 
     /** {@inheritDoc} */
     public boolean updateCheckout(OnDiskCheckout c, ProjectVersion pv)
             throws CheckoutException {
 
-        if (c != null) {
-            return false;
-        }
-
-        // Check if the checkout is held by another client before updating
-        if (!isUpdatable(c)) {
+        if (c == null) {
             return false;
         }
 
-        OnDiskCheckoutImpl cimpl = (OnDiskCheckoutImpl) c;
-        cimpl.lock();
-
-        // Check if an update took place while waiting for the lock to become
-        // available
-        if (cimpl.getProjectVersion().gt(pv)) {
-            logger.error("Error updating checkout. Checkout has been"
-                    + " already updated to a newer version");
-            throw new CheckoutException("Checkout already updated");
-        } else if (cimpl.getProjectVersion().eq(pv)) {
-            return true;
-        }
-
-        SCMAccessor scm = (SCMAccessor) AlitheiaCore.getInstance()
-                .getTDSService().getAccessor(pv.getProject().getId());
+        SCMAccessor scm = null;
         try {
-            scm.updateCheckout(cimpl.getRepositoryPath(),
-                    projectVersionToRevision(cimpl.getProjectVersion()),
-                    projectVersionToRevision(pv), cimpl.getRoot());
-            cimpl.setRevision(pv);
-
-        } catch (InvalidProjectRevisionException e) {
-            throw new CheckoutException("Project version " + pv
-                    + " does not map to an SCM revision. Error was:"
-                    + e.getMessage());
-        } catch (InvalidRepositoryException e) {
-            throw new CheckoutException("Error accessing repository "
-                    + scm.toString() + ". Error was:" + e.getMessage());
-        } catch (FileNotFoundException e) {
-            throw new CheckoutException("Error accessing checkout root. "
-                    + e.getMessage());
-        } finally {
-            cimpl.unlock();
+            scm = tds.getAccessor(pv.getProject().getId()).getSCMAccessor();
+        } catch (InvalidAccessorException e) {
+            throw new CheckoutException("Invalid SCM accessor for project "
+                    + pv.getProject().getName() + ": " + e.getMessage());
         }
-        return true;
+
+        return checkouts.update(scm, c, pv);
     }
 
     /** {@inheritDoc} */
     public void releaseCheckout(OnDiskCheckout c) {
-
-        /*
         if (c == null) {
             logger.warn("Attempting to release null checkout");
             return;
         }
-
-        if (!checkoutCache.contains(c)) {
-            logger.warn("Attempting to release not cached checkout");
-            return;
-        }
-
-        returnCheckout(c);
-        */
-        File root = null;
-        try {
-            root = c.getRoot();
-            FileUtils.deleteRecursive(root);
-        } catch (Exception e) {
-            logger.error("Cannot clean up checkout root: " +
-                    root.getAbsolutePath());
-        }
-        c = null;
+        checkouts.release(c);
     }
 
     public Timeline getTimeline(StoredProject c) {
@@ -691,8 +600,7 @@ public class FDSServiceImpl implements FDSService, Runnable {
         tds = AlitheiaCore.getInstance().getTDSService();
         logger.info("Got TDS service for FDS.");
 
-        checkoutCache = new ConcurrentHashMap<String, OnDiskCheckout>();
-        checkoutHandles = new ConcurrentHashMap<OnDiskCheckout, Integer>();
+        pendingFiles = new ConcurrentHashMap<String, FutureTask<File>>();
         // Get the checkout root from the properties file.
         String s = bc.getProperty("eu.sqooss.fds.root");
         if (s == null) {
@@ -704,6 +612,32 @@ public class FDSServiceImpl implements FDSService, Runnable {
         fdsCheckoutRoot = new File(s);
         randomCheckout = new Random();
 
+        int perProject = 4;
+        s = bc.getProperty("eu.sqooss.fds.checkouts");
+        if (s != null) {
+            try {
+                perProject = Integer.parseInt(s);
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid eu.sqooss.fds.checkouts value " + s
+                        + ", using default " + perProject);
+            }
+        }
+
+        long maxSize = 10240;
+        s = bc.getProperty("eu.sqooss.fds.checkouts.size");
+        if (s != null) {
+            try {
+                maxSize = Long.parseLong(s);
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid eu.sqooss.fds.checkouts.size value " + s
+                        + ", using default " + maxSize);
+            }
+        }
+        logger.info("Keeping up to " + perProject + " checkouts per project, "
+                + maxSize + "MB in total");
+        checkouts = new OnDiskCheckoutPool(new File(fdsCheckoutRoot,
+                "checkouts"), perProject, maxSize * 1024 * 1024, logger);
+
         return true;
     }
 }
@@ -79,6 +79,10 @@ class OnDiskCheckoutImpl implements OnDiskCheckout {
         this.revision = pv;
     }
     
+    File getLocalRoot() {
+        return localRoot;
+    }
+    
     void setAccessor(SCMAccessor scm) {
         this.scm = scm;
     }
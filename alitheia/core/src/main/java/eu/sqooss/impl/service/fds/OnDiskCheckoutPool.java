@@ -0,0 +1,399 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.fds;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.fds.CheckoutException;
+import eu.sqooss.service.fds.OnDiskCheckout;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.tds.InvalidProjectRevisionException;
+import eu.sqooss.service.tds.InvalidRepositoryException;
+import eu.sqooss.service.tds.SCMAccessor;
+import eu.sqooss.service.util.FileUtils;
+
+/**
+ * A bounded pool of on disk checkouts. A request for a project version
+ * that is already checked out shares the existing checkout. Otherwise,
+ * the most recent idle checkout of an older version of the same path is
+ * rolled forward to the requested version with
+ * {@link SCMAccessor#updateCheckout} and only if there is none a new checkout is created.
+ * <br/>
+ * Checkouts are reference counted; a checkout that is held is never
+ * updated or deleted. Idle checkouts are deleted in least recently used
+ * order when a project has more checkouts than its limit or when the
+ * checkouts take more disk space than the budget.
+ */
+class OnDiskCheckoutPool {
+
+    private final File root;
+    private final int maxPerProject;
+    private final long maxSize;
+    private final Logger logger;
+    private final Random random = new Random();
+
+    /* Checkouts that can be handed out, guarded by this */
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    /* All checkouts with handles, including those no longer pooled */
+    private final Map<OnDiskCheckout, Entry> held =
+        new IdentityHashMap<OnDiskCheckout, Entry>();
+
+    /* Logical time, for LRU ordering */
+    private long clock = 0;
+
+    /**
+     * @param root Directory to create checkouts in
+     * @param maxPerProject Maximum number of checkouts to keep per project
+     * @param maxSize Disk space budget for idle checkouts, in bytes
+     */
+    OnDiskCheckoutPool(File root, int maxPerProject, long maxSize,
+            Logger logger) {
+        this.root = root;
+        this.maxPerProject = Math.max(1, maxPerProject);
+        this.maxSize = maxSize;
+        this.logger = logger;
+
+        // Checkouts from a previous run cannot be matched to versions
+        if (root.isDirectory()) {
+            FileUtils.deleteRecursive(root);
+        }
+    }
+
+    /**
+     * Get a checkout of path at the given version, reusing or updating a
+     * pooled checkout if possible. The checkout must be released with
+     * {@link #release(OnDiskCheckout)}.
+     */
+    OnDiskCheckout acquire(SCMAccessor scm, ProjectVersion pv, String path)
+            throws CheckoutException {
+        long projectId = pv.getProject().getId();
+        Entry e = null;
+        String from = null;
+        boolean create = false;
+
+        synchronized (this) {
+            for (Entry c : entries) {
+                if (c.matches(projectId, path) && c.sequence == pv.getSequence()) {
+                    e = c;
+                    break;
+                }
+            }
+
+            if (e == null) {
+                Entry older = null;
+                for (Entry c : entries) {
+                    if (c.matches(projectId, path) && c.handles == 0
+                            && c.sequence < pv.getSequence()
+                            && (older == null || c.sequence > older.sequence)) {
+                        older = c;
+                    }
+                }
+
+                if (older != null) {
+                    e = older;
+                    from = e.revisionId;
+                    e.moveTo(pv);
+                } else {
+                    e = new Entry(new OnDiskCheckoutImpl(scm, path, pv,
+                            newDirectory(pv)), projectId, path, pv);
+                    entries.add(e);
+                    create = true;
+                }
+            }
+            e.handles++;
+            e.lastUsed = ++clock;
+            held.put(e.checkout, e);
+        }
+
+        if (create) {
+            logger.info("Creating new checkout for " + pv + " in "
+                    + e.directory);
+            try {
+                e.directory.mkdirs();
+                e.checkout.getRoot();
+                ready(e, null);
+            } catch (CheckoutException ex) {
+                ready(e, ex);
+            } catch (FileNotFoundException ex) {
+                ready(e, new CheckoutException(ex.getMessage()));
+            }
+        } else if (from != null) {
+            logger.info("Updating checkout " + e.directory + " from "
+                    + from + " to " + pv);
+            ready(e, update(scm, e, from, pv));
+        }
+
+        try {
+            e.ready.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            release(e.checkout);
+            throw new CheckoutException("Interrupted while waiting for "
+                    + "checkout of " + pv);
+        }
+
+        if (e.failure != null) {
+            release(e.checkout);
+            throw e.failure;
+        }
+        return e.checkout;
+    }
+
+    /**
+     * Update a checkout in place, if it is only held by the caller.
+     *
+     * @return False if the checkout is held by others
+     */
+    boolean update(SCMAccessor scm, OnDiskCheckout c, ProjectVersion pv)
+            throws CheckoutException {
+        Entry e;
+        String from;
+
+        synchronized (this) {
+            e = held.get(c);
+            if (e == null || e.handles > 1 || !entries.contains(e)) {
+                return false;
+            }
+            if (e.sequence > pv.getSequence()) {
+                throw new CheckoutException("Checkout already updated");
+            }
+            if (e.sequence == pv.getSequence()) {
+                return true;
+            }
+            from = e.revisionId;
+            e.moveTo(pv);
+        }
+
+        CheckoutException failure = update(scm, e, from, pv);
+        ready(e, failure);
+        if (failure != null) {
+            throw failure;
+        }
+        return true;
+    }
+
+    /**
+     * Release a handle on a checkout. Idle checkouts stay in the pool
+     * unless it is over its limits.
+     */
+    void release(OnDiskCheckout c) {
+        Entry e;
+        synchronized (this) {
+            e = held.get(c);
+            if (e == null) {
+                // Not pooled, nothing else can be using it
+                delete(c);
+                return;
+            }
+            if (--e.handles > 0) {
+                return;
+            }
+            e.lastUsed = ++clock;
+            if (!entries.contains(e)) {
+                held.remove(c);
+                delete(c);
+                return;
+            }
+        }
+
+        // Clients may have built or otherwise added files to it
+        long size = FileUtils.diskUsage(e.directory);
+
+        List<Entry> evicted = new ArrayList<Entry>();
+        synchronized (this) {
+            e.size = size;
+            evict(e.projectId, evicted);
+        }
+        for (Entry v : evicted) {
+            logger.info("Evicting checkout " + v.directory + " of "
+                    + v.revisionId);
+            delete(v.checkout);
+        }
+    }
+
+    /* Roll a checkout forward, returns the failure if any */
+    private CheckoutException update(SCMAccessor scm, Entry e, String from,
+            ProjectVersion pv) {
+        OnDiskCheckoutImpl cimpl = e.checkout;
+        cimpl.lock();
+        try {
+            scm.updateCheckout(cimpl.getRepositoryPath(),
+                    scm.newRevision(from), scm.newRevision(pv.getRevisionId()),
+                    e.directory);
+            cimpl.setRevision(pv);
+            return null;
+        } catch (InvalidProjectRevisionException ex) {
+            return new CheckoutException("Project version " + pv
+                    + " does not map to an SCM revision. Error was:"
+                    + ex.getMessage());
+        } catch (InvalidRepositoryException ex) {
+            return new CheckoutException("Error accessing repository "
+                    + scm.toString() + ". Error was:" + ex.getMessage());
+        } catch (FileNotFoundException ex) {
+            return new CheckoutException("Error accessing checkout root. "
+                    + ex.getMessage());
+        } finally {
+            cimpl.unlock();
+        }
+    }
+
+    /*
+     * Mark a checkout as ready for the clients waiting for it. A failed
+     * checkout is removed from the pool, and deleted when it is released.
+     */
+    private void ready(Entry e, CheckoutException failure) {
+        if (failure != null) {
+            logger.warn("Checkout in " + e.directory + " failed: "
+                    + failure.getMessage());
+            synchronized (this) {
+                entries.remove(e);
+            }
+        }
+        e.failure = failure;
+        e.ready.countDown();
+    }
+
+    /*
+     * Remove idle checkouts, least recently used first, until the project
+     * is within its checkout limit and the pool within its disk budget.
+     */
+    private void evict(long projectId, List<Entry> evicted) {
+        while (true) {
+            int count = 0;
+            long size = 0;
+            for (Entry c : entries) {
+                if (c.projectId == projectId) {
+                    count++;
+                }
+                if (c.handles == 0) {
+                    size += c.size;
+                }
+            }
+
+            boolean overCount = count > maxPerProject;
+            if (!overCount && size <= maxSize) {
+                return;
+            }
+
+            Entry victim = null;
+            for (Entry c : entries) {
+                if (c.handles == 0 && (!overCount || c.projectId == projectId)
+                        && (victim == null || c.lastUsed < victim.lastUsed)) {
+                    victim = c;
+                }
+            }
+            if (victim == null) {
+                return;
+            }
+            entries.remove(victim);
+            held.remove(victim.checkout);
+            evicted.add(victim);
+        }
+    }
+
+    private File newDirectory(ProjectVersion pv) {
+        File projectRoot = new File(root, pv.getProject().getName());
+        File dir;
+        do {
+            dir = new File(projectRoot, Integer.toHexString(random.nextInt()));
+        } while (dir.exists());
+        return dir;
+    }
+
+    private void delete(OnDiskCheckout c) {
+        File dir = (c instanceof OnDiskCheckoutImpl)
+            ? ((OnDiskCheckoutImpl) c).getLocalRoot() : null;
+        try {
+            if (dir == null) {
+                dir = c.getRoot();
+            }
+            if (dir.exists()) {
+                FileUtils.deleteRecursive(dir);
+            }
+        } catch (Exception ex) {
+            logger.error("Cannot clean up checkout root: " + dir);
+        }
+    }
+
+    private static class Entry {
+        final OnDiskCheckoutImpl checkout;
+        final File directory;
+        final long projectId;
+        final String path;
+
+        /* The version the checkout is at or being moved to */
+        long sequence;
+        String revisionId;
+
+        int handles = 0;
+        long lastUsed;
+        long size = 0;
+
+        /* Released when the checkout is at its version on disk */
+        volatile CountDownLatch ready = new CountDownLatch(1);
+        volatile CheckoutException failure = null;
+
+        Entry(OnDiskCheckoutImpl checkout, long projectId, String path,
+                ProjectVersion pv) {
+            this.checkout = checkout;
+            this.directory = checkout.getLocalRoot();
+            this.projectId = projectId;
+            this.path = path;
+            this.sequence = pv.getSequence();
+            this.revisionId = pv.getRevisionId();
+        }
+
+        boolean matches(long projectId, String path) {
+            return this.projectId == projectId && this.path.equals(path);
+        }
+
+        /* Must be called with the pool lock held */
+        void moveTo(ProjectVersion pv) {
+            sequence = pv.getSequence();
+            revisionId = pv.getRevisionId();
+            ready = new CountDownLatch(1);
+            failure = null;
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.metricactivator;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.AlitheiaPlugin;
+import eu.sqooss.service.abstractmetric.Result.ResultType;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.EncapsulationUnitMeasurement;
+import eu.sqooss.service.db.ExecutionUnitMeasurement;
+import eu.sqooss.service.db.HQLQueryInterface;
+import eu.sqooss.service.db.MailMessageMeasurement;
+import eu.sqooss.service.db.MailingListThreadMeasurement;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.db.MetricMeasurement;
+import eu.sqooss.service.db.NameSpaceMeasurement;
+import eu.sqooss.service.db.ProjectFileMeasurement;
+import eu.sqooss.service.db.ProjectVersionMeasurement;
+import eu.sqooss.service.db.StoredProjectMeasurement;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.pa.PluginAdmin;
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * Converts measurements stored as untyped strings to typed ones, see
+ * {@link MetricMeasurement#migrate(ResultType)}. The type of the results
+ * of each metric is the one its plug-in declares when reading them back;
+ * measurements of metrics whose plug-in is not installed are left as they
+ * are, for a later run. Measurements are processed in pages, each 
+ * committed in its own transaction, so the job can be interrupted and 
+ * restarted at any point.
+ */
+public class MeasurementMigrationJob extends Job {
+
+    private static final int PAGE_SIZE = 1000;
+    
+    private static final String QRY_UNTYPED_METRICS = "select distinct " +
+            "m.metric from %s m where m.resultType is null";
+    
+    private static final String QRY_UNTYPED = "from %s m " +
+            "where m.resultType is null and m.metric.id = :metric " +
+            "and m.id > :last order by m.id asc";
+    
+    @SuppressWarnings("unchecked")
+    private static final Class<? extends MetricMeasurement>[] types = new Class[] {
+        StoredProjectMeasurement.class, ProjectVersionMeasurement.class,
+        ProjectFileMeasurement.class, MailMessageMeasurement.class,
+        MailingListThreadMeasurement.class, NameSpaceMeasurement.class,
+        EncapsulationUnitMeasurement.class, ExecutionUnitMeasurement.class
+    };
+    
+    private Logger logger;
+    private DBService dbs;
+    private PluginAdmin pa;
+    
+    public MeasurementMigrationJob(Logger l) {
+        this.logger = l;
+        this.dbs = AlitheiaCore.getInstance().getDBService();
+        this.pa = AlitheiaCore.getInstance().getPluginAdmin();
+    }
+
+    /* Below metric jobs, they can read untyped values just fine */
+    @Override
+    public long priority() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public Workload workload() {
+        return Workload.IO;
+    }
+
+    @Override
+    protected void run() throws Exception {
+        for (Class<? extends MetricMeasurement> type : types) {
+            long migrated = migrate(type);
+            if (migrated > 0)
+                logger.info("Converted " + migrated + " " 
+                        + type.getSimpleName() + " results to typed values");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private long migrate(Class<? extends MetricMeasurement> type) {
+        dbs.getSessionManager().startDBSession();
+        List<Metric> metrics = (List<Metric>) dbs.getQueryInterface(
+                HQLQueryInterface.class).doHQL(
+                String.format(QRY_UNTYPED_METRICS, type.getName()));
+        
+        /* Resolve the declared types before the session is closed */
+        Map<Metric, ResultType> declared = new HashMap<Metric, ResultType>();
+        for (Metric m : metrics) {
+            AlitheiaPlugin p = pa.getImplementingPlugin(m.getMnemonic());
+            ResultType t = null;
+            if (p instanceof AbstractMetric)
+                t = ((AbstractMetric) p).getResultType(type, m);
+            if (t == null) {
+                logger.info("Cannot find the result type of metric " 
+                        + m.getMnemonic() + ", leaving its " 
+                        + type.getSimpleName() + " results untyped");
+                continue;
+            }
+            declared.put(m, t);
+        }
+        dbs.getSessionManager().commitDBSession();
+        
+        long migrated = 0;
+        for (Map.Entry<Metric, ResultType> e : declared.entrySet()) {
+            long done = migrate(type, e.getKey(), e.getValue());
+            if (done < 0)
+                return migrated;
+            migrated += done;
+        }
+        return migrated;
+    }
+    
+    /*
+     * Convert the untyped results of a metric to the provided type.
+     * Returns the number of converted results, or -1 if a commit failed.
+     */
+    @SuppressWarnings("unchecked")
+    private long migrate(Class<? extends MetricMeasurement> type, Metric m, 
+            ResultType declared) {
+        String hql = String.format(QRY_UNTYPED, type.getName());
+        Map<String, Object> params = new HashMap<String, Object>();
+        long last = -1, migrated = 0;
+        List<MetricMeasurement> page;
+        
+        do {
+            dbs.getSessionManager().startDBSession();
+            params.put("metric", m.getId());
+            params.put("last", last);
+            page = (List<MetricMeasurement>) dbs.getQueryInterface(
+                    HQLQueryInterface.class).doHQL(hql, params, PAGE_SIZE);
+            for (MetricMeasurement mm : page) {
+                mm.migrate(declared);
+                last = mm.getId();
+            }
+            if (!dbs.getSessionManager().commitDBSession()) {
+                logger.warn("Failed to convert " + type.getSimpleName() 
+                        + " results of metric " + m.getMnemonic() 
+                        + " after id " + last);
+                return -1;
+            }
+            migrated += page.size();
+        } while (page.size() == PAGE_SIZE);
+        
+        return migrated;
+    }
+
+    @Override
+    public String toString() {
+        return "MeasurementMigrationJob";
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,194 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.metricactivator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.abstractmetric.AbstractMetric;
+import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
+import eu.sqooss.service.abstractmetric.MetricMismatchException;
+import eu.sqooss.service.db.DAObject;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.HQLQueryInterface;
+import eu.sqooss.service.db.Metric;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.Scheduler;
+import eu.sqooss.service.scheduler.SchedulerException;
+
+/**
+ * Metric job that runs a metric on a range of DAOs. The DAOs are
+ * processed in batches: the DAOs of each batch are loaded with a single 
+ * query, the supported metrics are resolved once and the results are
+ * committed in a single transaction. If processing a batch fails, its
+ * DAOs are retried individually, each in its own {@link MetricActivatorJob}.
+ */
+public class MetricActivatorBatchJob extends Job {
+
+    private static final String QRY_LOAD = "from %s o where o.id in (:ids)";
+    
+    private Logger logger;
+    private DBService dbs;
+    private Scheduler sched;
+    private long[] daoIDs;
+    private AbstractMetric metric;
+    private long priority;
+    Class<? extends DAObject> daoType;
+    private int batchSize;
+    private boolean fastSync = false; 
+    
+    MetricActivatorBatchJob(AbstractMetric m, long[] daoIDs, Logger l,
+            Class<? extends DAObject> daoType, long priority, int batchSize,
+            boolean fastSync) {
+        this.metric = m;
+        this.logger = l;
+        this.daoIDs = daoIDs;
+        this.daoType = daoType;
+        this.dbs = AlitheiaCore.getInstance().getDBService();
+        this.sched = AlitheiaCore.getInstance().getScheduler();
+        this.priority = priority;
+        this.batchSize = Math.max(1, batchSize);
+        this.fastSync = fastSync;
+    }
+    
+    @Override
+    public long priority() {
+        return priority;
+    }
+
+    @Override
+    public Workload workload() {
+        return Workload.IO;
+    }
+
+    @Override
+    protected void run() throws Exception {
+        metric.setJob(this);
+        for (int from = 0; from < daoIDs.length; from += batchSize) {
+            int to = Math.min(daoIDs.length, from + batchSize);
+            if (!runBatch(from, to)) {
+                retryIndividually(from, to);
+            }
+        }
+    }
+
+    /**
+     * Run the metric on the DAOs in the provided index range.
+     * @return false if the batch failed and has been rolled back
+     */
+    @SuppressWarnings("unchecked")
+    private boolean runBatch(int from, int to) {
+        dbs.getSessionManager().startDBSession();
+        
+        List<Long> ids = new ArrayList<Long>(to - from);
+        for (int i = from; i < to; i++) {
+            ids.add(daoIDs[i]);
+        }
+        Map<String, Collection> params = new HashMap<String, Collection>();
+        params.put("ids", ids);
+        
+        try {
+            List<DAObject> objs = (List<DAObject>) dbs.getQueryInterface(
+                    HQLQueryInterface.class).doHQL(
+                    String.format(QRY_LOAD, daoType.getName()), null, params);
+            
+            /*
+             * Resolve the metrics to calculate once per batch. On fast
+             * sync, we trust that if there is a value for one of the 
+             * metrics the plug-in provides, there will be a value for all.
+             */
+            List<Metric> supported = metric.getSupportedMetrics(daoType);
+            if (fastSync && !supported.isEmpty()) {
+                supported = supported.subList(0, 1);
+            }
+
+            for (DAObject obj : objs) {
+                try {
+                    metric.getResult(obj, supported);
+                } catch (MetricMismatchException e) {
+                    logger.warn("Metric " + metric.getName() + " failed");
+                } catch (AlreadyProcessingException ape) {
+                    /*
+                     * The metric may have stored part of the results of obj
+                     * before it hit the lock, so the session cannot be
+                     * committed. Drop the batch and retry its DAOs one by one.
+                     */
+                    logger.warn("DAO id " + obj.getId() + " is locked, " +
+                            "retrying " + daoType.getSimpleName() + " batch "
+                            + ids.get(0) + "-" + ids.get(ids.size() - 1)
+                            + " individually");
+                    dbs.getSessionManager().rollbackDBSession();
+                    return false;
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Metric " + metric.getName() + " failed on " 
+                    + daoType.getSimpleName() + " batch " + ids.get(0) + "-"
+                    + ids.get(ids.size() - 1) + ": " + e.getMessage());
+            if (dbs.getSessionManager().isDBSessionActive()) {
+                dbs.getSessionManager().rollbackDBSession();
+            }
+            return false;
+        }
+
+        if (!dbs.getSessionManager().commitDBSession()) {
+            logger.warn("commit failed for " + daoType.getSimpleName() 
+                    + " batch " + ids.get(0) + "-" + ids.get(ids.size() - 1));
+            return false;
+        }
+        return true;
+    }
+    
+    private void retryIndividually(int from, int to) throws SchedulerException {
+        for (int i = from; i < to; i++) {
+            sched.enqueue(new MetricActivatorJob(metric, daoIDs[i], logger,
+                    daoType, priority, fastSync));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "MetricActivatorBatchJob: Metric:{" + metric.getName() 
+            + "} Activator:{" + daoType.getSimpleName() + "} DAOs:{" 
+            + daoIDs.length + " from " + daoIDs[0] + "}";
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
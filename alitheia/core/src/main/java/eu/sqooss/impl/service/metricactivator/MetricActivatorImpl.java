@@ -71,9 +71,18 @@ import eu.sqooss.service.scheduler.Job;
 import eu.sqooss.service.scheduler.Scheduler;
 import eu.sqooss.service.scheduler.SchedulerException;
 import eu.sqooss.service.util.GraphTS;
+import eu.sqooss.service.util.LongIdSet;
+import eu.sqooss.service.util.LongIterator;
+import eu.sqooss.service.util.UnionLongIterator;
 
 public class MetricActivatorImpl  implements MetricActivator {
 
+    /** Number of batches processed by each batch metric job */
+    private static final int BATCHES_PER_JOB = 10;
+
+    /** Number of jobs to create before handing them to the scheduler */
+    private static final int ENQUEUE_CHUNK = 1000;
+
     /** The parent bundle's context object. */
     private BundleContext bc;
 
@@ -83,6 +92,7 @@ public class MetricActivatorImpl  implements MetricActivator {
     private DBService db;
     private Scheduler sched;
     private boolean fastSync = false;
+    private int batchSize = 1;
 
     private AtomicLong priority;
     
@@ -301,24 +311,25 @@ public class MetricActivatorImpl  implements MetricActivator {
 
             List<Metric> metrics = pa.getPlugin(mi).getAllSupportedMetrics();
             
-            Map<MetricType.Type, TreeSet<Long>> objectIds = new HashMap<MetricType.Type, TreeSet<Long>>();
+            Map<MetricType.Type, List<LongIterator>> objectIds = 
+                new HashMap<MetricType.Type, List<LongIterator>>();
 
             for (Metric m : metrics) {
-            	Map<MetricType.Type, SortedSet<Long>> IDs = 
+            	Map<MetricType.Type, LongIterator> IDs = 
             		pa.getImplementingPlugin(m.getMnemonic()).getObjectIdsToSync(sp, m);
             	for (MetricType.Type t : IDs.keySet()) {
             		
             		if (objectIds.get(t) == null) {
-                    	objectIds.put(t, new TreeSet<Long>());	
+                    	objectIds.put(t, new ArrayList<LongIterator>());	
                     }
                     
-                    objectIds.get(t).addAll(IDs.get(t));
+                    objectIds.get(t).add(IDs.get(t));
             	}
             }
             
             AbstractMetric metric = 
                 (AbstractMetric) bc.getService(mi.getServiceRef());
-            HashSet<Job> jobs = new HashSet<Job>();
+            Set<Job> jobs = new LinkedHashSet<Job>();
             
             /*Check what is the default activation ordering as suggested by the metric*/
             Class<? extends DAObject>[] activOrder;
@@ -345,55 +356,75 @@ public class MetricActivatorImpl  implements MetricActivator {
             		continue;
 
                 //We assume that resource IDs increase monotonically
-                TreeSet<Long> ids = objectIds.get(actType);
-                TreeSet<Long> tmp = null;
-                if (invOrder.equals(InvocationOrder.NEWFIRST)) {
-                    tmp = new TreeSet<Long>(new DecreasingLongComparator());
-                } else if (invOrder.equals(InvocationOrder.RANDOM)) {
-                    tmp = new TreeSet<Long>(new RandomizedComparator());
+                LongIterator ids = new UnionLongIterator(objectIds.get(actType));
+
+                /* 
+                 * Only orderings other than the natural id order need
+                 * to see all ids before scheduling; otherwise, ids are
+                 * streamed straight into jobs. 
+                 */
+                if (!invOrder.equals(InvocationOrder.OLDFIRST)) {
+                    long[] all = new LongIdSet(ids).toArray();
+                    if (invOrder.equals(InvocationOrder.NEWFIRST)) {
+                        LongIdSet.reverse(all);
+                    } else if (invOrder.equals(InvocationOrder.RANDOM)) {
+                        LongIdSet.shuffle(all, new Random());
+                    }
+                    ids = LongIdSet.iterator(all);
                 }
 
-                if (tmp != null) {
-                    tmp.addAll(ids);
-                    ids = tmp;
+                if (batchSize <= 1) {
+                    while (ids.hasNext()) {
+                        jobs.add(new MetricActivatorJob(metric, ids.next(), logger, 
+                            metricTypesToActivators.get(actType),
+                            priority.incrementAndGet(),
+                            fastSync));
+                        flush(jobs, false);
+                    }
+                    continue;
                 }
 
-                for (Long l : ids) {
-            		jobs.add(new MetricActivatorJob(metric, l, logger, 
-            			metricTypesToActivators.get(actType),
-            			priority.incrementAndGet(),
-            			fastSync));
-            	}
+                /* Split the ids in ranges, each processed by a batch job */
+                long[] range = new long[batchSize * BATCHES_PER_JOB];
+                int n = 0;
+                while (ids.hasNext()) {
+                    range[n++] = ids.next();
+                    if (n == range.length) {
+                        jobs.add(newBatchJob(metric, range.clone(), actType));
+                        n = 0;
+                        flush(jobs, false);
+                    }
+                }
+                if (n > 0) {
+                    jobs.add(newBatchJob(metric, Arrays.copyOf(range, n), actType));
+                }
             }
-            sched.enqueueNoDependencies(jobs);
+            flush(jobs, true);
             dbs.getSessionManager().commitDBSession();
         }
         
-        @Override
-        public String toString() {
-            return "MetricSchedulerJob - Project:{" + sp + "} Metric:{" + m + "}";
+        /*
+         * Enqueue jobs in chunks, so that the number of job objects 
+         * held in memory does not grow with the number of ids to sync.
+         */
+        private void flush(Set<Job> jobs, boolean force) 
+            throws SchedulerException {
+            if (jobs.isEmpty() || (!force && jobs.size() < ENQUEUE_CHUNK))
+                return;
+            sched.enqueueNoDependencies(jobs);
+            jobs.clear();
         }
-    }
-
-    class DecreasingLongComparator implements Comparator<Long> {
-        @Override
-        public int compare(Long a, Long b) {
-            if (a > b)
-                return -1;
-            else if (a < b)
-                return 1;
-            return 0;
+        
+        private Job newBatchJob(AbstractMetric metric, long[] ids, 
+                MetricType.Type actType) {
+            return new MetricActivatorBatchJob(metric, ids, logger, 
+                    metricTypesToActivators.get(actType),
+                    priority.incrementAndGet(), batchSize, fastSync);
         }
-    }
-
-    class RandomizedComparator implements Comparator<Long> {
-        Random r = new Random();
+        
         @Override
-        public int compare(Long a, Long b) {
-            if(r.nextBoolean())
-                return -1;
-            else
-                return 1;
+        public String toString() {
+            return "MetricSchedulerJob - Project:{" + sp + "} Metric:{" + m + "}";
         }
     }
 
@@ -435,6 +466,22 @@ public class MetricActivatorImpl  implements MetricActivator {
         
         if (sync != null && sync.equalsIgnoreCase("fast"))
             this.fastSync = true;
+        
+        String batch = bc.getProperty("eu.sqooss.metricactivator.batchsize");
+        if (batch != null) {
+            try {
+                this.batchSize = Integer.parseInt(batch);
+            } catch (NumberFormatException nfe) {
+                logger.warn("Invalid metric activation batch size:" + batch);
+            }
+        }
+        
+        /* Convert results stored before typed result columns existed */
+        try {
+            sched.enqueue(new MeasurementMigrationJob(logger));
+        } catch (SchedulerException e) {
+            logger.error("Could not start measurement migration job");
+        }
 	
         return true;
 	}
@@ -81,6 +81,11 @@ public class MetricActivatorJob extends Job {
         return priority;
     }
 
+    @Override
+    public Workload workload() {
+        return Workload.IO;
+    }
+
     @Override
     protected void run() throws Exception {
         dbs.getSessionManager().startDBSession();
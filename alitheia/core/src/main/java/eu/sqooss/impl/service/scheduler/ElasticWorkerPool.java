@@ -0,0 +1,182 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.scheduler;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.Scheduler;
+import eu.sqooss.service.scheduler.SchedulerStats;
+
+/**
+ * A pool of worker threads that grows when jobs are waiting in its queue
+ * and all threads are busy, and shrinks back to a single thread when
+ * threads stay idle. Used for I/O bound jobs, which spend most of their
+ * time waiting on the database; the pool size should therefore not 
+ * exceed the size of the database connection pool.
+ */
+class ElasticWorkerPool {
+
+    private final Scheduler scheduler;
+    private final SchedulerStats stats;
+    private final JobQueue queue;
+    private final int maxThreads;
+    private final long keepAlive;
+
+    private final AtomicInteger threads = new AtomicInteger(0);
+    private final AtomicInteger idle = new AtomicInteger(0);
+    private final AtomicInteger nextId = new AtomicInteger(0);
+    private final Set<Worker> workers = 
+        Collections.newSetFromMap(new ConcurrentHashMap<Worker, Boolean>());
+    private volatile boolean running = false;
+
+    /**
+     * @param queue The queue to take jobs from
+     * @param maxThreads The maximum number of threads in the pool
+     * @param keepAlive Time in msec an idle thread waits for work before
+     *  it is stopped
+     */
+    ElasticWorkerPool(Scheduler scheduler, SchedulerStats stats,
+            JobQueue queue, int maxThreads, long keepAlive) {
+        this.scheduler = scheduler;
+        this.stats = stats;
+        this.queue = queue;
+        this.maxThreads = Math.max(1, maxThreads);
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Start the pool with a single thread, which is kept alive while 
+     * the pool is running.
+     */
+    void start() {
+        running = true;
+        threads.incrementAndGet();
+        startWorker();
+    }
+
+    /**
+     * Stop all threads, after they have finished their current job.
+     */
+    void stop() {
+        running = false;
+        for (Worker w : workers) {
+            w.stopProcessing();
+        }
+    }
+
+    /**
+     * Notify the pool that a job might have been made runnable in its
+     * queue. Starts a new thread if none is idle and the pool has not
+     * reached its maximum size.
+     */
+    void jobAvailable() {
+        if (!running || idle.get() > 0)
+            return;
+        while (true) {
+            int n = threads.get();
+            if (n >= maxThreads)
+                return;
+            if (threads.compareAndSet(n, n + 1))
+                break;
+        }
+        startWorker();
+    }
+
+    int size() {
+        return threads.get();
+    }
+
+    private void startWorker() {
+        Worker w = new Worker(nextId.getAndIncrement());
+        workers.add(w);
+        stats.incWorkerThreads();
+        w.start();
+    }
+
+    /**
+     * Remove a thread from the pool, unless it is the last one.
+     */
+    private boolean retire() {
+        while (true) {
+            int n = threads.get();
+            if (n <= 1 && running)
+                return false;
+            if (threads.compareAndSet(n, n - 1))
+                return true;
+        }
+    }
+
+    private class Worker extends WorkerThreadImpl {
+
+        Worker(int n) {
+            super(scheduler, -1);
+            setName("I/O Worker " + n);
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    Job j = null;
+                    idle.incrementAndGet();
+                    try {
+                        j = queue.poll(keepAlive, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        continue;
+                    } finally {
+                        idle.decrementAndGet();
+                    }
+
+                    if (j != null) {
+                        executeJob(j);
+                    } else if (retire()) {
+                        return;
+                    }
+                }
+                retire();
+            } finally {
+                workers.remove(this);
+                stats.decWorkerThreads();
+            }
+        }
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
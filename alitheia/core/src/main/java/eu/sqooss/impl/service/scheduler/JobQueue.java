@@ -0,0 +1,104 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.scheduler;
+
+import java.util.concurrent.TimeUnit;
+
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * The queueing engine behind the scheduler. A job queue keeps track of
+ * two kinds of jobs: jobs that wait for their dependencies to finish
+ * (blocked jobs) and jobs that can be handed out to worker threads
+ * (runnable jobs). Implementations are responsible for their own
+ * thread safety; the scheduler does not lock around calls to the queue.
+ */
+public interface JobQueue {
+
+    /**
+     * Add a job whose dependencies have not been checked yet. The job
+     * is kept as blocked until {@link #dependenciesChanged(Job)} is called.
+     */
+    void addBlocked(Job job);
+
+    /**
+     * Add a job that can be executed right away.
+     */
+    void addRunnable(Job job);
+
+    /**
+     * Re-evaluate the dependencies of a job and move it between the
+     * blocked and the runnable jobs accordingly.
+     */
+    void dependenciesChanged(Job job);
+
+    /**
+     * Mark a job as blocked, even if it is runnable. Used when a job
+     * yields its execution.
+     */
+    void block(Job job);
+
+    /**
+     * Remove a job from the queue.
+     * @return true if the job was in the queue and has been removed
+     */
+    boolean remove(Job job);
+
+    /**
+     * Check whether a job is in the queue, either blocked or runnable.
+     */
+    boolean contains(Job job);
+
+    /**
+     * Take the next runnable job from the queue, blocking until one
+     * becomes available.
+     */
+    Job take() throws InterruptedException;
+
+    /**
+     * Take the next runnable job from the queue, waiting up to the 
+     * specified time for one to become available.
+     * @return The job or null if the timeout expired.
+     */
+    Job poll(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Take a specific job from the runnable jobs, without blocking.
+     * @return The job or null if it is not runnable or not in the queue.
+     */
+    Job take(Job job);
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,112 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.scheduler;
+
+import java.util.PriorityQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * The original scheduler queue: a priority queue for blocked jobs and a
+ * priority blocking queue for runnable jobs, with all state changes
+ * serialized on the queue object.
+ */
+public class PriorityJobQueue implements JobQueue {
+
+    private PriorityQueue<Job> blockedQueue = new PriorityQueue<Job>(1,
+            new JobPriorityComparator());
+    private BlockingQueue<Job> workQueue = new PriorityBlockingQueue<Job>(1,
+            new JobPriorityComparator());
+
+    public synchronized void addBlocked(Job job) {
+        blockedQueue.add(job);
+    }
+
+    public synchronized void addRunnable(Job job) {
+        workQueue.add(job);
+    }
+
+    public synchronized void dependenciesChanged(Job job) {
+        if (workQueue.contains(job) && !job.canExecute()) {
+            workQueue.remove(job);
+            blockedQueue.add(job);
+        } else if (job.canExecute()) {
+            blockedQueue.remove(job);
+            workQueue.add(job);
+        }
+    }
+
+    public synchronized void block(Job job) {
+        workQueue.remove(job);
+        blockedQueue.add(job);
+    }
+
+    public synchronized boolean remove(Job job) {
+        boolean blocked = blockedQueue.remove(job);
+        boolean runnable = workQueue.remove(job);
+        return blocked || runnable;
+    }
+
+    public synchronized boolean contains(Job job) {
+        return blockedQueue.contains(job) || workQueue.contains(job);
+    }
+
+    public Job take() throws InterruptedException {
+        /*
+         * no synchronize needed here, the queue is doing that adding
+         * synchronize here would actually dead-lock this, since no new items
+         * can be added as long someone is waiting for items
+         */
+        return workQueue.take();
+    }
+
+    public Job poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return workQueue.poll(timeout, unit);
+    }
+
+    public Job take(Job job) {
+        synchronized (workQueue) {
+            if (!workQueue.remove(job)) {
+                return null;
+            }
+            return job;
+        }
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -33,14 +33,13 @@
 
 package eu.sqooss.impl.service.scheduler;
 
+import java.util.Collections;
 import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.PriorityQueue;
 import java.util.Set;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
 
 import org.osgi.framework.BundleContext;
 
@@ -55,6 +54,9 @@ import eu.sqooss.service.scheduler.WorkerThread;
 public class SchedulerServiceImpl implements Scheduler {
 
     private static final String START_THREADS_PROPERTY = "eu.sqooss.scheduler.numthreads";
+    private static final String QUEUE_PROPERTY = "eu.sqooss.scheduler.queue";
+    private static final String IO_THREADS_PROPERTY = "eu.sqooss.scheduler.iothreads";
+    private static final long IO_THREADS_KEEPALIVE = 60000;
     private static final String PERF_LOG_PROPERTY = "eu.sqooss.log.perf";
     
     private Logger logger = null;
@@ -63,93 +65,93 @@ public class SchedulerServiceImpl implements Scheduler {
     private SchedulerStats stats = new SchedulerStats();
 
     // thread safe job queue
-    private PriorityQueue<Job> blockedQueue = new PriorityQueue<Job>(1,
-            new JobPriorityComparator());
-    private BlockingQueue<Job> workQueue = new PriorityBlockingQueue<Job>(1,
-            new JobPriorityComparator());
+    private JobQueue queue;
+    
+    // queue for I/O bound jobs, if those run on a separate pool 
+    private JobQueue ioQueue = null;
+    private ElasticWorkerPool ioWorkers = null;
 
     private BlockingQueue<Job> failedQueue = new ArrayBlockingQueue<Job>(1000);
 
     private List<WorkerThread> myWorkerThreads = null;
     
-    public SchedulerServiceImpl() { }
+    public SchedulerServiceImpl() {
+        queue = newQueue(numThreads());
+    }
 
-    public void enqueue(Job job) throws SchedulerException {
-        synchronized (this) {
-            if (logger != null)
-                logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
-            job.callAboutToBeEnqueued(this);
-            blockedQueue.add(job);
-            stats.addWaitingJob(job.getClass().toString());
-            stats.incTotalJobs();
+    private JobQueue newQueue(int numThreads) {
+        String queueProperty = System.getProperty(QUEUE_PROPERTY);
+        if ("workstealing".equals(queueProperty)) {
+            return new WorkStealingJobQueue(numThreads);
         }
+        return new PriorityJobQueue();
+    }
+    
+    private JobQueue queueFor(Job job) {
+        if (ioQueue != null && job.workload() == Job.Workload.IO)
+            return ioQueue;
+        return queue;
+    }
+
+    public void enqueue(Job job) throws SchedulerException {
+        if (logger != null)
+            logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
+        Job.checkAcyclic(Collections.singletonList(job));
+        job.callAboutToBeEnqueued(this);
+        queueFor(job).addBlocked(job);
+        stats.addWaitingJob(job.getClass().toString());
+        stats.incTotalJobs();
         jobDependenciesChanged(job);
     }
     
     public void enqueueNoDependencies(Set<Job> jobs) throws SchedulerException {
-        synchronized (this) {
-            for (Job job : jobs) {
-                logger.debug("Scheduler ServiceImpl: queuing job "
-                        + job.toString());
-                job.callAboutToBeEnqueued(this);
-                workQueue.add(job);
-                stats.addWaitingJob(job.getClass().toString());
-                stats.incTotalJobs();
-            }
+        for (Job job : jobs) {
+            logger.debug("Scheduler ServiceImpl: queuing job "
+                    + job.toString());
+            job.callAboutToBeEnqueued(this);
+            queueFor(job).addRunnable(job);
+            stats.addWaitingJob(job.getClass().toString());
+            stats.incTotalJobs();
+            if (ioWorkers != null && queueFor(job) == ioQueue)
+                ioWorkers.jobAvailable();
         }
     }
     
     public void enqueueBlock(List<Job> jobs) throws SchedulerException {
-        synchronized (this) {
-            for (Job job : jobs) {
-                logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
-                job.callAboutToBeEnqueued(this);
-                blockedQueue.add(job);
-                stats.addWaitingJob(job.getClass().toString());
-                stats.incTotalJobs();
-            }
+        Job.checkAcyclic(jobs);
+        for (Job job : jobs) {
+            logger.debug("SchedulerServiceImpl: queuing job " + job.toString());
+            job.callAboutToBeEnqueued(this);
+            queueFor(job).addBlocked(job);
+            stats.addWaitingJob(job.getClass().toString());
+            stats.incTotalJobs();
         }
         for (Job job : jobs)
             jobDependenciesChanged(job);
     }
 
     public void dequeue(Job job) {
-        synchronized (this) {
-            if (!blockedQueue.contains(job) && !workQueue.contains(job)) {
-                if (logger != null) {
-                    logger.info("SchedulerServiceImpl: job " + job.toString()
-                            + " not found in the queue.");
-                }
-                return;
+        if (!queueFor(job).contains(job)) {
+            if (logger != null) {
+                logger.info("SchedulerServiceImpl: job " + job.toString()
+                        + " not found in the queue.");
             }
-            job.callAboutToBeDequeued(this);
-            blockedQueue.remove(job);
-            workQueue.remove(job);
-        }
-        if (logger != null) {
-            logger.warn("SchedulerServiceImpl: job " + job.toString()
-                    + " not found in the queue.");
+            return;
         }
+        job.callAboutToBeDequeued(this);
+        queueFor(job).remove(job);
     }
 
     public Job takeJob() throws java.lang.InterruptedException {
-        /*
-         * no synchronize needed here, the queue is doing that adding
-         * synchronize here would actually dead-lock this, since no new items
-         * can be added as long someone is waiting for items
-         */
-        return workQueue.take();
+        return queue.take();
     }
 
     public Job takeJob(Job job) throws SchedulerException {
-        synchronized (workQueue) {
-            if (!workQueue.contains(job)) {
-                throw new SchedulerException("Can't take job " + job
-                        + ": It is not in the scheduler's queue right now.");
-            }
-            workQueue.remove(job);
-            return job;
+        if (queueFor(job).take(job) == null) {
+            throw new SchedulerException("Can't take job " + job
+                    + ": It is not in the scheduler's queue right now.");
         }
+        return job;
     }
     
     public void jobStateChanged(Job job, Job.State state) {
@@ -178,15 +180,10 @@ public class SchedulerServiceImpl implements Scheduler {
     }
 
     public void jobDependenciesChanged(Job job) {
-        synchronized (this) {
-            if (workQueue.contains(job) && !job.canExecute()) {
-                workQueue.remove(job);
-                blockedQueue.add(job);
-            } else if (job.canExecute()) {
-                blockedQueue.remove(job);
-                workQueue.add(job);
-            }
-        }
+        JobQueue q = queueFor(job);
+        q.dependenciesChanged(job);
+        if (ioWorkers != null && q == ioQueue)
+            ioWorkers.jobAvailable();
     }
 
     public void startExecute(int n) {
@@ -256,22 +253,32 @@ public class SchedulerServiceImpl implements Scheduler {
 
 	@Override
 	public void shutDown() {
+	    if (ioWorkers != null)
+	        ioWorkers.stop();
 	}
 
 	@Override
 	public boolean startUp() {
         
-        int numThreads = 2 * Runtime.getRuntime().availableProcessors(); 
-        String threadsProperty = System.getProperty(START_THREADS_PROPERTY);
+        logger.info("Using " + queue.getClass().getSimpleName() + " job queue");
+        startExecute(numThreads());
         
-        if (threadsProperty != null && !threadsProperty.equals("-1")) {
+        String ioThreadsProperty = System.getProperty(IO_THREADS_PROPERTY);
+        if (ioThreadsProperty != null) {
             try {
-                numThreads = Integer.parseInt(threadsProperty);
+                int ioThreads = Integer.parseInt(ioThreadsProperty);
+                if (ioThreads > 0) {
+                    logger.info("Running I/O bound jobs on up to " 
+                            + ioThreads + " elastic worker threads");
+                    ioQueue = newQueue(1);
+                    ioWorkers = new ElasticWorkerPool(this, stats, ioQueue,
+                            ioThreads, IO_THREADS_KEEPALIVE);
+                    ioWorkers.start();
+                }
             } catch (NumberFormatException nfe) {
-                logger.warn("Invalid number of threads to start:" + threadsProperty);
+                logger.warn("Invalid number of I/O threads:" + ioThreadsProperty);
             }
         }
-        startExecute(numThreads);
         
         String perfLog = System.getProperty(PERF_LOG_PROPERTY);
         if (perfLog != null && perfLog.equals("true")) {
@@ -282,6 +289,21 @@ public class SchedulerServiceImpl implements Scheduler {
         return true;
 	}
 
+    private int numThreads() {
+        int numThreads = 2 * Runtime.getRuntime().availableProcessors(); 
+        String threadsProperty = System.getProperty(START_THREADS_PROPERTY);
+        
+        if (threadsProperty != null && !threadsProperty.equals("-1")) {
+            try {
+                numThreads = Integer.parseInt(threadsProperty);
+            } catch (NumberFormatException nfe) {
+                if (logger != null)
+                    logger.warn("Invalid number of threads to start:" + threadsProperty);
+            }
+        }
+        return numThreads;
+    }
+
     @Override
     public boolean createAuxQueue(Job j, Deque<Job> jobs, ResumePoint p)
             throws SchedulerException {
@@ -300,12 +322,11 @@ public class SchedulerServiceImpl implements Scheduler {
     }
 
     @Override
-    public synchronized void yield(Job j, ResumePoint p) throws SchedulerException {
+    public void yield(Job j, ResumePoint p) throws SchedulerException {
         
         if (j.state() != Job.State.Yielded)
             j.yield(p);
-        workQueue.remove(j);
-        blockedQueue.add(j);
+        queueFor(j).block(j);
     }
 }
 
@@ -0,0 +1,255 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.impl.service.scheduler;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * A job queue that does not serialize its clients on a single monitor.
+ * 
+ * Runnable jobs are spread over a number of shards, one per worker thread.
+ * Each shard holds a lock-free deque per priority band; the band of a job
+ * is the base 2 logarithm of its priority, so jobs in lower bands are
+ * always preferred. A worker takes jobs from the head of its own shard
+ * and, when that is empty, steals from the head of the other shards, so
+ * the jobs of a band in each shard are served in FIFO order; there is no
+ * order between jobs of the same band in different shards. Jobs enqueued
+ * from within a worker thread go to that worker's shard, all other jobs
+ * are distributed round robin.
+ * 
+ * Every runnable job is represented by a handle, which is also kept in
+ * a job to handle map. Removing a job only marks its handle as claimed
+ * (O(1)); stale handles are dropped when a worker encounters them.
+ */
+public class WorkStealingJobQueue implements JobQueue {
+
+    /** Number of priority bands; priorities from 2^14 up share the last one */
+    static final int BANDS = 16;
+
+    private static final class Handle {
+        final Job job;
+        final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        Handle(Job job) {
+            this.job = job;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    private final ConcurrentLinkedDeque<Handle>[][] shards;
+    private final ConcurrentHashMap<Job, Handle> runnable =
+        new ConcurrentHashMap<Job, Handle>();
+    private final Set<Job> blocked =
+        Collections.newSetFromMap(new ConcurrentHashMap<Job, Boolean>());
+
+    /** One permit per handle in the shards, including stale ones */
+    private final Semaphore available = new Semaphore(0);
+    private final AtomicInteger nextShard = new AtomicInteger(0);
+
+    @SuppressWarnings("unchecked")
+    public WorkStealingJobQueue(int numShards) {
+        if (numShards < 1)
+            numShards = 1;
+        shards = new ConcurrentLinkedDeque[numShards][BANDS];
+        for (int i = 0; i < numShards; i++)
+            for (int j = 0; j < BANDS; j++)
+                shards[i][j] = new ConcurrentLinkedDeque<Handle>();
+    }
+
+    static int band(long priority) {
+        if (priority <= 0)
+            return 0;
+        return Math.min(BANDS - 1, 64 - Long.numberOfLeadingZeros(priority));
+    }
+
+    public void addBlocked(Job job) {
+        blocked.add(job);
+    }
+
+    public void addRunnable(Job job) {
+        Handle h = new Handle(job);
+        while (true) {
+            Handle old = runnable.putIfAbsent(job, h);
+            if (old == null)
+                break;
+            if (!old.claimed.get())
+                return; //Already queued
+            if (runnable.replace(job, old, h))
+                break;
+        }
+        shards[pushShard()][band(job.priority())].offerLast(h);
+        available.release();
+    }
+
+    public void dependenciesChanged(Job job) {
+        if (job.canExecute()) {
+            if (blocked.remove(job))
+                addRunnable(job);
+            return;
+        }
+
+        if (!claim(job))
+            return;
+        blocked.add(job);
+        /* A dependency might have finished before the job was blocked */
+        if (job.canExecute() && blocked.remove(job))
+            addRunnable(job);
+    }
+
+    public void block(Job job) {
+        claim(job);
+        blocked.add(job);
+    }
+
+    public boolean remove(Job job) {
+        boolean wasBlocked = blocked.remove(job);
+        return claim(job) || wasBlocked;
+    }
+
+    public boolean contains(Job job) {
+        return runnable.containsKey(job) || blocked.contains(job);
+    }
+
+    public Job take() throws InterruptedException {
+        int home = homeShard();
+        while (true) {
+            available.acquire();
+            Job j = dispatch(home);
+            if (j != null)
+                return j;
+        }
+    }
+
+    public Job poll(long timeout, TimeUnit unit) throws InterruptedException {
+        int home = homeShard();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            long left = Math.max(0, deadline - System.nanoTime());
+            if (!available.tryAcquire(left, TimeUnit.NANOSECONDS))
+                return null;
+            Job j = dispatch(home);
+            if (j != null)
+                return j;
+        }
+    }
+
+    public Job take(Job job) {
+        return claim(job) ? job : null;
+    }
+
+    /**
+     * Claim the runnable handle of a job, removing it from the map. The
+     * handle itself stays in its shard until a worker drops it.
+     */
+    private boolean claim(Job job) {
+        Handle h = runnable.get(job);
+        if (h == null || !h.claim())
+            return false;
+        runnable.remove(job, h);
+        return true;
+    }
+
+    /**
+     * Hand out the job of the next handle, after a permit has been acquired.
+     * @return The job or null if the handle was stale, in which case its
+     *  permit is used up.
+     */
+    private Job dispatch(int home) {
+        Handle h = poll(home);
+        /*
+         * Each permit is backed by a handle that has been offered 
+         * before the permit was released, so one is bound to show up.
+         */
+        while (h == null) {
+            Thread.yield();
+            h = poll(home);
+        }
+        if (!h.claim())
+            return null;
+        runnable.remove(h.job, h);
+        return h.job;
+    }
+
+    private Handle poll(int home) {
+        int n = shards.length;
+        for (int band = 0; band < BANDS; band++) {
+            if (home >= 0) {
+                Handle h = shards[home][band].pollFirst();
+                if (h != null)
+                    return h;
+            }
+            for (int i = 1; i <= n; i++) {
+                int victim = (Math.max(home, 0) + i) % n;
+                if (victim == home)
+                    continue;
+                Handle h = shards[victim][band].pollFirst();
+                if (h != null)
+                    return h;
+            }
+        }
+        return null;
+    }
+
+    private int homeShard() {
+        Thread t = Thread.currentThread();
+        if (t instanceof WorkerThreadImpl) {
+            int idx = ((WorkerThreadImpl) t).getIndex();
+            if (idx >= 0)
+                return idx % shards.length;
+        }
+        return -1;
+    }
+
+    private int pushShard() {
+        int home = homeShard();
+        if (home >= 0)
+            return home;
+        return (nextShard.getAndIncrement() & Integer.MAX_VALUE) % shards.length;
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
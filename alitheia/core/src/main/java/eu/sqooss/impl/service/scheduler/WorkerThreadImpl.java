@@ -59,14 +59,18 @@ class WorkerThreadImpl extends Thread implements WorkerThread {
     
     private boolean m_oneshot = false;
     
+    private int m_index = -1;
+    
     /**
      * Constructor creating a new WorkerThread
      * @param s the schedule being asked for jobs.
+     * @param n the index of the thread in the scheduler's thread pool
      */
     public WorkerThreadImpl(Scheduler s, int n) {
 
     	super(null, null, "Worker ");
         m_scheduler = s;
+        m_index = n;
         String perfLog = System.getProperty(PERF_LOG_PROPERTY);
         if (perfLog != null && perfLog.equals("true")) {
             this.perfLog = true;
@@ -113,6 +117,14 @@ class WorkerThreadImpl extends Thread implements WorkerThread {
 		return m_job;
 	}
 
+	/**
+	 * The index of this thread in the scheduler's thread pool or -1
+	 * for threads outside the pool.
+	 */
+	int getIndex() {
+		return m_index;
+	}
+
 	protected void executeJob(Job j) {
 		Job oldJob = m_job;
 		long time = -1;
@@ -45,6 +45,7 @@ public class DiffChunkImpl implements DiffChunk {
 	private DiffOp diffOp;
 	private String path;
 	private int sourceLenght, sourceStartLine, targetLength, targetStartLine;
+	private int addedLines, removedLines;
 
 	public void setDiffOp(DiffOp getDiffOp) {
 		this.diffOp = getDiffOp;
@@ -74,6 +75,14 @@ public class DiffChunkImpl implements DiffChunk {
 		this.targetStartLine = targetStartLine;
 	}
 
+	public void setAddedLines(int addedLines) {
+		this.addedLines = addedLines;
+	}
+
+	public void setRemovedLines(int removedLines) {
+		this.removedLines = removedLines;
+	}
+
 	public String getChunk() {
 		return chunk;
 	}
@@ -98,6 +107,14 @@ public class DiffChunkImpl implements DiffChunk {
 		return targetStartLine;
 	}
 
+	public int getAddedLines() {
+		return addedLines;
+	}
+
+	public int getRemovedLines() {
+		return removedLines;
+	}
+
 	public DiffOp getDiffOp() {
 		return diffOp;
 	}
@@ -33,9 +33,7 @@
 
 package eu.sqooss.impl.service.tds.diff;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -43,51 +41,82 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import eu.sqooss.service.tds.Diff;
 import eu.sqooss.service.tds.DiffChunk;
+import eu.sqooss.service.tds.DiffOutputStream;
 import eu.sqooss.service.tds.Revision;
 import eu.sqooss.service.tds.DiffChunk.DiffOp;
 import eu.sqooss.service.util.FileUtils;
 
 /**
  * An implementation of the Diff interface, for the unified diff format.
+ * <br/>
+ * The diff is parsed line by line as it is written to the stream returned
+ * by {@link #getOutputStream()}, by a state machine that works on the raw 
+ * bytes. Strings are only created for file names and, if requested, for 
+ * the text of each chunk. Both the SVN format (<code>Index:</code> lines,
+ * property changes) and the Git format (<code>diff --git</code> headers) 
+ * are understood.
  *  
  * @author Georgios Gousios - <gousiosg@gmail.com>
  * @see {@link http://en.wikipedia.org/wiki/Diff#Unified_format}
  *
  */
 public class UnifiedDiffParser implements Diff {
-	/* 
-	 * Most patterns copied verbatim from Perl unified diff parser implementation:
-	 * http://search.cpan.org/~nikc/SVN-Web-0.53/lib/SVN/Web/Diff.pm
-	 */
-	private static String diffChunkStart = "^\\@\\@ -(\\d+)(,\\d+)?\\s*[+](\\d+)(,\\d+)? \\@\\@$";
-	private static String propChunkStart = "^Property.*:\\s*(.*)$";
-	private static String chunkFileSource = "^\\-\\-\\- ([^\\s]+)\\s+(.+)$";
-	private static String chunkFileTarget = "^\\+\\+\\+ ([^\\s]+)\\s+(.+)$";
-	private static String index = "^Index:\\s?(.*)$";
-	private static String eqs = "^=*";
+	
+	private static final byte[] INDEX = "Index:".getBytes();
+	private static final byte[] FILE_SOURCE = "--- ".getBytes();
+	private static final byte[] FILE_TARGET = "+++ ".getBytes();
+	private static final byte[] PROPERTY = "Property".getBytes();
+	private static final byte[] CHUNK_START = "@@ -".getBytes();
+	private static final byte[] GIT_START = "diff --git ".getBytes();
 	
 	private Revision revStart,revEnd;
 	private String theDiff;
 	private String basePath;
+	private boolean keepText;
 	private Set<String> changedPaths;
 	private Map<String, List<DiffChunk>> diffChunks;
     private String error = "";
 	private boolean parsed = false;
 	
+	/* Line being read */
+	private byte[] line = new byte[256];
+	private int lineLength = 0;
+	
+	/* Parser state */
+	private boolean diffStart = false, gitHeader = false;
+	private String curPath = null, gitSource = null, gitTarget = null;
+	private DiffChunkImpl curChunk = null;
+	private ByteArrayOutputStream curChunkText = null;
+	private List<DiffChunk> curChunkList = null;
+	/* Lines of the current chunk that have not been read yet */
+	private int sourceLeft = 0, targetLeft = 0;
+	private int added = 0, removed = 0;
+	
     public UnifiedDiffParser(Revision start, Revision end, 
     		String basePath, String diff) {
+        this(start, end, basePath, true);
+        theDiff = diff;
+    }
+    
+    /**
+     * Create a parser for a diff that will be written to 
+     * {@link #getOutputStream()}.
+     * 
+     * @param keepText Whether to keep the text of each chunk, or 
+     *  only its line ranges and counts 
+     */
+    public UnifiedDiffParser(Revision start, Revision end, 
+    		String basePath, boolean keepText) {
         revStart = start;
         if (end!=null) {
             revEnd = end;
         } 
         
-        theDiff = diff;
         this.basePath = basePath;
+        this.keepText = keepText;
         changedPaths = new HashSet<String>();
         diffChunks = new HashMap<String, List<DiffChunk>>();
         this.parsed = false;
@@ -122,6 +151,29 @@ public class UnifiedDiffParser implements Diff {
 		return theDiff;
 	}
 	
+	/**
+	 * Get a stream that parses the diff data written to it.
+	 */
+	public DiffOutputStream getOutputStream() {
+		return new DiffOutputStream() {
+			@Override
+			public void write(int b) {
+				consume((byte) b);
+			}
+			
+			@Override
+			public void write(byte[] b, int off, int len) {
+				for (int i = off; i < off + len; i++)
+					consume(b[i]);
+			}
+			
+			@Override
+			public Diff getDiff() {
+				return finish() ? UnifiedDiffParser.this : null;
+			}
+		};
+	}
+	
 	/**
 	 * Parse a unified diff and return true on success or false
 	 * and set the error message.
@@ -131,161 +183,352 @@ public class UnifiedDiffParser implements Diff {
 		if (parsed)
 			return true;
 		
-		Pattern chunkStart = Pattern.compile(diffChunkStart);
-		Pattern propChunk = Pattern.compile(propChunkStart);
-		Pattern fileTarget = Pattern.compile(chunkFileTarget);
-		Pattern fileSource = Pattern.compile(chunkFileSource);
-		Pattern idx = Pattern.compile(index);
-		Pattern equals = Pattern.compile(eqs);
+		if (theDiff != null) {
+			byte[] b = theDiff.getBytes();
+			for (int i = 0; i < b.length; i++)
+				consume(b[i]);
+		}
+		return finish();
+	}
+	
+	private void consume(byte b) {
+		if (parsed)
+			return;
 		
-		Matcher m = null;
+		if (b == '\n') {
+			parseLine();
+			lineLength = 0;
+			return;
+		}
 		
-		BufferedReader r = new BufferedReader(new StringReader(theDiff));
-		String line;
+		if (lineLength == line.length) {
+			byte[] longer = new byte[line.length * 2];
+			System.arraycopy(line, 0, longer, 0, lineLength);
+			line = longer;
+		}
+		line[lineLength++] = b;
+	}
+	
+	private boolean finish() {
+		if (parsed)
+			return error.length() == 0;
 		
-		boolean diffStart = false, chnkStart = false;
-		StringBuffer curChunkText = null;
-		String curPath = null;
-		DiffChunkImpl curChunk = null;
-		List<DiffChunk> curChunkList = null;
-		try {
-			while ((line = r.readLine()) != null) {
-				/*
-				 * Skip SVN introduced lines like
-				 * Index: specs/src/eu/sqooss/impl/service/dsl/SpRevision.java
-				 * ===========================================================
-				 */
-				if (idx.matcher(line).matches() || 
-						equals.matcher(line).matches()) {
-					continue;
-				}
-				
-				/* Match lines like
-				 * --- specs/src/eu/sqooss/impl/service/dsl/SpRevision.java
-				 * 
-				 * 
-				 * and record file name. Match either of those 2 lines
-				 * signifies start of parsing chunks
-				 */
-				if (fileSource.matcher(line).matches()) {
-					//New group found
-					if (diffStart == true && 
-							curChunkList.size() != 0) {
-						diffChunks.put(curPath, curChunkList);
-					}
-					
-					m = fileSource.matcher(line);
-					m.matches();
-					curPath = FileUtils.appendPath(basePath, m.group(1));
-					changedPaths.add(curPath);
-					curChunkList = new ArrayList<DiffChunk>();
-					diffStart = true;
-					continue;
-				}
-				/* those lines are not really interesting
-				 * +++ specs/src/eu/sqooss/impl/service/dsl/SpRevision.java
-				 */
-				if (fileTarget.matcher(line).matches()) {
-					continue;
-				}
-				
-				/*
-				 * Match a chunk describing a property change 
-				 * (this is SVN specific code)
-				 *  Property changes on: ProjectFile.java
-				 */
-				if (propChunk.matcher(line).matches()) {
-					/* Match */
-					if (chnkStart == true) {
-						curChunk.setChunk(curChunkText.toString());
-						curChunkList.add(curChunk);
-					}
-					
-					chnkStart = true;
-					curChunk = new DiffChunkImpl();
-					curChunk.setDiffOp(DiffOp.UNDEF);
-					curChunkText = new StringBuffer();
-					
-					/* If the property change is the only thing
-					 * appearing in the diff, we need to start 
-					 * parsing and init some variables first. 
-					 */
-					if (!diffStart) {
-						curChunkList = new ArrayList<DiffChunk>();
-						diffStart = true;
-						m = propChunk.matcher(line);
-						m.matches();
-						curPath = FileUtils.appendPath(basePath, m.group(1));
-						changedPaths.add(curPath);
-					}
-				}
-				
-				if (!diffStart) {
-					error = "Not a chunk header: " + line;
-					return false;
-				}
-				
-				
-				
-				/* Match chunk start lines like
-				 * @@ -111,10 +111,10 @@ or
-				 * @@ -1 +1 @@
-				 */
-				if (chunkStart.matcher(line).matches()) {
-					
-					if (chnkStart == true) {
-						curChunk.setChunk(curChunkText.toString());
-						curChunkList.add(curChunk);
-					}
-					
-					chnkStart = true;
-					curChunk = new DiffChunkImpl();
-					m = chunkStart.matcher(line);
-					//We already know that it matches, just trigger the group extraction
-					m.matches(); 
-					
-					//Unified diffs do not support this
-					curChunk.setDiffOp(DiffOp.UNDEF);
-					curChunk.setPath(curPath);					
-					curChunk.setSourceStartLine(Integer.parseInt(m.group(1)));
-					if (m.group(2) != null) {
-						curChunk.setSourceLenght(Integer.parseInt(m.group(2).substring(1)));
-					} else {
-						curChunk.setSourceLenght(0);
-					}
-					curChunk.setTargetStartLine(Integer.parseInt(m.group(3)));
-					if (m.group(4) != null) {
-						curChunk.setTargetLength(Integer.parseInt(m.group(4).substring(1)));
-					} else {
-						curChunk.setTargetLength(0);
-					}
-					curChunkText = new StringBuffer();
-					continue;
-				}
-				
-				curChunkText.append(line).append("\n");
-			}
-		} catch (IOException e) {
-			error = "Error reading diff file";
-			return false;
+		if (lineLength > 0) {
+			parseLine();
+			lineLength = 0;
 		}
+		
 		//Clean up
-		if (curChunk != null) { 
-			curChunk.setChunk(curChunkText.toString());
-			curChunkList.add(curChunk);
-			diffChunks.put(curPath, curChunkList);
-		} else {
-			//This means that the actual diff was empty
-			List<DiffChunk> l = Collections.emptyList();
-			diffChunks.put(curPath, l);
+		if (error.length() == 0) {
+			if (curChunk != null) {
+				endChunk();
+				diffChunks.put(curPath, curChunkList);
+			} else {
+				//This means that the actual diff was empty
+				List<DiffChunk> l = Collections.emptyList();
+				diffChunks.put(curPath, l);
+			}
 		}
 		
 		//Don't hold up space now that the diff is parsed
 		theDiff = null;
+		line = null;
+		curChunkText = null;
 		parsed = true;
+		return error.length() == 0;
+	}
+	
+	private void parseLine() {
+		if (error.length() != 0)
+			return;
+		
+		int len = lineLength;
+		if (len > 0 && line[len - 1] == '\r')
+			len--;
+		
+		/*
+		 * Lines within a chunk are only counted, even if they look like
+		 * headers (e.g. a removed line starting with "-- ") 
+		 */
+		if (sourceLeft > 0 || targetLeft > 0) {
+			byte c = (len == 0) ? (byte) ' ' : line[0];
+			if (c == '+') {
+				targetLeft--;
+				added++;
+			} else if (c == '-') {
+				sourceLeft--;
+				removed++;
+			} else if (c != '\\') { 
+				sourceLeft--;
+				targetLeft--;
+			}
+			appendText(len);
+			return;
+		}
+		
+		/*
+		 * Git file headers, only the --- and +++ lines are of interest
+		 * diff --git a/README b/README
+		 * index 5bf6c4d..0c1b2e9 100644
+		 * --- a/README
+		 * +++ b/README
+		 */
+		if (startsWith(GIT_START, len)) {
+			gitHeader = true;
+			gitSource = gitTarget = null;
+			return;
+		}
+		if (gitHeader) {
+			if (startsWith(FILE_SOURCE, len)) {
+				gitSource = gitPath(len);
+			} else if (startsWith(FILE_TARGET, len)) {
+				gitTarget = gitPath(len);
+			} else if (startsWith(CHUNK_START, len)) {
+				gitHeader = false;
+				startFile((gitTarget != null) ? gitTarget : gitSource);
+				startChunk(len);
+			}
+			return;
+		}
+		
+		/*
+		 * Skip SVN introduced lines like
+		 * Index: specs/src/eu/sqooss/impl/service/dsl/SpRevision.java
+		 * ===========================================================
+		 */
+		if (startsWith(INDEX, len) || isSeparator(len)) {
+			return;
+		}
+		
+		/* Match lines like
+		 * --- specs/src/eu/sqooss/impl/service/dsl/SpRevision.java
+		 * 
+		 * 
+		 * and record file name. Match either of those 2 lines
+		 * signifies start of parsing chunks
+		 */
+		if (startsWith(FILE_SOURCE, len)) {
+			String path = headerPath(len);
+			if (path != null) {
+				startFile(path);
+				return;
+			}
+		}
+		
+		/* those lines are not really interesting
+		 * +++ specs/src/eu/sqooss/impl/service/dsl/SpRevision.java
+		 */
+		if (startsWith(FILE_TARGET, len) && headerPath(len) != null) {
+			return;
+		}
+		
+		/*
+		 * Match a chunk describing a property change 
+		 * (this is SVN specific code)
+		 *  Property changes on: ProjectFile.java
+		 */
+		int colon;
+		if (startsWith(PROPERTY, len) && (colon = lastIndexOf(':', len)) >= 0) {
+			endChunk();
+			curChunk = newChunk();
+			
+			/* If the property change is the only thing
+			 * appearing in the diff, we need to start 
+			 * parsing and init some variables first. 
+			 */
+			if (!diffStart) {
+				int start = colon + 1;
+				while (start < len && isWhitespace(line[start]))
+					start++;
+				curChunkList = new ArrayList<DiffChunk>();
+				diffStart = true;
+				curPath = FileUtils.appendPath(basePath, 
+						new String(line, start, len - start));
+				changedPaths.add(curPath);
+			}
+			appendText(len);
+			return;
+		}
+		
+		if (!diffStart) {
+			error = "Not a chunk header: " + new String(line, 0, len);
+			return;
+		}
+		
+		/* Match chunk start lines like
+		 * @@ -111,10 +111,10 @@ or
+		 * @@ -1 +1 @@
+		 */
+		if (startsWith(CHUNK_START, len) && startChunk(len)) {
+			return;
+		}
+		
+		appendText(len);
+	}
+	
+	/*
+	 * A new group of chunks found, the chunks read so far belong 
+	 * to the previous one
+	 */
+	private void startFile(String path) {
+		endChunk();
+		if (diffStart && curChunkList.size() != 0) {
+			diffChunks.put(curPath, curChunkList);
+		}
+		
+		curPath = FileUtils.appendPath(basePath, path);
+		changedPaths.add(curPath);
+		curChunkList = new ArrayList<DiffChunk>();
+		diffStart = true;
+	}
+	
+	/*
+	 * Parse a chunk header of the form @@ -l[,s] +l[,s] @@ and start a
+	 * new chunk. Returns false if the line is not a valid header.
+	 */
+	private boolean startChunk(int len) {
+		int[] num = new int[2];
+		int i = CHUNK_START.length;
+		
+		i = parseRange(i, len, num);
+		if (i < 0)
+			return false;
+		int srcStart = num[0], srcLength = num[1];
+		
+		while (i < len && isWhitespace(line[i]))
+			i++;
+		if (i >= len || line[i] != '+')
+			return false;
+		
+		i = parseRange(i + 1, len, num);
+		if (i < 0 || i + 3 > len || line[i] != ' ' 
+				|| line[i + 1] != '@' || line[i + 2] != '@')
+			return false;
+		
+		endChunk();
+		curChunk = newChunk();
+		curChunk.setPath(curPath);
+		curChunk.setSourceStartLine(srcStart);
+		curChunk.setSourceLenght(Math.max(srcLength, 0));
+		curChunk.setTargetStartLine(num[0]);
+		curChunk.setTargetLength(Math.max(num[1], 0));
+		
+		//A missing length means a single line
+		sourceLeft = (srcLength < 0) ? 1 : srcLength;
+		targetLeft = (num[1] < 0) ? 1 : num[1];
 		return true;
 	}
+	
+	/*
+	 * Parse "line[,length]" starting at i. Stores the numbers in result,
+	 * length is -1 if missing, and returns the position after the range or
+	 * -1 if there is no number at i.
+	 */
+	private int parseRange(int i, int len, int[] result) {
+		i = parseInt(i, len, result, 0);
+		if (i < 0)
+			return -1;
+		result[1] = -1;
+		if (i < len && line[i] == ',') {
+			i = parseInt(i + 1, len, result, 1);
+		}
+		return i;
+	}
+	
+	private int parseInt(int i, int len, int[] result, int idx) {
+		int start = i, value = 0;
+		while (i < len && line[i] >= '0' && line[i] <= '9') {
+			value = value * 10 + (line[i] - '0');
+			i++;
+		}
+		if (i == start)
+			return -1;
+		result[idx] = value;
+		return i;
+	}
+	
+	private DiffChunkImpl newChunk() {
+		DiffChunkImpl c = new DiffChunkImpl();
+		//Unified diffs do not support this
+		c.setDiffOp(DiffOp.UNDEF);
+		curChunkText = keepText ? new ByteArrayOutputStream() : null;
+		added = removed = 0;
+		sourceLeft = targetLeft = 0;
+		return c;
+	}
+	
+	private void endChunk() {
+		if (curChunk == null)
+			return;
+		if (curChunkText != null)
+			curChunk.setChunk(curChunkText.toString());
+		curChunk.setAddedLines(added);
+		curChunk.setRemovedLines(removed);
+		curChunkList.add(curChunk);
+		curChunk = null;
+		curChunkText = null;
+	}
+	
+	private void appendText(int len) {
+		if (curChunkText != null) {
+			curChunkText.write(line, 0, len);
+			curChunkText.write('\n');
+		}
+	}
+	
+	/*
+	 * File name in lines like "--- path<whitespace>revision", null if
+	 * the line does not have this form.
+	 */
+	private String headerPath(int len) {
+		int start = FILE_SOURCE.length, i = start;
+		while (i < len && !isWhitespace(line[i]))
+			i++;
+		if (i == start || i + 1 >= len)
+			return null;
+		return new String(line, start, i - start);
+	}
+	
+	/*
+	 * File name in Git lines like "--- a/path", null for /dev/null 
+	 */
+	private String gitPath(int len) {
+		String path = new String(line, FILE_SOURCE.length, 
+				len - FILE_SOURCE.length);
+		if (path.equals("/dev/null"))
+			return null;
+		if (path.startsWith("a/") || path.startsWith("b/"))
+			path = path.substring(2);
+		return "/" + path;
+	}
+	
+	private boolean startsWith(byte[] prefix, int len) {
+		if (len < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if (line[i] != prefix[i])
+				return false;
+		return true;
+	}
+	
+	/* Lines made of = characters only, including empty lines */
+	private boolean isSeparator(int len) {
+		for (int i = 0; i < len; i++)
+			if (line[i] != '=')
+				return false;
+		return true;
+	}
+	
+	private int lastIndexOf(char c, int len) {
+		for (int i = len - 1; i >= 0; i--)
+			if (line[i] == c)
+				return i;
+		return -1;
+	}
+	
+	private static boolean isWhitespace(byte b) {
+		return b == ' ' || b == '\t' || b == '\f' || b == 0x0B || b == '\r';
+	}
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
-
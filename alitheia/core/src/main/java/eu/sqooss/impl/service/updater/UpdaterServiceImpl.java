@@ -225,6 +225,13 @@ public class UpdaterServiceImpl implements UpdaterService, JobStateListener {
         updaters = new BidiMap<Updater, Class<? extends MetadataUpdater>>();
         scheduledUpdates = new ConcurrentHashMap<Long, Map<Updater, UpdaterJob>>();
         
+        /* Store validity sequences of files imported before they existed */
+        try {
+            core.getScheduler().enqueue(new ValidSequenceMigrationJob(logger));
+        } catch (SchedulerException e) {
+            logger.error("Could not start file validity sequence migration job");
+        }
+        
         logger.info("Succesfully started updater service");
         return true;
     }
@@ -0,0 +1,173 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+
+package eu.sqooss.impl.service.updater;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.db.DBService;
+import eu.sqooss.service.db.HQLQueryInterface;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.logging.Logger;
+import eu.sqooss.service.scheduler.Job;
+
+/**
+ * Fills in the project id and validity sequences of project files stored 
+ * before {@link ProjectFile} kept a copy of the sequences of its validFrom 
+ * and validUntil versions. Until it completes, the live file queries of 
+ * {@link eu.sqooss.service.db.ProjectVersion} match files without them
+ * through the slower join on their validity versions; once all files have
+ * them, the live file queries only use the indexed sequences. Updates are done per 
+ * version, committing every few versions, so the job can be interrupted
+ * and restarted at any point.
+ */
+public class ValidSequenceMigrationJob extends Job {
+
+    private static final int VERSIONS_PER_COMMIT = 100;
+    
+    private static final String QRY_UNMIGRATED = "select count(pf) " +
+    		"from ProjectFile pf where pf.validFromSequence is null " +
+    		"or pf.validUntilSequence is null or pf.projectId is null";
+    
+    private static final String QRY_VERSIONS = "select pv.id, pv.sequence, " +
+    		"pv.project.id from ProjectVersion pv";
+    
+    private static final String UPD_FROM = "update ProjectFile " +
+    		"set validFromSequence = :seq " +
+    		"where validFrom.id = :pv and validFromSequence is null";
+    
+    private static final String UPD_PROJECT = "update ProjectFile " +
+            "set projectId = :project " +
+            "where projectVersion.id = :pv and projectId is null";
+    
+    private static final String UPD_UNTIL = "update ProjectFile " +
+            "set validUntilSequence = :seq " +
+            "where validUntil.id = :pv and validUntilSequence is null";
+    
+    private static final String UPD_LIVE = "update ProjectFile " +
+            "set validUntilSequence = :seq " +
+            "where validUntil is null and validUntilSequence is null";
+    
+    private Logger logger;
+    private DBService dbs;
+    
+    public ValidSequenceMigrationJob(Logger l) {
+        this.logger = l;
+        this.dbs = AlitheiaCore.getInstance().getDBService();
+    }
+
+    /* Live file queries are faster once it is done */
+    @Override
+    public long priority() {
+        return 0;
+    }
+
+    @Override
+    public Workload workload() {
+        return Workload.IO;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    protected void run() throws Exception {
+        HQLQueryInterface qi = dbs.getQueryInterface(HQLQueryInterface.class);
+        
+        dbs.getSessionManager().startDBSession();
+        long unmigrated = (Long) qi.doHQL(QRY_UNMIGRATED).get(0);
+        if (unmigrated == 0) {
+            dbs.getSessionManager().commitDBSession();
+            ProjectFile.setSequencesStored();
+            return;
+        }
+        
+        logger.info("Storing validity sequences for " + unmigrated 
+                + " project files");
+        
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("seq", ProjectFile.LIVE_SEQUENCE);
+        qi.executeUpdate(UPD_LIVE, params);
+        
+        List<Object[]> versions = (List<Object[]>) qi.doHQL(QRY_VERSIONS);
+        int done = 0;
+        for (Object[] version : versions) {
+            params = new HashMap<String, Object>();
+            params.put("pv", version[0]);
+            params.put("seq", version[1]);
+            qi.executeUpdate(UPD_FROM, params);
+            qi.executeUpdate(UPD_UNTIL, params);
+            
+            params.remove("seq");
+            params.put("project", version[2]);
+            qi.executeUpdate(UPD_PROJECT, params);
+            
+            if (++done % VERSIONS_PER_COMMIT == 0) {
+                if (!dbs.getSessionManager().commitDBSession()) {
+                    logger.warn("Failed to store validity sequences, " 
+                            + (versions.size() - done) + " versions left");
+                    return;
+                }
+                dbs.getSessionManager().startDBSession();
+            }
+        }
+        
+        if (!dbs.getSessionManager().commitDBSession()) {
+            logger.warn("Failed to store validity sequences");
+            return;
+        }
+        logger.info("Stored validity sequences for files of " + done 
+                + " versions");
+        
+        /* Only drop the slow path of live file queries if nothing was missed */
+        dbs.getSessionManager().startDBSession();
+        unmigrated = (Long) qi.doHQL(QRY_UNMIGRATED).get(0);
+        dbs.getSessionManager().commitDBSession();
+        if (unmigrated == 0) {
+            ProjectFile.setSequencesStored();
+        } else {
+            logger.warn(unmigrated + " project files still lack validity " +
+                    "sequences");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ValidSequenceMigrationJob";
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -47,8 +47,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.osgi.framework.Bundle;
@@ -61,6 +59,7 @@ import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.EncapsulationUnitMeasurement;
 import eu.sqooss.service.db.ExecutionUnitMeasurement;
 import eu.sqooss.service.db.HQLQueryInterface;
+import eu.sqooss.service.db.KeysetIdIterator;
 import eu.sqooss.service.db.MailMessageMeasurement;
 import eu.sqooss.service.db.MailingListThreadMeasurement;
 import eu.sqooss.service.db.Metric;
@@ -81,6 +80,7 @@ import eu.sqooss.service.metricactivator.MetricActivator;
 import eu.sqooss.service.pa.PluginAdmin;
 import eu.sqooss.service.pa.PluginInfo;
 import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.util.LongIterator;
 import eu.sqooss.service.util.Pair;
 
 /**
@@ -129,91 +129,88 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
     private Map<Metric, List<Class<? extends DAObject>>> metricActType =
     	new HashMap<Metric, List<Class<? extends DAObject>>>();
     
-    protected static final String QRY_SYNC_PV = "select pv.id from ProjectVersion pv " +
-    		"where pv.project = :project and not exists(" +
-    		"	select pvm.projectVersion from ProjectVersionMeasurement pvm " +
-    		"	where pvm.projectVersion.id = pv.id and pvm.metric.id = :metric) " +
-    		"order by pv.sequence asc";
+    /* An object measured by a metric, to read back a stored result */
+    private static final String QRY_MEASURED = "select x.%s from %s x " +
+            "where x.metric = :metric";
+    
+    /*
+     * The following queries find the objects of each activation type that
+     * have no measurement for a metric. They are anti-joins on the 
+     * measurements of each object, to be paged through with 
+     * KeysetIdIterator, so they all page on the object id.
+     */
+    protected static final String QRY_SYNC_PV = "select pv.id " +
+            "from ProjectVersion pv " +
+            "left join pv.measurements pvm with pvm.metric.id = :metric " +
+            "where pv.project = :project " +
+            "and pvm.id is null " +
+            "and pv.id > :last " +
+            "order by pv.id asc";
     
     protected static final String QRY_SYNC_PF = "select pf.id " +
-    		"from ProjectVersion pv, ProjectFile pf " +
-    		"where pf.projectVersion=pv and pv.project = :project " +
-    		"and not exists (" +
-    		"	select pfm.projectFile " +
-    		"	from ProjectFileMeasurement pfm " +
-    		"	where pfm.projectFile.id = pf.id " +
-    		"	and pfm.metric.id = :metric) " +
-    		"	and pf.isDirectory = false)  " +
-    		"order by pv.sequence asc";
+            "from ProjectFile pf " +
+            "left join pf.measurements pfm with pfm.metric.id = :metric " +
+            "where pf.projectVersion.project = :project " +
+            "and pf.isDirectory = false " +
+            "and pfm.id is null " +
+            "and pf.id > :last " +
+            "order by pf.id asc";
     
     protected static final String QRY_SYNC_PD = "select pf.id " +
-		"from ProjectVersion pv, ProjectFile pf " +
-		"where pf.projectVersion=pv and pv.project = :project " +
-		"and not exists (" +
-		"	select pfm.projectFile " +
-		"	from ProjectFileMeasurement pfm " +
-		"	where pfm.projectFile.id = pf.id " +
-		"	and pfm.metric.id = :metric) " +
-		"	and pf.isDirectory = true)  " +
-		"order by pv.sequence asc";
+            "from ProjectFile pf " +
+            "left join pf.measurements pfm with pfm.metric.id = :metric " +
+            "where pf.projectVersion.project = :project " +
+            "and pf.isDirectory = true " +
+            "and pfm.id is null " +
+            "and pf.id > :last " +
+            "order by pf.id asc";
     
     protected static final String QRY_SYNC_MM = "select mm.id " +
-    		"from MailMessage mm " +
-    		"where mm.list.storedProject = :project " +
-    		"and mm.id not in (" +
-    		"	select mmm.mail.id " +
-    		"	from MailMessageMeasurement mmm " +
-    		"	where mmm.metric.id =:metric and mmm.mail.id = mm.id))";
+            "from MailMessage mm " +
+            "left join mm.measurements mmm with mmm.metric.id = :metric " +
+            "where mm.list.storedProject = :project " +
+            "and mmm.id is null " +
+            "and mm.id > :last " +
+            "order by mm.id asc";
     
     protected static final String QRY_SYNC_MT = "select mlt.id " +
-    		"from MailingListThread mlt " +
-    		"where mlt.list.storedProject = :project " +
-    		"and mlt.id not in (" +
-    		"	select mltm.thread.id " +
-    		"	from MailingListThreadMeasurement mltm " +
-    		"	where mltm.metric.id =:metric and mltm.thread.id = mlt.id)";
+            "from MailingListThread mlt " +
+            "left join mlt.measurements mltm with mltm.metric.id = :metric " +
+            "where mlt.list.storedProject = :project " +
+            "and mltm.id is null " +
+            "and mlt.id > :last " +
+            "order by mlt.id asc";
     
     protected static final String QRY_SYNC_DEV = "select d.id " +
-    		"from Developer d " +
-    		"where d.storedProject = :project";
+            "from Developer d " +
+            "where d.storedProject = :project " +
+            "and d.id > :last " +
+            "order by d.id asc";
     
     protected static final String QRY_SYNC_NS = "select ns.id " +
-            "from NameSpace ns, ProjectVersion pv " +
-            "where pv = ns.changeVersion " +
-            "and pv.project = :project " +
-            "and not exists ( " +
-            "   select nsm " + 
-            "   from NameSpaceMeasurement nsm " + 
-            "   where nsm.metric.id = :metric " +
-            "   and nsm.namespace = ns) " +
-            "order by pv.sequence asc";
+            "from NameSpace ns " +
+            "left join ns.measurements nsm with nsm.metric.id = :metric " +
+            "where ns.changeVersion.project = :project " +
+            "and nsm.id is null " +
+            "and ns.id > :last " +
+            "order by ns.id asc";
     
     protected static final String QRY_SYNC_ENCUNT = "select encu.id " +
-            "from EncapsulationUnit encu, ProjectVersion pv, ProjectFile pf " +
-            " where pf.projectVersion = pv " +
-            " and encu.file = pf " +
-            "and pv.project = :project " +
-            "and not exists ( " +
-            "    select eum " +
-            "    from EncapsulationUnitMeasurement eum " +
-            "    where eum.encapsulationUnit = encu " +
-            "    and eum.metric.id = :metric " +
-            " ) order by pv.sequence asc ";
+            "from EncapsulationUnit encu " +
+            "left join encu.measurements eum with eum.metric.id = :metric " +
+            "where encu.file.projectVersion.project = :project " +
+            "and eum.id is null " +
+            "and encu.id > :last " +
+            "order by encu.id asc";
     
     protected static final String QRY_SYNC_EXECUNT = "select exu.id " +
-    		"from ExecutionUnit exu, EncapsulationUnit encu, " +
-    		"     ProjectVersion pv, ProjectFile pf " +
-            "where pf.projectVersion = pv " +
-            "and encu.file = pf " +
-            "and pv.project = :project " +
+            "from ExecutionUnit exu " +
+            "left join exu.measurements eum with eum.metric.id = :metric " +
+            "where exu.file.projectVersion.project = :project " +
             "and exu.changed = true " +
-            "and exu.encapsulationUnit = encu " +
-            "and not exists ( " +
-            "    select eum  " +
-            "    from ExecutionUnitMeasurement eum " +
-            "    where eum.executionUnit = exu " +
-            "    and eum.metric.id = :metric) " +
-            "order by pv.sequence asc";
+            "and eum.id is null " +
+            "and exu.id > :last " +
+            "order by exu.id asc";
     
     /**
      * Init basic services common to all implementing classes
@@ -860,11 +857,43 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
             return Collections.EMPTY_LIST;
         
         ArrayList<Result> result = new ArrayList<Result>();
-        result.add(new Result(o, m, ((MetricMeasurement)resultat.get(0)).getResult(), type));
+        result.add(new Result(o, m, ((MetricMeasurement)resultat.get(0)).getResult(type), type));
         return result;
         
     }
 
+    /**
+     * Find the type of the results of a metric, as declared by this 
+     * plug-in's getResult() methods, by reading back one of its stored
+     * measurements.
+     * 
+     * @param clazz The type of the measurements of the metric
+     * @param m A metric of this plug-in
+     * @return The type of the results, or null if there are no stored
+     * measurements to read back
+     */
+    public Result.ResultType getResultType(
+            Class<? extends MetricMeasurement> clazz, Metric m) {
+        String field = resultFieldNames.get(clazz);
+        if (field == null)
+            return null;
+        
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("metric", m);
+        List<?> measured = db.getQueryInterface(HQLQueryInterface.class).doHQL(
+                String.format(QRY_MEASURED, field, clazz.getName()), params, 1);
+        if (measured.isEmpty())
+            return null;
+        
+        try {
+            List<Result> r = getResultIfAlreadyCalculated(
+                    (DAObject) measured.get(0), Collections.singletonList(m));
+            return r.isEmpty() ? null : r.get(0).getType();
+        } catch (MetricMismatchException e) {
+            return null;
+        }
+    }
+
     /**{@inheritDoc}*/
     @Override
     public final List<Class<? extends DAObject>> getMetricActivationTypes (Metric m) {
@@ -894,11 +923,18 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
         return dependencies;
     }
 
+    /**
+     * {@inheritDoc}
+     * The returned iterators page through the ids of objects without 
+     * a measurement for the provided metric. They run their queries 
+     * lazily, so they must be consumed within the DB session this
+     * method was called in.
+     */
     @Override
-    public Map<MetricType.Type, SortedSet<Long>> getObjectIdsToSync(StoredProject sp, Metric m) 
+    public Map<MetricType.Type, LongIterator> getObjectIdsToSync(StoredProject sp, Metric m) 
     throws MetricActivationException {
 
-    	Map<MetricType.Type, SortedSet<Long>> IDs = new HashMap<Type, SortedSet<Long>>();
+    	Map<MetricType.Type, LongIterator> IDs = new HashMap<Type, LongIterator>();
     	
         Map<String, Object> params = new HashMap<String, Object>();
         params.put("project", sp);
@@ -934,10 +970,12 @@ public abstract class AbstractMetric implements AlitheiaPlugin {
 	    		throw new MetricActivationException("Metric synchronisation with GENERIC objects not implemented");
 	    	}
 	    	
-	    	List<Long> objectIds = (List<Long>) db.getQueryInterface(HQLQueryInterface.class).doHQL(q, params);
-	    	TreeSet<Long> ids = new TreeSet<Long>();
-	    	ids.addAll(objectIds);
-	    	IDs.put(MetricType.fromActivator(at), ids);
+	    	Map<String, Object> qParams = new HashMap<String, Object>(params);
+	    	if (!q.contains(":metric"))
+	    	    qParams.remove("metric");
+	    	
+	    	IDs.put(MetricType.fromActivator(at), new KeysetIdIterator(
+	    	        db.getQueryInterface(HQLQueryInterface.class), q, qParams));
     	}
     	return IDs;
     }
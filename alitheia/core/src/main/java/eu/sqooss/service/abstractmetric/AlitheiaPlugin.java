@@ -37,7 +37,6 @@ import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
 
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.Metric;
@@ -46,6 +45,7 @@ import eu.sqooss.service.db.PluginConfiguration;
 import eu.sqooss.service.db.StoredProject;
 import eu.sqooss.service.metricactivator.MetricActivationException;
 import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.util.LongIterator;
 
 /**
  * This interface defines the common metric plug-in related functionality.
@@ -293,13 +293,17 @@ public interface AlitheiaPlugin {
     Set<String> getDependencies();
 
     /**
-     * Get a list of object ids for the database entities to run the metric
+     * Get the object ids for the database entities to run the metric
      * on, ordered by activation type. This method essentially allows the plugin
      * to specify a custom processing order for metadata entities to be processed
      * by metrics. The default execution order is specified 
      * 
+     * The ids are streamed rather than returned at once, as there can be
+     * millions of them. Each iterator must return ids in ascending order
+     * and without duplicates. Iterators may query the database lazily, 
+     * so they must be consumed within the calling DB session.
      */
-    Map<MetricType.Type, SortedSet<Long>> getObjectIdsToSync(StoredProject sp, Metric m) 
+    Map<MetricType.Type, LongIterator> getObjectIdsToSync(StoredProject sp, Metric m) 
     	throws MetricActivationException;
 
     /**
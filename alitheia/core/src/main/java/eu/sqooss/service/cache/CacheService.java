@@ -0,0 +1,76 @@
+package eu.sqooss.service.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import eu.sqooss.core.AlitheiaCoreService;
+
+/**
+ * A generic key value pair cache.
+ *
+ * The backing store is configured at system initialization time through system
+ * wide properties.
+ *
+ * @author Georgios Gousios <gousiosg@gmail.com>
+ *
+ */
+public interface CacheService extends AlitheiaCoreService {
+
+    /**
+     * Get contents of key as an unencoded raw byte data array. The contents of
+     * the array can be discarded after the call. 22
+     */
+    byte[] get(String key);
+
+    /**
+     * Get the contents of key as an InputStream.
+     *
+     * WARNING, ACHTUNG: The client is responsible to close the returned input
+     * stream, otherwise the system's resources will be soon exhausted.
+     */
+    InputStream getStream(String key);
+
+    /**
+     * Get the contents of key as a read-only buffer. Depending on the backing
+     * store, large values may be mapped straight from the cache files instead
+     * of being copied to the heap. The buffer stays readable after the key is
+     * overwritten or evicted.
+     *
+     * @return The contents of key, or null if it is not cached
+     */
+    ByteBuffer getBuffer(String key);
+
+    /**
+     * Write the contents of key to the provided channel. Disk based stores
+     * copy the value from the cache files to the channel without reading it
+     * to the heap, so this is the fastest way to send a large value to a
+     * file or a (blocking) socket.
+     *
+     * @return The number of bytes written, or -1 if the key is not cached
+     */
+    long transferTo(String key, WritableByteChannel target) throws IOException;
+
+    /**
+     * Set the contents of a key as an in-memory byte array. After the call, the
+     * array can be deleted as the contents are guaranteed to be safely copied.
+     */
+    void set(String key, byte[] data);
+
+    /**
+     * Set the contents of key from the provided input stream. The stream is
+     * read to its end, but it is not closed. Disk based stores copy the
+     * stream to disk in chunks, so the value is never held in memory as a
+     * whole; memory based stores have to buffer it, and for them
+     * {@link #set(String, byte[])} is faster when the data is already in
+     * memory.
+     */
+    void setStream(String key, InputStream oos);
+
+    /**
+     * Get the hit, miss and eviction counters and the current size of the
+     * backing store.
+     */
+    CacheStats getStats();
+}
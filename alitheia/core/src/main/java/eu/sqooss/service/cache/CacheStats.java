@@ -0,0 +1,112 @@
+package eu.sqooss.service.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A snapshot of the usage counters of a cache. Counters are cumulative
+ * since the cache was created. Caches composed of several tiers also
+ * report the counters of each tier.
+ */
+public class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long rejected;
+    private final long entries;
+    private final long size;
+    private final Map<String, CacheStats> tiers;
+
+    public CacheStats(long hits, long misses, long evictions, long entries,
+            long size) {
+        this(hits, misses, evictions, entries, size,
+                Collections.<String, CacheStats>emptyMap());
+    }
+
+    /**
+     * @param tiers The counters of each tier, by tier name, fastest first
+     */
+    public CacheStats(long hits, long misses, long evictions, long entries,
+            long size, Map<String, CacheStats> tiers) {
+        this(hits, misses, evictions, 0, entries, size, tiers);
+    }
+
+    /**
+     * @param rejected The number of values that were not stored
+     * @param tiers The counters of each tier, by tier name, fastest first
+     */
+    public CacheStats(long hits, long misses, long evictions, long rejected,
+            long entries, long size, Map<String, CacheStats> tiers) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.rejected = rejected;
+        this.entries = entries;
+        this.size = size;
+        this.tiers = Collections.unmodifiableMap(
+                new LinkedHashMap<String, CacheStats>(tiers));
+    }
+
+    /** Number of lookups that returned a value */
+    public long getHits() {
+        return hits;
+    }
+
+    /** Number of lookups that did not find a (live) value */
+    public long getMisses() {
+        return misses;
+    }
+
+    /** Number of entries removed to free space or because they expired */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Number of values that were not stored, because they do not fit in
+     * the space available to them
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    /** Number of entries currently stored, or -1 if unknown */
+    public long getEntries() {
+        return entries;
+    }
+
+    /** Approximate number of bytes currently stored, or -1 if unknown */
+    public long getSize() {
+        return size;
+    }
+
+    /** Ratio of lookups that returned a value, 0 if there were none */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return (lookups == 0) ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * The counters of each tier, fastest first, or an empty map if the
+     * cache has a single tier. The hit rate of a tier is relative to the
+     * lookups that reached it.
+     */
+    public Map<String, CacheStats> getTiers() {
+        return tiers;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append("hits: ").append(hits).append(" misses: ").append(misses)
+            .append(" evictions: ").append(evictions).append(" rejected: ")
+            .append(rejected).append(" entries: ").append(entries)
+            .append(" bytes: ").append(size);
+        for (Map.Entry<String, CacheStats> e : tiers.entrySet())
+            b.append(" [").append(e.getKey()).append(" ")
+                .append(e.getValue()).append("]");
+        return b.toString();
+    }
+}
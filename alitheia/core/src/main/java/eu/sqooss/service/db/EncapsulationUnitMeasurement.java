@@ -44,18 +44,18 @@ public class EncapsulationUnitMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-
     public EncapsulationUnitMeasurement(){}
     
     public EncapsulationUnitMeasurement(EncapsulationUnit eu, Metric m, String result) {
         this.encapsulationUnit = eu;
         this.metric = m;
-        this.result = result;
+        setResult(result);
+    }
+    
+    public EncapsulationUnitMeasurement(EncapsulationUnit eu, Metric m, long result) {
+        this.encapsulationUnit = eu;
+        this.metric = m;
+        setResult(result);
     }
     
     public long getId() {
@@ -82,11 +82,4 @@ public class EncapsulationUnitMeasurement extends MetricMeasurement {
         this.metric = metric;
     }
 
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
@@ -13,7 +13,6 @@ import javax.persistence.Table;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
-
 /**
  * Instances of this class represent a measurement made against a
  * encapsulation unit version, as stored in the database
@@ -45,18 +44,18 @@ public class ExecutionUnitMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-
     public ExecutionUnitMeasurement() {}
     
     public ExecutionUnitMeasurement(ExecutionUnit eu, Metric m, String result) {
         this.executionUnit = eu;
         this.metric = m;
-        this.result = result;
+        setResult(result);
+    }
+    
+    public ExecutionUnitMeasurement(ExecutionUnit eu, Metric m, long result) {
+        this.executionUnit = eu;
+        this.metric = m;
+        setResult(result);
     }
     
     public long getId() {
@@ -83,11 +82,4 @@ public class ExecutionUnitMeasurement extends MetricMeasurement {
         this.metric = metric;
     }
 
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
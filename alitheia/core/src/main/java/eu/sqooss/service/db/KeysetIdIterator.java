@@ -0,0 +1,114 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.service.db;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import eu.sqooss.service.util.LongIterator;
+
+/**
+ * Streams the ids returned by an HQL query, one page at a time, using
+ * keyset pagination: each page is fetched with a query that restricts
+ * the ids to those larger than the last id of the previous page. Unlike
+ * offset based paging, every page is an index range scan, and unlike 
+ * fetching everything at once, memory use is bounded by the page size.
+ * <br/>
+ * The query must select a single id column, restrict it with 
+ * <tt>&gt; :last</tt> and order it ascending, for example:
+ * <pre>
+ * select pv.id from ProjectVersion pv 
+ * where pv.project = :project and pv.id > :last order by pv.id asc
+ * </pre>
+ * Pages are fetched lazily, so the iterator must be consumed within an
+ * active DB session.
+ */
+public class KeysetIdIterator implements LongIterator {
+
+    public static final int DEFAULT_PAGE_SIZE = 10000;
+    
+    private HQLQueryInterface qi;
+    private String hql;
+    private Map<String, Object> params;
+    private int pageSize;
+    
+    private List<Long> page = Collections.emptyList();
+    private int pos = 0;
+    private long last = -1;
+    private boolean exhausted = false;
+    
+    public KeysetIdIterator(HQLQueryInterface qi, String hql, 
+            Map<String, Object> params) {
+        this(qi, hql, params, DEFAULT_PAGE_SIZE);
+    }
+    
+    public KeysetIdIterator(HQLQueryInterface qi, String hql, 
+            Map<String, Object> params, int pageSize) {
+        this.qi = qi;
+        this.hql = hql;
+        this.params = new HashMap<String, Object>(params);
+        this.pageSize = pageSize;
+    }
+
+    public boolean hasNext() {
+        if (pos < page.size())
+            return true;
+        if (exhausted)
+            return false;
+        fetch();
+        return pos < page.size();
+    }
+
+    public long next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        last = page.get(pos++);
+        return last;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void fetch() {
+        params.put("last", last);
+        page = (List<Long>) qi.doHQL(hql, params, pageSize);
+        pos = 0;
+        if (page.size() < pageSize)
+            exhausted = true;
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -79,12 +79,6 @@ public class MailMessageMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-
     /**
      * Convenience constructor to avoid having to call three methods
      * to set up sensible values in a measurement.
@@ -124,11 +118,4 @@ public class MailMessageMeasurement extends MetricMeasurement {
         this.metric = metric;
     }
 
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
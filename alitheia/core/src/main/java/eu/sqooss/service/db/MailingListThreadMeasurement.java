@@ -79,11 +79,6 @@ public class MailingListThreadMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
    
     /**
      * Convenience constructor to avoid having to call three methods
@@ -100,6 +95,16 @@ public class MailingListThreadMeasurement extends MetricMeasurement {
         setResult(value);
     }
     
+    /**
+     * Convenience constructor for integer measurements.
+     */
+    public MailingListThreadMeasurement(Metric m, MailingListThread mt, long value) {
+        super();
+        setMetric(m);
+        setThread(mt);
+        setResult(value);
+    }
+    
     public long getId() {
 		return id;
 	}
@@ -124,11 +129,4 @@ public class MailingListThreadMeasurement extends MetricMeasurement {
         this.metric = metric;
     }
 
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
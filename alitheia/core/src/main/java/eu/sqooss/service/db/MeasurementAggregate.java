@@ -0,0 +1,177 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.service.db;
+
+/**
+ * The aggregate of the numeric results of a set of measurements, as 
+ * computed by the database. Integer and floating point results are 
+ * stored in different columns, so they are aggregated separately and
+ * combined here. Measurements that have not been converted to typed 
+ * results yet do not contribute to any of the values, including the 
+ * count; their number is reported by {@link #getUntypedCount()}.
+ * 
+ * @see ProjectVersion#aggregateFileMeasurements(Metric, eu.sqooss.service.fds.FileTypeMatcher.FileType)
+ */
+public class MeasurementAggregate {
+
+    private long totalCount;
+    private long count;
+    private long untypedCount;
+    private long longSum;
+    private double doubleSum;
+    private Double max;
+    private Double min;
+    
+    public MeasurementAggregate() {}
+    
+    /**
+     * Create an aggregate from a row of the form 
+     * <tt>count(all), count(type), count(long), count(double), sum(long), 
+     * sum(double), max(long), max(double), min(long), min(double)</tt>, 
+     * as returned by an HQL query. The values can be null.
+     */
+    public MeasurementAggregate(Object[] row) {
+        long all = longValue(row[0]);
+        long typed = longValue(row[1]);
+        totalCount = all;
+        untypedCount = all - typed;
+        count = longValue(row[2]) + longValue(row[3]);
+        longSum = longValue(row[4]);
+        doubleSum = (row[5] == null) ? 0 : ((Number) row[5]).doubleValue();
+        max = max(max(max, (Number) row[6]), (Number) row[7]);
+        min = min(min(min, (Number) row[8]), (Number) row[9]);
+    }
+    
+    /**
+     * Merge the provided aggregate into this one.
+     */
+    public void add(MeasurementAggregate a) {
+        totalCount += a.totalCount;
+        count += a.count;
+        untypedCount += a.untypedCount;
+        longSum += a.longSum;
+        doubleSum += a.doubleSum;
+        max = max(max, a.max);
+        min = min(min, a.min);
+    }
+    
+    /**
+     * The number of measurements found, numeric or not.
+     */
+    public long getTotalCount() {
+        return totalCount;
+    }
+    
+    /**
+     * The number of numeric measurements aggregated.
+     */
+    public long getCount() {
+        return count;
+    }
+    
+    /**
+     * The number of measurements that were left out of the aggregate, 
+     * as they have not been converted to typed results yet.
+     */
+    public long getUntypedCount() {
+        return untypedCount;
+    }
+    
+    /**
+     * The sum of the integer results.
+     */
+    public long getLongSum() {
+        return longSum;
+    }
+    
+    /**
+     * The sum of all numeric results.
+     */
+    public double getSum() {
+        return longSum + doubleSum;
+    }
+    
+    /**
+     * The average of all numeric results, or 0 if no numeric 
+     * measurements were found.
+     */
+    public double getAverage() {
+        if (count == 0)
+            return 0;
+        return getSum() / count;
+    }
+    
+    /**
+     * The largest result, or null if no numeric results were found.
+     */
+    public Double getMax() {
+        return max;
+    }
+    
+    /**
+     * The smallest result, or null if no numeric results were found.
+     */
+    public Double getMin() {
+        return min;
+    }
+    
+    private static long longValue(Object o) {
+        return (o == null) ? 0 : ((Number) o).longValue();
+    }
+    
+    private static Double max(Double a, Number b) {
+        if (b == null)
+            return a;
+        if (a == null || b.doubleValue() > a)
+            return b.doubleValue();
+        return a;
+    }
+    
+    private static Double min(Double a, Number b) {
+        if (b == null)
+            return a;
+        if (a == null || b.doubleValue() < a)
+            return b.doubleValue();
+        return a;
+    }
+    
+    @Override
+    public String toString() {
+        return "count: " + count + " untyped: " + untypedCount + " sum: " + getSum() + " max: " + max 
+            + " min: " + min;
+    }
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
@@ -33,15 +33,216 @@
 
 package eu.sqooss.service.db;
 
+import javax.persistence.Column;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
+import javax.persistence.MappedSuperclass;
+
+import eu.sqooss.service.abstractmetric.Result;
+import eu.sqooss.service.abstractmetric.Result.ResultType;
+
 /**
  * Instances of this class represent the result of a metric
  * calculation as stored in the database. This class is extended by
  * other DAO to show results related to specific entities: project,
  * files etc.
+ * 
+ * Numeric results are stored in typed columns (<tt>RESULT_LONG</tt>,
+ * <tt>RESULT_DOUBLE</tt>), so that they can be read without parsing and
+ * aggregated in SQL. Only string results are stored in the 
+ * <tt>RESULT</tt> column. The <tt>RESULT_TYPE</tt> column records which
+ * of the columns holds the value; it is <tt>null</tt> only for 
+ * measurements stored before typed columns were introduced. Such 
+ * measurements are converted to the type declared by their metric by
+ * {@link #migrate(ResultType)}.
  */
+@MappedSuperclass
 public abstract class MetricMeasurement extends DAObject {
 
-    public abstract String getResult();
+    /**
+     * A string representation of the calculation result, for untyped
+     * and string results
+     */
+    @Column(name="RESULT")
+    private String result;
+    
+    /**
+     * The type of the result, determines which column holds the value
+     */
+    @Enumerated(EnumType.STRING)
+    @Column(name="RESULT_TYPE")
+    private ResultType resultType;
+    
+    /**
+     * The value of integer results
+     */
+    @Column(name="RESULT_LONG")
+    private Long longResult;
+    
+    /**
+     * The value of floating point results
+     */
+    @Column(name="RESULT_DOUBLE")
+    private Double doubleResult;
+
+    /**
+     * Get a string representation of the result, whatever its type.
+     */
+    public String getResult() {
+        if (resultType == ResultType.INTEGER)
+            return String.valueOf(longResult);
+        if (resultType == ResultType.FLOAT || resultType == ResultType.DOUBLE)
+            return String.valueOf(doubleResult);
+        return result;
+    }
+
+    /**
+     * Store a string result. The value is stored as is, even if it looks
+     * numeric; use the typed setters or {@link #setResult(Object, ResultType)}
+     * for numeric results.
+     */
+    public void setResult(String result) {
+        this.result = result;
+        this.resultType = ResultType.STRING;
+        this.longResult = null;
+        this.doubleResult = null;
+    }
+    
+    /**
+     * Store an integer result.
+     */
+    public void setResult(long result) {
+        this.result = null;
+        this.resultType = ResultType.INTEGER;
+        this.longResult = result;
+        this.doubleResult = null;
+    }
+    
+    /**
+     * Store a floating point result. Values that are not finite cannot be
+     * stored in a numeric column by all databases, so they are stored as
+     * strings.
+     */
+    public void setResult(double result) {
+        if (Double.isNaN(result) || Double.isInfinite(result)) {
+            setResult(String.valueOf(result));
+            return;
+        }
+        this.result = null;
+        this.resultType = ResultType.DOUBLE;
+        this.longResult = null;
+        this.doubleResult = result;
+    }
+    
+    /**
+     * Store a result of the provided type. Numeric values can be 
+     * provided either as {@link Number}s or as strings.
+     * 
+     * @throws NumberFormatException if a numeric type was requested and
+     * the value cannot be converted to it
+     */
+    public void setResult(Object value, ResultType type) {
+        if (type == ResultType.INTEGER) {
+            setResult(value instanceof Number ? ((Number) value).longValue() 
+                    : Long.parseLong(value.toString().trim()));
+        } else if (type == ResultType.FLOAT || type == ResultType.DOUBLE) {
+            setResult(value instanceof Number ? ((Number) value).doubleValue()
+                    : Double.parseDouble(value.toString().trim()));
+            if (this.resultType == ResultType.DOUBLE)
+                this.resultType = type;
+        } else {
+            this.result = (value == null) ? null : value.toString();
+            this.resultType = ResultType.STRING;
+            this.longResult = null;
+            this.doubleResult = null;
+        }
+    }
+
+    /**
+     * The type of the stored result, or <tt>null</tt> if it was stored 
+     * before typed columns were introduced.
+     */
+    public ResultType getResultType() {
+        return resultType;
+    }
+
+    /**
+     * Get the result as a long. String and untyped results are parsed.
+     * 
+     * @return The result or null if it is not an integer 
+     */
+    public Long getLongResult() {
+        if (resultType == ResultType.INTEGER)
+            return longResult;
+        if (resultType == ResultType.FLOAT || resultType == ResultType.DOUBLE)
+            return (doubleResult == null) ? null : doubleResult.longValue();
+        if (result == null)
+            return null;
+        try {
+            return Long.parseLong(result.trim());
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the result as a double. String and untyped results are parsed.
+     * 
+     * @return The result or null if it is not a number 
+     */
+    public Double getDoubleResult() {
+        if (resultType == ResultType.INTEGER)
+            return (longResult == null) ? null : longResult.doubleValue();
+        if (resultType == ResultType.FLOAT || resultType == ResultType.DOUBLE)
+            return doubleResult;
+        if (result == null)
+            return null;
+        try {
+            return Double.parseDouble(result.trim());
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+    }
+    
+    /**
+     * Get the result as a value suitable for a {@link Result} of the 
+     * provided type: a Long for integer results, a Double for floating
+     * point results and a String otherwise. Results that cannot be 
+     * converted to the requested type are returned as strings.
+     */
+    public Object getResult(ResultType type) {
+        Object value = null;
+        if (type == ResultType.INTEGER)
+            value = getLongResult();
+        else if (type == ResultType.FLOAT || type == ResultType.DOUBLE)
+            value = getDoubleResult();
+        return (value == null) ? getResult() : value;
+    }
+
+    /**
+     * Convert an untyped result to the type declared by its metric. 
+     * Results that cannot be converted to the declared type, and results
+     * of metrics that declare no type, are stored as strings, unchanged.
+     * 
+     * @param declared The type of the results of the measurement's metric,
+     * or null if it is not known
+     * @return true if the measurement was modified 
+     */
+    public boolean migrate(ResultType declared) {
+        if (resultType != null)
+            return false;
+        
+        if (result != null && declared != null 
+                && declared != ResultType.STRING) {
+            try {
+                setResult(result, declared);
+                return true;
+            } catch (NumberFormatException nfe) {}
+        }
+        
+        resultType = ResultType.STRING;
+        return true;
+    }
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
@@ -44,12 +44,6 @@ public class NameSpaceMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-
     public NameSpaceMeasurement() {
         super();
     }
@@ -62,14 +56,6 @@ public class NameSpaceMeasurement extends MetricMeasurement {
         this.id = id;
     }
 
-    public void setResult(String result) {
-        this.result = result;
-    }
-
-    public String getResult() {
-        return result;
-    }
-
     public void setMetric(Metric metric) {
         this.metric = metric;
     }
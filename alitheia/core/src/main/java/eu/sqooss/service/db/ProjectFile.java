@@ -75,6 +75,14 @@ public class ProjectFile extends DAObject{
     private static final String qPrevVersionCopy = "select pf from ProjectVersion pv, ProjectFile pf where pf.projectVersion = pv.id and pv.project.id = :paramProject and pv.sequence < :paramsequence and ((pf.name = :paramFile and pf.dir.id = :paramDir) or ( pf.name = :paramCopyFromName and pf.dir.id = :paramCopyFromDir)) order by pv.sequence desc";
     private static final String qChangedMethods = "from ExecutionUnit eu where eu.file = :file and eu.changed = true";
     
+    /**
+     * The validUntilSequence of files that are still live
+     */
+    public static final long LIVE_SEQUENCE = Long.MAX_VALUE;
+    
+    /* Set once all stored files have a project id and validity sequences */
+    private static volatile boolean sequencesStored = false;
+    
 	@Id
 	@GeneratedValue(strategy=GenerationType.AUTO)
 	@Column(name="PROJECT_FILE_ID")
@@ -134,6 +142,30 @@ public class ProjectFile extends DAObject{
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name="VALID_TO_ID")
     private ProjectVersion validUntil;
+    
+    /**
+     * The sequence of the validFrom version, copied here so that the 
+     * files live in a version can be found without joining versions
+     */
+    @Column(name="VALID_FROM_SEQUENCE", nullable = true)
+    private Long validFromSequence;
+    
+    /**
+     * The sequence of the validUntil version, or {@link #LIVE_SEQUENCE}
+     * if the file is still live.
+     */
+    @Column(name="VALID_TO_SEQUENCE", nullable = true)
+    private Long validUntilSequence;
+    
+    /**
+     * The id of the project of the file's version. Sequences are per 
+     * project, so it leads the index on the validity sequences; the until 
+     * sequence comes next as it is the selective bound for recent versions.
+     */
+    @Column(name="PROJECT_ID", nullable = true)
+    @Index(name="IDX_PROJECT_FILE_VALID_SEQUENCE", 
+            columnNames={"PROJECT_ID", "VALID_TO_SEQUENCE", "VALID_FROM_SEQUENCE"})
+    private Long projectId;
 
     /**
      * The ProjectFile this file was copied from. Only gets a value 
@@ -176,7 +208,7 @@ public class ProjectFile extends DAObject{
 
     public ProjectFile(ProjectVersion pv) {
         this();
-        this.projectVersion = pv;
+        this.setProjectVersion(pv);
         this.setValidFrom(pv);
         this.setValidUntil(null);
     }
@@ -202,9 +234,9 @@ public class ProjectFile extends DAObject{
         this.isDirectory = f.getIsDirectory();
         this.measurements = null;
         this.name = f.getName();
-        this.projectVersion = v;
-        this.validFrom = v;
-        this.validUntil = null;
+        this.setProjectVersion(v);
+        this.setValidFrom(v);
+        this.setValidUntil(null);
         //this.status = f.getStatus();
     }
     
@@ -229,6 +261,8 @@ public class ProjectFile extends DAObject{
 
     public void setProjectVersion(ProjectVersion projectVersion ) {
         this.projectVersion = projectVersion;
+        this.projectId = (projectVersion == null) ? null 
+                : projectVersion.getProject().getId();
     }
 
     public ProjectVersion getProjectVersion() {
@@ -301,6 +335,8 @@ public class ProjectFile extends DAObject{
 
     public void setValidFrom(ProjectVersion validFrom) {
         this.validFrom = validFrom;
+        this.validFromSequence = (validFrom == null) ? null 
+                : validFrom.getSequence();
     }
 
     public ProjectVersion getValidUntil() {
@@ -309,6 +345,36 @@ public class ProjectFile extends DAObject{
 
     public void setValidUntil(ProjectVersion validUntil) {
         this.validUntil = validUntil;
+        this.validUntilSequence = (validUntil == null) ? LIVE_SEQUENCE 
+                : validUntil.getSequence();
+    }
+    
+    /**
+     * Check whether all stored files have a project id and validity
+     * sequences, so live files can be selected on them alone.
+     */
+    public static boolean isSequencesStored() {
+        return sequencesStored;
+    }
+
+    /**
+     * Record that all stored files have a project id and validity
+     * sequences. Files stored from now on get them when they are created.
+     */
+    public static void setSequencesStored() {
+        sequencesStored = true;
+    }
+
+    public Long getValidFromSequence() {
+        return validFromSequence;
+    }
+    
+    public Long getValidUntilSequence() {
+        return validUntilSequence;
+    }
+    
+    public Long getProjectId() {
+        return projectId;
     }
     
     public ProjectFile getCopyFrom() {
@@ -68,11 +68,6 @@ public class ProjectFileMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
     
     /**
      * The file against which the measurement was made
@@ -101,6 +96,26 @@ public class ProjectFileMeasurement extends MetricMeasurement {
         setResult(value);
     }
     
+    /**
+     * Convenience constructor for integer measurements.
+     */
+    public ProjectFileMeasurement(Metric m, ProjectFile f, long value) {
+        super();
+        setMetric(m);
+        setProjectFile(f);
+        setResult(value);
+    }
+    
+    /**
+     * Convenience constructor for floating point measurements.
+     */
+    public ProjectFileMeasurement(Metric m, ProjectFile f, double value) {
+        super();
+        setMetric(m);
+        setProjectFile(f);
+        setResult(value);
+    }
+    
     public long getId() {
         return id;
     }
@@ -126,13 +141,6 @@ public class ProjectFileMeasurement extends MetricMeasurement {
         this.metric = metric;
     }
 
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
 
 //vi: ai nosi sw=4 ts=4 expandtab
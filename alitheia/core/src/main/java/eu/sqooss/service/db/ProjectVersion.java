@@ -64,6 +64,8 @@ import javax.xml.bind.annotation.XmlRootElement;
 import org.hibernate.annotations.Index;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.fds.FileTypeMatcher;
+import eu.sqooss.service.fds.FileTypeMatcher.FileType;
 
 /**
  * Instances of this class represent the data about a version of a
@@ -666,43 +668,214 @@ public class ProjectVersion extends DAObject {
     public long getLiveFilesCount() {
     	DBService dbs = AlitheiaCore.getInstance().getDBService();
 
-    	String paramVersionId = "paramVersion";
         String paramIsDirectory = "paramIsDirectory";
-        String paramProjectId = "paramProject";
-        String paramState = "paramState";
         Map<String, Object> params = new HashMap<String, Object>();
 
-        StringBuffer q = new StringBuffer("select count(pf) ");
-        
-        if (this.sequence == ProjectVersion.getLastProjectVersion(this.project).sequence) {
-            q.append(" from ProjectFile pf, ProjectVersion pv");
-            q.append(" where pv.id = :").append(paramVersionId);
-            q.append(" and pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and ((pf.validFrom.id = pv2.id and pf.validUntil.id = pv3.id)");
-            q.append("     or (pf.validFrom.id = pv2.id and pf.validUntil.id is null))");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-            
-            params.put(paramProjectId, this.getProject().getId());
-        }
+        StringBuffer q = new StringBuffer("select count(pf) from ProjectFile pf");
+        q.append(" where ").append(liveFilesClause("pf", params));
         q.append(" and pf.isDirectory = :").append(paramIsDirectory);
-        q.append(" and pf.state <> :").append(paramState);
-
         
-        params.put(paramVersionId, this.getId());
         params.put(paramIsDirectory, Boolean.FALSE);
-        params.put(paramState, ProjectFileState.deleted());
         
         return (Long) dbs.getQueryInterface(HQLQueryInterface.class).doHQL(q.toString(), params).get(0);
     }
 
+    /**
+     * Get an HQL condition that selects the files that are live in this
+     * version, excluding deleted files, and add its parameters to the 
+     * provided map. The condition compares the project id and validity 
+     * sequences that are stored with each file, which are covered by an 
+     * index, so no versions need to be joined.
+     * <br/>
+     * Until ValidSequenceMigrationJob has filled in the sequences of files
+     * stored before they existed, the condition also matches those files by
+     * looking up the sequences of their validity versions.
+     * 
+     * @param alias The alias of the {@link ProjectFile} in the query 
+     * @param params The query parameters
+     * @return A condition to be used in a where clause
+     */
+    public String liveFilesClause(String alias, Map<String, Object> params) {
+        String paramProject = "lfParamProject";
+        String paramProjectId = "lfParamProjectId";
+        String paramSequence = "lfParamSequence";
+        String paramState = "lfParamState";
+        
+        params.put(paramProjectId, this.getProject().getId());
+        params.put(paramSequence, this.getSequence());
+        params.put(paramState, ProjectFileState.deleted());
+        
+        StringBuffer b = new StringBuffer("(");
+        b.append(alias).append(".projectId = :").append(paramProjectId);
+        b.append(" and ").append(alias).append(".validUntilSequence >= :").append(paramSequence);
+        b.append(" and ").append(alias).append(".validFromSequence <= :").append(paramSequence);
+        b.append(")");
+        
+        if (!ProjectFile.isSequencesStored()) {
+            params.put(paramProject, this.getProject());
+            b.insert(0, "(");
+            b.append(" or ((").append(alias).append(".projectId is null");
+            b.append(" or ").append(alias).append(".validUntilSequence is null");
+            b.append(" or ").append(alias).append(".validFromSequence is null)");
+            b.append(" and ").append(alias).append(".validFrom.id in (select vf.id from ProjectVersion vf");
+            b.append(" where vf.project = :").append(paramProject);
+            b.append(" and vf.sequence <= :").append(paramSequence).append(")");
+            b.append(" and (").append(alias).append(".validUntil is null or ");
+            b.append(alias).append(".validUntil.id in (select vu.id from ProjectVersion vu");
+            b.append(" where vu.project = :").append(paramProject);
+            b.append(" and vu.sequence >= :").append(paramSequence).append("))))");
+        }
+        b.append(" and ").append(alias).append(".state <> :").append(paramState);
+        return b.toString();
+    }
+
+    /**
+     * Aggregate the results of a file level metric over the live files
+     * (excluding directories) in this version.
+     * 
+     * @see #aggregateFileMeasurements(Metric, FileType, Directory, boolean, Metric)
+     */
+    public MeasurementAggregate aggregateFileMeasurements(Metric m, 
+            FileType type) {
+        return aggregateFileMeasurements(m, type, null, false, null);
+    }
+    
+    /**
+     * Aggregate the results of a file level metric over the files that
+     * are live in this version. The aggregation is performed by the 
+     * database; no measurements are loaded.
+     * <br/>
+     * File types are determined by file name as in 
+     * {@link FileTypeMatcher#getFileType(String)}. Files whose extension
+     * is known are matched in the database; the case sensitivity of 
+     * this match depends on the database collation. The remaining files
+     * are aggregated per file name and classified here, which is only
+     * required for documentation, translation and text files.
+     * 
+     * @param m The metric whose results will be aggregated
+     * @param type Only include files of this type, or null for all files
+     * @param dir Only include files in this directory or its 
+     *        subdirectories, or null for all files
+     * @param directories Aggregate over directories instead of files
+     * @param with Only include files that also have a measurement for 
+     *        this metric, or null for no such restriction
+     * @return The aggregate of the results, with a count of 0 if no 
+     *         measurements were found
+     */
+    public MeasurementAggregate aggregateFileMeasurements(Metric m, 
+            FileType type, Directory dir, boolean directories, Metric with) {
+        return aggregateFileMeasurements(m, type, dir, directories, with, false);
+    }
+    
+    /**
+     * Aggregate the results of a file level metric over the files that
+     * are live in this version, optionally only the positive ones.
+     * 
+     * @param positive Only include results that are greater than 0
+     * @see #aggregateFileMeasurements(Metric, FileType, Directory, boolean, Metric)
+     */
+    @SuppressWarnings("unchecked")
+    public MeasurementAggregate aggregateFileMeasurements(Metric m, 
+            FileType type, Directory dir, boolean directories, Metric with,
+            boolean positive) {
+        DBService dbs = AlitheiaCore.getInstance().getDBService();
+        HQLQueryInterface qi = dbs.getQueryInterface(HQLQueryInterface.class);
+        
+        String paramMetric = "paramMetric";
+        String paramIsDirectory = "paramIsDirectory";
+        String paramDir = "paramDir";
+        String paramDirPrefix = "paramDirPrefix";
+        String paramWith = "paramWith";
+        Map<String, Object> params = new HashMap<String, Object>();
+        
+        StringBuffer q = new StringBuffer();
+        q.append(" from ProjectFileMeasurement pfm join pfm.projectFile pf");
+        q.append(" where pfm.metric = :").append(paramMetric);
+        q.append(" and ").append(liveFilesClause("pf", params));
+        q.append(" and pf.isDirectory = :").append(paramIsDirectory);
+        
+        if (dir != null) {
+            q.append(" and (pf.dir = :").append(paramDir);
+            q.append(" or pf.dir.path like :").append(paramDirPrefix).append(")");
+            String prefix = dir.getPath().endsWith("/") ? dir.getPath() 
+                    : dir.getPath() + "/";
+            params.put(paramDir, dir);
+            params.put(paramDirPrefix, prefix + "%");
+        }
+        
+        if (with != null) {
+            q.append(" and exists (select pfm1.id from ProjectFileMeasurement pfm1");
+            q.append(" where pfm1.projectFile = pf and pfm1.metric = :");
+            q.append(paramWith).append(")");
+            params.put(paramWith, with);
+        }
+        
+        if (positive) {
+            q.append(" and (pfm.longResult > 0 or pfm.doubleResult > 0)");
+        }
+        
+        params.put(paramMetric, m);
+        params.put(paramIsDirectory, directories);
+        
+        String aggregates = "count(pfm), count(pfm.resultType), " +
+        		"count(pfm.longResult), count(pfm.doubleResult), " +
+        		"sum(pfm.longResult), " +
+        		"sum(pfm.doubleResult), max(pfm.longResult), " +
+        		"max(pfm.doubleResult), min(pfm.longResult), " +
+        		"min(pfm.doubleResult) ";
+        String select = "select " + aggregates;
+        
+        if (type == null) {
+            List<Object[]> rows = (List<Object[]>) qi.doHQL(select + q, params);
+            return rows.isEmpty() ? new MeasurementAggregate() 
+                    : new MeasurementAggregate(rows.get(0));
+        }
+        
+        MeasurementAggregate result = new MeasurementAggregate();
+        
+        /* Files whose type is determined by their extension */
+        Set<String> exts = FileTypeMatcher.getFileExtensions(type);
+        if (!exts.isEmpty()) {
+            List<Object[]> rows = (List<Object[]>) qi.doHQL(select + q 
+                    + " and (" + extensionClause(exts, false) + ")", params);
+            if (!rows.isEmpty())
+                result.add(new MeasurementAggregate(rows.get(0)));
+        }
+        
+        /* Files with unknown extensions, classified by name */
+        if (type == FileType.DOC || type == FileType.TRANS 
+                || type == FileType.TXT) {
+            String hql = "select pf.name, " + aggregates + q 
+                + " and " + extensionClause(FileTypeMatcher.getFileExtensions(null), true)
+                + " group by pf.name";
+            FileTypeMatcher ftm = FileTypeMatcher.getInstance();
+            for (Object[] row : (List<Object[]>) qi.doHQL(hql, params)) {
+                if (ftm.getFileType((String) row[0]) != type)
+                    continue;
+                result.add(new MeasurementAggregate(
+                        Arrays.copyOfRange(row, 1, row.length)));
+            }
+        }
+        
+        return result;
+    }
+    
+    /* 
+     * HQL clause matching file names with (or without, if negated) one
+     * of the provided extensions. Extensions are constants without
+     * quotes or wildcards, so they are inlined.
+     */
+    private static String extensionClause(Set<String> exts, boolean negate) {
+        StringBuffer b = new StringBuffer();
+        for (String ext : exts) {
+            if (b.length() > 0)
+                b.append(negate ? " and " : " or ");
+            b.append("pf.name ").append(negate ? "not like" : "like");
+            b.append(" '%").append(ext).append("'");
+        }
+        return b.toString();
+    }
+
 
     public String toString() {
         return "ProjectVersion(\"" + this.project.getName() + "\",r" + this.revisionId +")";
@@ -714,33 +887,10 @@ public class ProjectVersion extends DAObject {
 
         String paramDirectory = "paramDirectory";
         String paramIsDirectory = "is_directory";
-        String paramVersionId = "paramVersionId";
-        String paramProjectId = "paramProjectId";
-        String paramState = "paramStatus";
 
         Map<String,Object> params = new HashMap<String,Object>();
-        StringBuffer q = new StringBuffer("select distinct pf ");
-        
-        if (this.sequence == ProjectVersion.getLastProjectVersion(this.project).sequence) {
-            q.append(" from ProjectFile pf, ProjectVersion pv");
-            q.append(" where pv.id = :").append(paramVersionId);
-            q.append(" and pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and ((pf.validFrom.id = pv2.id and pf.validUntil.id = pv3.id)");
-            q.append("     or (pf.validFrom.id = pv2.id and pf.validUntil.id is null))");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-            
-            params.put(paramProjectId, this.project.getId());
-        }
-        
-        q.append(" and pf.state <> :").append(paramState);
+        StringBuffer q = new StringBuffer("select pf from ProjectFile pf");
+        q.append(" where ").append(liveFilesClause("pf", params));
         
         if (d != null) {
  	    	q.append(" and pf.dir = :").append(paramDirectory);
@@ -750,9 +900,6 @@ public class ProjectVersion extends DAObject {
  	    	q.append(" and pf.isDirectory = :").append(paramIsDirectory);
  	    }
     
-     	params.put(paramState, ProjectFileState.deleted());
-     	params.put(paramVersionId, this.getId());
- 	    
      	if (d != null) {
      		params.put(paramDirectory, d);
      	}
@@ -68,12 +68,6 @@ public class ProjectVersionMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-
 	/**
      * The ProjectVersion to which the instance relates
      */
@@ -99,6 +93,26 @@ public class ProjectVersionMeasurement extends MetricMeasurement {
         setResult(v);
     }
     
+    /**
+     * Convenience constructor for integer measurements.
+     */
+    public ProjectVersionMeasurement(Metric m, ProjectVersion p, long v) {
+        this();
+        setMetric(m);
+        setProjectVersion(p);
+        setResult(v);
+    }
+    
+    /**
+     * Convenience constructor for floating point measurements.
+     */
+    public ProjectVersionMeasurement(Metric m, ProjectVersion p, double v) {
+        this();
+        setMetric(m);
+        setProjectVersion(p);
+        setResult(v);
+    }
+    
     public long getId() {
 		return id;
 	}
@@ -128,20 +142,6 @@ public class ProjectVersionMeasurement extends MetricMeasurement {
     public void setMetric(Metric metric) {
         this.metric = metric;
     }
-    
-    /**
-     * @return the result
-     */
-    public String getResult() {
-        return result;
-    }
-    
-    /**
-     * @param result the result to set
-     */
-    public void setResult(String result) {
-        this.result = result;
-    }
 }
 
 //vi: ai nosi sw=4 ts=4 expandtab
@@ -70,12 +70,6 @@ public class StoredProjectMeasurement extends MetricMeasurement {
     @JoinColumn(name="METRIC_ID", referencedColumnName="METRIC_ID")
     private Metric metric;
 
-    /**
-     * A representation of the calculation result
-     */
-    @Column(name="RESULT")
-    private String result;
-	
 	/**
      * The StoredPRoject to which this measurement relates
      */
@@ -114,14 +108,6 @@ public class StoredProjectMeasurement extends MetricMeasurement {
         this.metric = metric;
     }
 
-    public String getResult() {
-        return result;
-    }
-
-    public void setResult(String result) {
-        this.result = result;
-    }
-
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
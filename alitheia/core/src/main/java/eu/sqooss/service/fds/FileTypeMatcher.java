@@ -35,6 +35,9 @@ package eu.sqooss.service.fds;
 
 import java.lang.StringBuffer;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.regex.Pattern;
 
 /**
@@ -301,6 +304,27 @@ public final class FileTypeMatcher {
 		ft = lookupTable.get(ext);
 		return ft;
 	}
+
+	/**
+	 * Get the file extensions that are mapped to the provided file type.
+	 * Files with those extensions are of that type regardless of their
+	 * name; files with other extensions are classified by the heuristics
+	 * in {@link #getFileType(String)}.
+	 *
+	 * @param ft The file type to get the extensions for, or null for
+	 *           the extensions of all file types
+	 * @return A set of extensions, including the leading .
+	 */
+	public static Set<String> getFileExtensions(FileType ft) {
+		Set<String> exts = new TreeSet<String>();
+		for (Map.Entry<String, FileType> e : lookupTable.entrySet()) {
+			if (!e.getKey().startsWith("."))
+				continue;
+			if (ft == null || e.getValue().equals(ft))
+				exts.add(e.getKey());
+		}
+		return exts;
+	}
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
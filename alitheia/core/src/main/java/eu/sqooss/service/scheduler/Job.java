@@ -33,17 +33,22 @@
 
 package eu.sqooss.service.scheduler;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import java.lang.Comparable;
 import java.lang.InterruptedException;
 
 import eu.sqooss.core.AlitheiaCore;
-import eu.sqooss.service.util.Pair;
 
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.scheduler.SchedulerException;
@@ -70,19 +75,43 @@ public abstract class Job implements Comparable<Job> {
     }
 
     /**
-     * This list contains the dependencies between the jobs.
-     * Each pair defines that the \a second one's execution depends on
-     * completion of the \a first one.
-     *
-     * As soon as the \a first job is finished, the pair is removed from
-     * the list.
+     * The kind of work a job spends most of its time on. The scheduler
+     * may run I/O bound jobs on a separate, larger pool of threads, so 
+     * that they don't starve CPU bound jobs while they wait on the 
+     * database or the repositories.
      */
-    protected List<Pair<Job,Job>> m_dependencies;
+    public enum Workload {
+        CPU,
+        IO
+    }
+
+    /**
+     * The unfinished jobs this job depends on. As soon as a job
+     * is finished, it is removed from the list of all its dependees.
+     */
+    private List<Job> m_dependencies;
     
     /**
      * List of jobs which depend on this job
      */
     private List<Job> m_dependees;
+    
+    /**
+     * Number of unfinished jobs this job depends on. The job can be
+     * executed when this drops to 0.
+     */
+    private final AtomicInteger m_pending = new AtomicInteger(0);
+    
+    /**
+     * Set when the job has finished and notified its dependees. Jobs 
+     * depending on a resolved job do not need to wait for it.
+     */
+    private boolean m_resolved = false;
+    
+    /**
+     * Guards the dependency lists and the resolved flag. 
+     */
+    private final Object m_depLock = new Object();
 
     /**
      * A list of objects that listen to this job's state changes  
@@ -126,9 +155,10 @@ public abstract class Job implements Comparable<Job> {
     /**
      * Adds a dependency.
      * This job cannot be executed, as long \a other
-     * is not finished.
+     * is not finished. Cycles in the dependency graph are detected
+     * when the jobs are enqueued, see {@link #checkAcyclic(Collection)}.
      */
-    public final synchronized void addDependency(Job other) throws SchedulerException {
+    public final void addDependency(Job other) throws SchedulerException {
         // Dependencies of jobs can ony be changed before the job is queued.
         // Otherwise, race conditions would occur in which it would be undefined
         // if the dependency is applied or not.
@@ -136,18 +166,28 @@ public abstract class Job implements Comparable<Job> {
         	throw new SchedulerException("Job dependencies cannot be added after the job has been queued.");
         }
 
-        // Don't allow circular dependencies
-        if( other.dependsOn(this) || (this==other) ) {
+        if (this == other) {
             throw new SchedulerException("Job dependencies are not allowed to be cyclic.");
         }
 
-        if (m_dependencies == null)
-            m_dependencies = new LinkedList<Pair<Job,Job>>();
+        /*
+         * Account for the dependency before registering with the other job,
+         * so that the other job finishing in between can't resolve a 
+         * dependency we have not counted yet.
+         */
+        synchronized (m_depLock) {
+            if (m_dependencies == null)
+                m_dependencies = new ArrayList<Job>(2);
+            m_dependencies.add(other);
+        }
+        m_pending.incrementAndGet();
         
-        synchronized (m_dependencies) {
-            Pair<Job,Job> newDependency = new Pair<Job,Job>(other, this);
-            m_dependencies.add(newDependency);
-            other.addDependee(this);
+        if (!other.addDependee(this)) {
+            // Already finished, nothing to wait for
+            synchronized (m_depLock) {
+                m_dependencies.remove(other);
+            }
+            m_pending.decrementAndGet();
         }
         callDependenciesChanged();
     }
@@ -157,18 +197,14 @@ public abstract class Job implements Comparable<Job> {
      * \sa addDependency
      */
     public final void removeDependency(Job other) {
-        if (m_dependencies == null)
+        int removed = other.removeDependee(this);
+        if (removed == 0)
             return;
-        synchronized(m_dependencies) {
-            List<Pair<Job,Job>> doomed = new LinkedList<Pair<Job,Job>>();
-            for (Pair<Job,Job> p: m_dependencies ) {
-                if ( (p.first == other) && (p.second == this) ) {
-                    doomed.add(p);
-                    removeDependee(other);
-                }
-            }
-            m_dependencies.removeAll(doomed);
+        synchronized (m_depLock) {
+            for (int i = 0; i < removed; i++)
+                m_dependencies.remove(other);
         }
+        m_pending.addAndGet(-removed);
         callDependenciesChanged();
     }
 
@@ -178,34 +214,104 @@ public abstract class Job implements Comparable<Job> {
      * @return true, when the job depends on \a other, otherwise false.
      */
     public final boolean dependsOn(Job other) {
-        if (m_dependencies == null)
-            return false;
-        synchronized(m_dependencies) {
-            for (Pair<Job,Job> p: m_dependencies ) {
-                if ( (p.first == other) && (p.second == this) ) {
-                    return true;
-                } else if ( (p.second == this) && p.first.dependsOn(other)) {
+        Set<Job> visited = 
+            Collections.newSetFromMap(new IdentityHashMap<Job, Boolean>());
+        Deque<Job> toVisit = new ArrayDeque<Job>();
+        toVisit.add(this);
+        while (!toVisit.isEmpty()) {
+            for (Job dep : toVisit.poll().dependencies()) {
+                if (dep == other)
                     return true;
+                if (visited.add(dep))
+                    toVisit.add(dep);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks that the dependency graph spanned by the provided jobs has no
+     * cycles. The graph is traversed once, regardless of the number of 
+     * jobs provided.
+     * 
+     * @param jobs The jobs to check
+     * @throws SchedulerException If one of the jobs depends on itself,
+     *  directly or indirectly.
+     */
+    public static void checkAcyclic(Collection<? extends Job> jobs)
+            throws SchedulerException {
+        // false: job is on the current path, true: job and deps are checked
+        Map<Job, Boolean> visited = new IdentityHashMap<Job, Boolean>();
+        Deque<Job> path = new ArrayDeque<Job>();
+        Deque<Iterator<Job>> pending = new ArrayDeque<Iterator<Job>>();
+
+        for (Job root : jobs) {
+            if (visited.containsKey(root))
+                continue;
+            visited.put(root, false);
+            path.push(root);
+            pending.push(root.dependencies().iterator());
+            
+            while (!pending.isEmpty()) {
+                Iterator<Job> it = pending.peek();
+                if (!it.hasNext()) {
+                    pending.pop();
+                    visited.put(path.pop(), true);
+                    continue;
+                }
+                Job dep = it.next();
+                Boolean checked = visited.get(dep);
+                if (checked == null) {
+                    visited.put(dep, false);
+                    path.push(dep);
+                    pending.push(dep.dependencies().iterator());
+                } else if (!checked) {
+                    throw new SchedulerException("Job dependencies are not " +
+                    		"allowed to be cyclic: " + dep + " depends on itself");
                 }
             }
-            return false;
         }
     }
 
-    private final synchronized void addDependee(Job other) {
-        if (m_dependees == null)
-            m_dependees = new ArrayList<Job>();
-        synchronized (m_dependees) {
+    /**
+     * Registers a job depending on this job.
+     * @return false if this job has already finished
+     */
+    private boolean addDependee(Job other) {
+        synchronized (m_depLock) {
+            if (m_resolved)
+                return false;
+            if (m_dependees == null)
+                m_dependees = new ArrayList<Job>(2);
             m_dependees.add(other);
+            return true;
         }
     }
     
-    private final synchronized void removeDependee(Job other) {
-        if (m_dependees == null)
-            return;
-        synchronized (m_dependees) {
-            m_dependees.remove(other);
+    /**
+     * @return The number of times the job was registered as dependee
+     */
+    private int removeDependee(Job other) {
+        synchronized (m_depLock) {
+            if (m_dependees == null)
+                return 0;
+            int removed = 0;
+            while (m_dependees.remove(other))
+                removed++;
+            return removed;
+        }
+    }
+    
+    /**
+     * Called by a job this job depends on when it has finished.
+     */
+    private void dependencyResolved(Job dep) {
+        synchronized (m_depLock) {
+            if (m_dependencies != null)
+                m_dependencies.remove(dep);
         }
+        if (m_pending.decrementAndGet() == 0)
+            callDependenciesChanged();
     }
     
     /**
@@ -285,22 +391,24 @@ public abstract class Job implements Comparable<Job> {
      */
     abstract public long priority();
 
+    /**
+     * The kind of work this job does, used by the scheduler to pick the
+     * threads the job runs on. Jobs are considered CPU bound by default.
+     * @return The job's workload type.
+     */
+    public Workload workload() {
+        return Workload.CPU;
+    }
+
     /**
      * @return All unfinished jobs this job depends on.
      */
     public final List<Job> dependencies() {
-        if (m_dependencies == null)
-            return Collections.EMPTY_LIST;
-        
-        List<Job> result = new LinkedList<Job>();
-        synchronized (m_dependencies) {
-            for (Pair<Job,Job> p: m_dependencies) {
-                if (p.second == this) {
-                    result.add(p.first);
-                }
-            }
+        synchronized (m_depLock) {
+            if (m_dependencies == null || m_dependencies.isEmpty())
+                return Collections.emptyList();
+            return new ArrayList<Job>(m_dependencies);
         }
-        return result;
     }
 
     /**
@@ -344,15 +452,7 @@ public abstract class Job implements Comparable<Job> {
      * @return true, when all dependencies are met.
      */
     public boolean canExecute() {
-        final List<Job> deps = dependencies();
-        Iterator<Job> it = deps.iterator();
-        while (it.hasNext()) {
-            Job j = it.next();
-            if (j.state() != State.Finished && j.state() != State.Error) {
-                return false;
-            }
-        }
-        return true;
+        return m_pending.get() == 0;
     }
     
     /**
@@ -391,36 +491,23 @@ public abstract class Job implements Comparable<Job> {
 
         m_state = s;
 
-        if ((m_state == State.Finished || m_state == State.Error) && m_dependencies != null) {
-            // remove the job from the dependency list
-            List<Job> unblockedJobs = new LinkedList<Job>();
-            synchronized (m_dependencies) {
-                List<Pair<Job,Job>> doomed = new LinkedList<Pair<Job,Job>>();
-                for (Pair<Job,Job> p: m_dependencies) {
-                    if (p.first == this) {
-                        doomed.add(p);
-                        unblockedJobs.add(p.second);
-                    }
-                }
-                m_dependencies.removeAll(doomed);
-            }
-            /* tell all jobs depending on the now finished on to forward that
-             * to the scheduler
+        if (m_state == State.Finished || m_state == State.Error) {
+            /* tell all jobs depending on the now finished one, the last 
+             * dependency to finish will forward that to the scheduler
              */
-            for (Job j: unblockedJobs) {
-                j.callDependenciesChanged();
+            List<Job> unblockedJobs = null;
+            synchronized (m_depLock) {
+                m_resolved = true;
+                unblockedJobs = m_dependees;
+                m_dependees = null;
             }
-        }
-        
-        if ((m_state == State.Finished || m_state == State.Error) && m_dependees != null) {
-            synchronized (m_dependees) {
-                for (Job p: m_dependees) {
-                    p.callDependenciesChanged();
+            if (unblockedJobs != null) {
+                for (Job j : unblockedJobs) {
+                    j.dependencyResolved(this);
                 }
-                m_dependees.clear();
             }
         }
-
+        
         if (m_scheduler != null) {
             m_scheduler.jobStateChanged(this, s);
         }
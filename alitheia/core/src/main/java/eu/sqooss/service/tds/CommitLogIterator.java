@@ -0,0 +1,77 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.tds;
+
+import java.util.NoSuchElementException;
+
+/**
+ * A commit log that is read from the repository while it is being iterated.
+ * Entries are returned in ascending date order and only a bounded number of
+ * them is retrieved ahead of the consumer, so logs of any length can be
+ * processed in constant memory. 
+ * 
+ * Iterators hold repository resources until they are exhausted or 
+ * {@link #close()} is called.
+ * 
+ * @see SCMAccessor#getCommitLogIterator(String, Revision, Revision)
+ */
+public interface CommitLogIterator {
+    
+    /**
+     * Check whether there are more entries in the log. May contact the 
+     * repository to retrieve the next batch of entries.
+     * 
+     * @return true if {@link #next()} will return an entry
+     * @throws InvalidRepositoryException When there is an error accessing the 
+     * underlying repository
+     */
+    boolean hasNext() throws InvalidRepositoryException;
+
+    /**
+     * Return the next entry in the log.
+     * 
+     * @return The next revision in date order
+     * @throws InvalidRepositoryException When there is an error accessing the 
+     * underlying repository
+     * @throws NoSuchElementException If the log has no more entries
+     */
+    Revision next() throws InvalidRepositoryException;
+
+    /**
+     * Release the repository resources held by this iterator. 
+     */
+    void close();
+}
+
+// vi: ai nosi sw=4 ts=4 expandtab
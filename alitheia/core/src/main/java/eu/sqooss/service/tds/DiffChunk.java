@@ -54,10 +54,21 @@ public interface DiffChunk {
 	}
 	
 	/**
-	 * Get the actual diff text.
+	 * Get the actual diff text, or null if the diff was parsed without
+	 * keeping its text.
 	 */
 	String getChunk();
 	
+	/**
+	 * Get the number of lines added by this chunk
+	 */
+	int getAddedLines();
+	
+	/**
+	 * Get the number of lines removed by this chunk
+	 */
+	int getRemovedLines();
+	
 	/**
 	 * Get the starting line on the source file
 	 */
@@ -71,4 +71,20 @@ public class DiffFactory {
         
         return null;
     }
+
+    /**
+     * Create a stream that parses the unified diff written to it. 
+     * 
+     * @param start
+     * @param end
+     * @param basePath
+     * @param keepText If false, the text of the parsed diff chunks is
+     *  discarded and only their line ranges and counts are kept 
+     * @return A stream whose {@link DiffOutputStream#getDiff()} method
+     *  returns the parsed diff
+     */
+    public DiffOutputStream newUnifiedDiffStream(Revision start, Revision end,
+            String basePath, boolean keepText) {
+        return new UnifiedDiffParser(start, end, basePath, keepText).getOutputStream();
+    }
 }
@@ -224,6 +224,24 @@ public interface SCMAccessor extends DataAccessor {
                InvalidRepositoryException,
                FileNotFoundException;
 
+    /**
+     * Get an identifier of the contents of a file at the given revision,
+     * such that two files with the same identifier have the same contents.
+     * Repositories that store files by content hash (e.g. the blob id
+     * in Git) can return it without reading the file.
+     *
+     * @param repoPath File within this repository
+     * @param revision Revision to use for the file
+     *
+     * @return The content identifier, or null if the repository does not
+     * provide one or the file does not exist at the given revision.
+     *
+     * @throws InvalidRepositoryException When there is an error accessing the
+     * underlying repository
+     */
+    public String getContentId(String repoPath, Revision revision)
+        throws InvalidRepositoryException;
+
     /**
      * Get the commit log entries in ascending date order for the changes between revisions
      * <code>r1</code> and <code>r2</code>
@@ -247,6 +265,30 @@ public interface SCMAccessor extends DataAccessor {
         throws InvalidProjectRevisionException,
                InvalidRepositoryException;
 
+    /**
+     * Get the same entries as
+     * {@link #getCommitLog(String, Revision, Revision)}, but retrieve
+     * them from the repository as they are consumed instead of
+     * building the whole log in memory. To be preferred when processing
+     * long revision ranges.
+     *
+     * @param repoPath The path to get the log for
+     * @param r1 The revision to start getting the log from
+     * @param r2 The revision up to which to get the log. If null, the
+     *           iterator only returns revision r1.
+     *
+     * @return An iterator over the commit log, in ascending date order
+     *
+     * @throws InvalidProjectRevisionException
+     *             When either of the provided revisions is invalid
+     * @throws InvalidRepositoryException
+     *             When there is an error accessing the underlying repository
+     */
+    public CommitLogIterator getCommitLogIterator(String repoPath,
+            Revision r1, Revision r2)
+        throws InvalidProjectRevisionException,
+               InvalidRepositoryException;
+
     /**
      * Get the diff between two revisions of a subtree within the source
      * repository. Passing in a null for r2 calculates the diff between
@@ -268,6 +310,31 @@ public interface SCMAccessor extends DataAccessor {
                InvalidRepositoryException,
                FileNotFoundException;
 
+    /**
+     * Get the diff between two revisions of a subtree, as in
+     * {@link #getDiff(String, Revision, Revision)}, optionally without 
+     * keeping the diff text. Callers that only need the changed line 
+     * ranges or line counts should not keep the text, as the diff 
+     * can then be parsed while it is being produced without storing it.
+     * 
+     * @param repoPath The path to get the diff for
+     * @param r1 The revision to start getting the diff from
+     * @param r2 The revision up to which to get the diff
+     * @param keepText If false, {@link DiffChunk#getChunk()} returns null
+     *  for the chunks of the returned diff
+     * 
+     * @throws InvalidProjectRevisionException When either of the provided 
+     *  revisions is invalid
+     * @throws InvalidRepositoryException When there is an error accessing
+     *  the underlying repository
+     * @throws FileNotFoundException When the requested path does not exist
+     */
+    public Diff getDiff(String repoPath, Revision r1, Revision r2, 
+            boolean keepText)
+        throws InvalidProjectRevisionException,
+               InvalidRepositoryException,
+               FileNotFoundException;
+
     /**
      * Get the type of the node.
      *      
@@ -0,0 +1,215 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2011 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+package eu.sqooss.service.updater;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import eu.sqooss.service.db.Directory;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.db.ProjectFileState;
+import eu.sqooss.service.db.ProjectVersion;
+import eu.sqooss.service.db.StoredProject;
+import eu.sqooss.service.util.FileUtils;
+
+/**
+ * In-memory index of the latest state of each path in a project, for
+ * metadata updaters to resolve file states and directories without
+ * querying the database for every changed path of every revision.
+ * <br/>
+ * Entries for the revision being processed are staged with 
+ * {@link #stage(ProjectFile)} and become the latest state when the
+ * revision is stored with {@link #commit(ProjectVersion, Collection)};
+ * {@link #rollback()} discards them. Paths not seen during the current
+ * run are looked up in the database once. An index created for a project
+ * without stored versions never queries the database for paths.
+ * <br/>
+ * The index keeps a few plain values per path instead of 
+ * {@link ProjectFile} entities, as those reference lazily loaded objects
+ * that cannot be accessed after the session they were loaded in has 
+ * been closed. Instances are not thread safe.
+ */
+public class PathStateIndex {
+
+    /** The state of a path as recorded by the latest version changing it */
+    public static class PathState {
+        private final String revisionId;
+        private final int status;
+        private final boolean directory;
+
+        private PathState(ProjectFile pf) {
+            this.revisionId = pf.getProjectVersion().getRevisionId();
+            this.status = pf.getState().getStatus();
+            this.directory = pf.getIsDirectory();
+        }
+
+        /** The revision that last changed the path */
+        public String getRevisionId() {
+            return revisionId;
+        }
+
+        /** One of the <code>ProjectFileState.STATE_*</code> constants */
+        public int getStatus() {
+            return status;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        public boolean isDeleted() {
+            return status == ProjectFileState.STATE_DELETED;
+        }
+    }
+
+    private final Long projectId;
+    private final boolean complete;
+    private String lastRevision;
+
+    /* Committed state per path, null for paths known to be absent */
+    private Map<String, PathState> latest = new HashMap<String, PathState>();
+    private Map<String, PathState> staged = new HashMap<String, PathState>();
+    
+    private Map<String, Directory> dirs = new HashMap<String, Directory>();
+    /* Directories created in the DB session that has not been committed yet */
+    private Set<String> newDirs = new HashSet<String>();
+
+    /**
+     * Create an index for a project.
+     * 
+     * @param sp The project to index
+     * @param last The latest version of the project stored in the 
+     *  database, or null if no version has been stored yet 
+     */
+    public PathStateIndex(StoredProject sp, ProjectVersion last) {
+        this.projectId = sp.getId();
+        this.complete = (last == null);
+        this.lastRevision = (last == null) ? null : last.getRevisionId();
+    }
+
+    /**
+     * Get the state of a path, including changes staged for the revision
+     * being processed. 
+     * 
+     * @return The path state or null if the path has never existed
+     */
+    public PathState get(String path) {
+        PathState s = staged.get(path);
+        if (s != null)
+            return s;
+        return getCommitted(path);
+    }
+
+    /**
+     * Get the state of a path as of the latest committed revision.
+     * 
+     * @return The path state or null if the path has never existed
+     */
+    public PathState getCommitted(String path) {
+        if (latest.containsKey(path))
+            return latest.get(path);
+
+        PathState s = null;
+        if (!complete && lastRevision != null) {
+            ProjectFile pf = ProjectFile.findFile(projectId, 
+                    FileUtils.basename(path), FileUtils.dirname(path), 
+                    lastRevision, true);
+            if (pf != null)
+                s = new PathState(pf);
+        }
+        latest.put(path, s);
+        return s;
+    }
+
+    /**
+     * Record a file entry of the revision being processed.
+     */
+    public void stage(ProjectFile pf) {
+        staged.put(pf.getFileName(), new PathState(pf));
+    }
+
+    /**
+     * Make the file entries of a revision the latest state of their paths.
+     * To be called after the revision has been committed to the database.
+     * 
+     * @param pv The stored revision
+     * @param files The file entries stored along with the revision
+     */
+    public void commit(ProjectVersion pv, Collection<ProjectFile> files) {
+        for (ProjectFile pf : files) {
+            latest.put(pf.getFileName(), new PathState(pf));
+        }
+        lastRevision = pv.getRevisionId();
+        staged.clear();
+        newDirs.clear();
+    }
+
+    /**
+     * Forget changes staged since the last call to 
+     * {@link #commit(ProjectVersion, Collection)}, along with directories
+     * created in the meantime.
+     */
+    public void rollback() {
+        staged.clear();
+        for (String path : newDirs) {
+            dirs.remove(path);
+        }
+        newDirs.clear();
+    }
+
+    /**
+     * Cached version of {@link Directory#getDirectory(String, boolean)}. 
+     * The returned objects may have been loaded in an earlier DB session 
+     * and are only meant to be referenced by new entities or used as
+     * query parameters.
+     */
+    public Directory getDirectory(String path, boolean create) {
+        Directory d = dirs.get(path);
+        if (d != null)
+            return d;
+
+        d = Directory.getDirectory(path, false);
+        if (d == null && create) {
+            d = Directory.getDirectory(path, true);
+            if (d != null)
+                newDirs.add(path);
+        }
+        if (d != null)
+            dirs.put(path, d);
+        return d;
+    }
+}
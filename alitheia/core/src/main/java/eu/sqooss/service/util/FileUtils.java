@@ -185,6 +185,24 @@ public class FileUtils {
         path.delete();
     }
 
+    /**
+     * Get the total size of the files in a directory and its
+     * subdirectories, or the size of a file.
+     *
+     * @param path The file or directory to measure
+     * @return The size in bytes, 0 if the path does not exist
+     */
+    public static long diskUsage(File path) {
+        File[] c = path.listFiles();
+        if (c == null)
+            return path.length();
+
+        long size = 0;
+        for (File file : c)
+            size += diskUsage(file);
+        return size;
+    }
+
     /**
      * Search recursively for a filename pattern in the provided path
      *
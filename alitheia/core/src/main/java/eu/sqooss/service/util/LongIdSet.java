@@ -0,0 +1,299 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.service.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A sorted set of primitive longs, meant for large sets of database ids.
+ * <br/>
+ * Values are split in a high part (all but the lowest 16 bits) and a low
+ * part. Values sharing a high part are kept in the same container, which
+ * is a sorted <tt>char</tt> array while sparse and a 8KB bitmap once it
+ * has more than {@link #ARRAY_MAX} values. Dense id ranges, such as the
+ * ids of a table, thus cost about one bit per id, and sparse ones two 
+ * bytes per id, instead of ~40 bytes for a boxed <tt>Long</tt> in a 
+ * <tt>TreeSet</tt>.
+ * <br/>
+ * Appending values in ascending order, the common case for ids coming
+ * out of the database, does not need any search. The set is not thread
+ * safe.
+ */
+public class LongIdSet {
+
+    /** Array containers larger than this are converted to bitmaps */
+    static final int ARRAY_MAX = 4096;
+    
+    private static final int BITMAP_WORDS = (1 << 16) / 64;
+
+    private long[] keys = new long[4];
+    private Object[] containers = new Object[4];
+    private int[] sizes = new int[4];
+    private int numContainers = 0;
+    private long size = 0;
+
+    public LongIdSet() {}
+    
+    /**
+     * Create a set with all values returned by the provided iterator. 
+     */
+    public LongIdSet(LongIterator values) {
+        addAll(values);
+    }
+    
+    /**
+     * Add a value to the set.
+     * 
+     * @return true if the value was not already in the set
+     */
+    public boolean add(long value) {
+        long key = value >> 16;
+        char low = (char) value;
+        int idx;
+        
+        if (numContainers > 0 && keys[numContainers - 1] == key) {
+            idx = numContainers - 1;
+        } else {
+            idx = Arrays.binarySearch(keys, 0, numContainers, key);
+            if (idx < 0) {
+                idx = -idx - 1;
+                insertContainer(idx, key);
+            }
+        }
+        
+        boolean added;
+        Object c = containers[idx];
+        if (c instanceof long[]) {
+            long[] words = (long[]) c;
+            long bit = 1L << low;
+            added = (words[low >>> 6] & bit) == 0;
+            words[low >>> 6] |= bit;
+        } else {
+            added = addToArray(idx, low);
+        }
+        
+        if (added) {
+            sizes[idx]++;
+            size++;
+        }
+        return added;
+    }
+
+    /**
+     * Add all values returned by the provided iterator.
+     */
+    public void addAll(LongIterator values) {
+        while (values.hasNext())
+            add(values.next());
+    }
+
+    public boolean contains(long value) {
+        int idx = Arrays.binarySearch(keys, 0, numContainers, value >> 16);
+        if (idx < 0)
+            return false;
+        char low = (char) value;
+        Object c = containers[idx];
+        if (c instanceof long[]) 
+            return (((long[]) c)[low >>> 6] & (1L << low)) != 0;
+        return Arrays.binarySearch((char[]) c, 0, sizes[idx], low) >= 0;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Iterate over the set's values in ascending order. The set must not
+     * be modified while iterating.
+     */
+    public LongIterator iterator() {
+        return new LongIterator() {
+            private int idx = 0;
+            private int pos = 0;      //index in array or bitmap container
+            private int returned = 0; //values returned from current container
+
+            public boolean hasNext() {
+                while (idx < numContainers && returned == sizes[idx]) {
+                    idx++;
+                    pos = 0;
+                    returned = 0;
+                }
+                return idx < numContainers;
+            }
+
+            public long next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                Object c = containers[idx];
+                int low;
+                if (c instanceof long[]) {
+                    long[] words = (long[]) c;
+                    while ((words[pos >>> 6] & (-1L << pos)) == 0)
+                        pos = (pos | 63) + 1;
+                    low = (pos & ~63) + 
+                        Long.numberOfTrailingZeros(words[pos >>> 6] & (-1L << pos));
+                    pos = low + 1;
+                } else {
+                    low = ((char[]) c)[pos++];
+                }
+                returned++;
+                return (keys[idx] << 16) | low;
+            }
+        };
+    }
+
+    /**
+     * Copy the set's values to an array, in ascending order.
+     * 
+     * @throws IllegalStateException if the set has more values than an
+     * array can hold
+     */
+    public long[] toArray() {
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalStateException("Set too large: " + size);
+        long[] result = new long[(int) size];
+        LongIterator i = iterator();
+        int n = 0;
+        while (i.hasNext())
+            result[n++] = i.next();
+        return result;
+    }
+
+    /**
+     * Reverse the order of the elements of an array, in place.
+     */
+    public static void reverse(long[] a) {
+        for (int i = 0, j = a.length - 1; i < j; i++, j--) {
+            long tmp = a[i];
+            a[i] = a[j];
+            a[j] = tmp;
+        }
+    }
+
+    /**
+     * Randomly permute the elements of an array in place, using the 
+     * Fisher-Yates shuffle. All permutations are equally likely, 
+     * assuming a fair source of randomness.
+     */
+    public static void shuffle(long[] a, Random r) {
+        for (int i = a.length - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1);
+            long tmp = a[i];
+            a[i] = a[j];
+            a[j] = tmp;
+        }
+    }
+
+    /**
+     * Wrap an array to a {@link LongIterator}.
+     */
+    public static LongIterator iterator(final long[] a) {
+        return new LongIterator() {
+            private int pos = 0;
+            
+            public boolean hasNext() {
+                return pos < a.length;
+            }
+
+            public long next() {
+                if (pos >= a.length)
+                    throw new NoSuchElementException();
+                return a[pos++];
+            }
+        };
+    }
+
+    private void insertContainer(int idx, long key) {
+        if (numContainers == keys.length) {
+            int cap = keys.length * 2;
+            keys = Arrays.copyOf(keys, cap);
+            containers = Arrays.copyOf(containers, cap);
+            sizes = Arrays.copyOf(sizes, cap);
+        }
+        int move = numContainers - idx;
+        System.arraycopy(keys, idx, keys, idx + 1, move);
+        System.arraycopy(containers, idx, containers, idx + 1, move);
+        System.arraycopy(sizes, idx, sizes, idx + 1, move);
+        keys[idx] = key;
+        containers[idx] = new char[4];
+        sizes[idx] = 0;
+        numContainers++;
+    }
+
+    /*
+     * Add a value to an array container, converting it to a bitmap when 
+     * it grows larger than ARRAY_MAX. Returns false if it was already 
+     * there. Does not update the container size.
+     */
+    private boolean addToArray(int idx, char low) {
+        char[] values = (char[]) containers[idx];
+        int n = sizes[idx];
+        int pos;
+        
+        if (n == 0 || values[n - 1] < low) {
+            pos = n;
+        } else {
+            pos = Arrays.binarySearch(values, 0, n, low);
+            if (pos >= 0)
+                return false;
+            pos = -pos - 1;
+        }
+        
+        if (n == ARRAY_MAX) {
+            long[] words = new long[BITMAP_WORDS];
+            for (int i = 0; i < n; i++) 
+                words[values[i] >>> 6] |= 1L << values[i];
+            words[low >>> 6] |= 1L << low;
+            containers[idx] = words;
+            return true;
+        }
+        
+        if (n == values.length) {
+            values = Arrays.copyOf(values, Math.min(ARRAY_MAX, n * 2));
+            containers[idx] = values;
+        }
+        System.arraycopy(values, pos, values, pos + 1, n - pos);
+        values[pos] = low;
+        return true;
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
@@ -0,0 +1,102 @@
+/*
+ * This file is part of the Alitheia system, developed by the SQO-OSS
+ * consortium as part of the IST FP6 SQO-OSS project, number 033331.
+ *
+ * Copyright 2007 - 2010 - Organization for Free and Open Source Software,  
+ *                Athens, Greece.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are
+ * met:
+ *
+ *     * Redistributions of source code must retain the above copyright
+ *       notice, this list of conditions and the following disclaimer.
+ *
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials provided
+ *       with the distribution.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+ * "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+ * A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * OWNER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+ * THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+ * OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ */
+
+
+package eu.sqooss.service.util;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Merges a number of iterators, each returning longs in ascending 
+ * order, to a single ascending iterator without duplicates.
+ */
+public class UnionLongIterator implements LongIterator {
+
+    private LongIterator[] its;
+    private long[] heads;
+    private boolean[] valid;
+    private boolean hasNext;
+    private long next;
+
+    public UnionLongIterator(List<? extends LongIterator> iterators) {
+        its = iterators.toArray(new LongIterator[iterators.size()]);
+        heads = new long[its.length];
+        valid = new boolean[its.length];
+        for (int i = 0; i < its.length; i++) {
+            advance(i);
+        }
+        findNext();
+    }
+
+    private void advance(int i) {
+        valid[i] = its[i].hasNext();
+        if (valid[i])
+            heads[i] = its[i].next();
+    }
+
+    /*
+     * The number of merged iterators is small (one per metric of a 
+     * plug-in), so a linear scan for the minimum is cheaper than a heap.
+     */
+    private void findNext() {
+        hasNext = false;
+        for (int i = 0; i < its.length; i++) {
+            if (valid[i] && (!hasNext || heads[i] < next)) {
+                next = heads[i];
+                hasNext = true;
+            }
+        }
+        if (!hasNext)
+            return;
+        for (int i = 0; i < its.length; i++) {
+            while (valid[i] && heads[i] == next) {
+                advance(i);
+            }
+        }
+    }
+
+    public boolean hasNext() {
+        return hasNext;
+    }
+
+    public long next() {
+        if (!hasNext)
+            throw new NoSuchElementException();
+        long result = next;
+        findNext();
+        return result;
+    }
+}
+
+//vi: ai nosi sw=4 ts=4 expandtab
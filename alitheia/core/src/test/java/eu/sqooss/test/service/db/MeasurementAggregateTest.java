@@ -0,0 +1,72 @@
+package eu.sqooss.test.service.db;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Set;
+
+import org.junit.Test;
+
+import eu.sqooss.service.db.MeasurementAggregate;
+import eu.sqooss.service.fds.FileTypeMatcher;
+import eu.sqooss.service.fds.FileTypeMatcher.FileType;
+
+public class MeasurementAggregateTest {
+
+    @Test
+    public void testEmpty() {
+        MeasurementAggregate a = new MeasurementAggregate(
+                new Object[] {0L, 0L, 0L, 0L, null, null, null, null, null, null});
+        assertEquals(0, a.getCount());
+        assertEquals(0, a.getUntypedCount());
+        assertEquals(0, a.getSum(), 0);
+        assertEquals(0, a.getAverage(), 0);
+        assertNull(a.getMax());
+        assertNull(a.getMin());
+    }
+
+    @Test
+    public void testMergeTypedColumns() {
+        //Integer and floating point results in the same aggregate
+        MeasurementAggregate a = new MeasurementAggregate(
+                new Object[] {3L, 3L, 2L, 1L, 12L, 1.5, 10L, 1.5, 1L, 1.5});
+        assertEquals(12, a.getLongSum());
+        assertEquals(13.5, a.getSum(), 0);
+        assertEquals(4.5, a.getAverage(), 0);
+        assertEquals(10, a.getMax(), 0);
+        assertEquals(1, a.getMin(), 0);
+
+        a.add(new MeasurementAggregate(
+                new Object[] {1L, 1L, 1L, 0L, 20L, null, 20L, null, 20L, null}));
+        assertEquals(4, a.getCount());
+        assertEquals(32, a.getLongSum());
+        assertEquals(20, a.getMax(), 0);
+        assertEquals(1, a.getMin(), 0);
+    }
+
+    @Test
+    public void testUntypedExcluded() {
+        //Two converted results and two not yet converted ones
+        MeasurementAggregate a = new MeasurementAggregate(
+                new Object[] {4L, 2L, 2L, 0L, 10L, null, 6L, null, 4L, null});
+        assertEquals(2, a.getCount());
+        assertEquals(2, a.getUntypedCount());
+        assertEquals(4, a.getTotalCount());
+        assertEquals(5, a.getAverage(), 0);
+    }
+
+    @Test
+    public void testFileExtensions() {
+        Set<String> src = FileTypeMatcher.getFileExtensions(FileType.SRC);
+        assertTrue(src.contains(".java"));
+        assertFalse(src.contains(".pdf"));
+        //Name patterns are not extensions
+        assertFalse(FileTypeMatcher.getFileExtensions(null).contains("readme.*"));
+        assertTrue(FileTypeMatcher.getFileExtensions(FileType.TXT).isEmpty());
+        for (String ext : FileTypeMatcher.getFileExtensions(null))
+            assertEquals(FileTypeMatcher.getFileTypeFromExt(ext),
+                    FileTypeMatcher.getInstance().getFileType("foo" + ext));
+    }
+}
@@ -0,0 +1,78 @@
+package eu.sqooss.test.service.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.SchedulerException;
+
+public class JobDependencyTest {
+
+    @Test
+    public void testPendingDependencies() throws SchedulerException {
+        Job a = new TestJob(0, "a");
+        Job b = new TestJob(0, "b");
+        Job c = new TestJob(0, "c");
+
+        c.addDependency(a);
+        c.addDependency(b);
+        assertFalse(c.canExecute());
+        assertEquals(2, c.dependencies().size());
+
+        c.removeDependency(a);
+        assertFalse(c.canExecute());
+        c.removeDependency(b);
+        assertTrue(c.canExecute());
+        assertTrue(c.dependencies().isEmpty());
+    }
+
+    @Test
+    public void testDependsOn() throws SchedulerException {
+        Job a = new TestJob(0, "a");
+        Job b = new TestJob(0, "b");
+        Job c = new TestJob(0, "c");
+
+        b.addDependency(a);
+        c.addDependency(b);
+        assertTrue(c.dependsOn(a));
+        assertFalse(a.dependsOn(c));
+    }
+
+    @Test(expected = SchedulerException.class)
+    public void testSelfDependency() throws SchedulerException {
+        Job a = new TestJob(0, "a");
+        a.addDependency(a);
+    }
+
+    @Test(expected = SchedulerException.class)
+    public void testCycle() throws SchedulerException {
+        Job a = new TestJob(0, "a");
+        Job b = new TestJob(0, "b");
+        Job c = new TestJob(0, "c");
+
+        b.addDependency(a);
+        c.addDependency(b);
+        a.addDependency(c);
+        Job.checkAcyclic(Arrays.asList(a));
+    }
+
+    @Test
+    public void testWideGraph() throws SchedulerException {
+        List<Job> jobs = new ArrayList<Job>();
+        Job stage = new TestJob(0, "stage");
+        jobs.add(stage);
+        for (int i = 0; i < 10000; i++) {
+            Job j = new TestJob(0, "job" + i);
+            j.addDependency(stage);
+            jobs.add(j);
+        }
+        Job.checkAcyclic(jobs);
+    }
+}
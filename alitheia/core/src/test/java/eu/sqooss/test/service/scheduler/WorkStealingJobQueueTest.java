@@ -0,0 +1,140 @@
+package eu.sqooss.test.service.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import eu.sqooss.impl.service.scheduler.WorkStealingJobQueue;
+import eu.sqooss.service.scheduler.Job;
+import eu.sqooss.service.scheduler.SchedulerException;
+
+public class WorkStealingJobQueueTest {
+
+    WorkStealingJobQueue queue;
+
+    static class PrioJob extends Job {
+        long prio;
+
+        PrioJob(long prio) {
+            this.prio = prio;
+        }
+
+        public long priority() {
+            return prio;
+        }
+
+        protected void run() throws Exception {}
+    }
+
+    @Before
+    public void setUp() {
+        queue = new WorkStealingJobQueue(4);
+    }
+
+    @Test
+    public void testPriorityBands() throws InterruptedException {
+        Job low = new PrioJob(0xff);
+        Job high = new PrioJob(0);
+        Job mid = new PrioJob(3);
+        queue.addRunnable(low);
+        queue.addRunnable(mid);
+        queue.addRunnable(high);
+
+        assertSame(high, queue.take());
+        assertSame(mid, queue.take());
+        assertSame(low, queue.take());
+    }
+
+    @Test
+    public void testTakeAll() throws InterruptedException {
+        Set<Job> jobs = new HashSet<Job>();
+        for (int i = 0; i < 8; i++) {
+            Job j = new PrioJob(1);
+            jobs.add(j);
+            queue.addRunnable(j);
+        }
+        for (int i = 0; i < 8; i++) {
+            Job j = queue.take();
+            assertTrue(jobs.remove(j));
+            assertFalse(queue.contains(j));
+        }
+        assertTrue(jobs.isEmpty());
+    }
+
+    @Test
+    public void testRemove() throws InterruptedException {
+        Job a = new PrioJob(0);
+        Job b = new PrioJob(0);
+        queue.addRunnable(a);
+        queue.addRunnable(b);
+
+        assertTrue(queue.remove(a));
+        assertFalse(queue.contains(a));
+        assertFalse(queue.remove(a));
+        assertSame(b, queue.take());
+        assertNull(queue.take(a));
+    }
+
+    @Test
+    public void testDuplicateAdd() throws InterruptedException {
+        Job a = new PrioJob(0);
+        queue.addRunnable(a);
+        queue.addRunnable(a);
+        assertSame(a, queue.take(a));
+        assertFalse(queue.contains(a));
+    }
+
+    @Test
+    public void testDependencies() throws SchedulerException, InterruptedException {
+        Job dep = new PrioJob(0);
+        Job job = new PrioJob(0);
+        job.addDependency(dep);
+
+        queue.addBlocked(job);
+        queue.dependenciesChanged(job);
+        assertTrue(queue.contains(job));
+        assertNull(queue.take(job));
+
+        job.removeDependency(dep);
+        queue.dependenciesChanged(job);
+        assertSame(job, queue.take());
+    }
+
+    @Test
+    public void testConcurrentTake() throws InterruptedException {
+        final int numJobs = 10000;
+        for (int i = 0; i < numJobs; i++)
+            queue.addRunnable(new PrioJob(i));
+
+        final int[] taken = new int[4];
+        Thread[] threads = new Thread[taken.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int idx = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < numJobs / taken.length; j++) {
+                            queue.take();
+                            taken[idx]++;
+                        }
+                    } catch (InterruptedException e) {}
+                }
+            };
+            threads[i].start();
+        }
+        int total = 0;
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+            total += taken[i];
+        }
+        assertEquals(numJobs, total);
+    }
+}
@@ -0,0 +1,117 @@
+package eu.sqooss.test.service.tds;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Test;
+
+import eu.sqooss.service.tds.Diff;
+import eu.sqooss.service.tds.DiffChunk;
+import eu.sqooss.service.tds.DiffFactory;
+import eu.sqooss.service.tds.DiffOutputStream;
+
+public class UnifiedDiffParserTest {
+
+    private static final String SVN_DIFF =
+        "Index: foo/A.java\n" +
+        "===================================================================\n" +
+        "--- foo/A.java\t(revision 1)\n" +
+        "+++ foo/A.java\t(revision 2)\n" +
+        "@@ -1,3 +1,4 @@\n" +
+        " a\n" +
+        "--- removed line that looks like a header\n" +
+        "+b\n" +
+        "+c\n" +
+        " c\n" +
+        "@@ -10 +11 @@\n" +
+        "-q\n" +
+        "+r\n" +
+        "\\ No newline at end of file\n" +
+        "Index: foo/B.java\n" +
+        "===================================================================\n" +
+        "--- foo/B.java\t(revision 1)\n" +
+        "+++ foo/B.java\t(revision 2)\n" +
+        "@@ -5,2 +5,0 @@\n" +
+        "-x\n" +
+        "-y\n";
+
+    private static final String GIT_DIFF =
+        "diff --git a/README b/README\n" +
+        "index 5bf6c4d..0c1b2e9 100644\n" +
+        "--- a/README\n" +
+        "+++ b/README\n" +
+        "@@ -1,2 +1,2 @@\n" +
+        "-a\n" +
+        "+b\n" +
+        " c\n" +
+        "diff --git a/logo.png b/logo.png\n" +
+        "Binary files differ\n" +
+        "diff --git a/new.c b/new.c\n" +
+        "new file mode 100644\n" +
+        "--- /dev/null\n" +
+        "+++ b/new.c\n" +
+        "@@ -0,0 +1 @@\n" +
+        "+int x;\n";
+
+    @Test
+    public void testSVNDiff() {
+        Diff d = DiffFactory.getInstance().doUnifiedDiff(null, null, "/trunk", SVN_DIFF);
+        assertNotNull(d);
+        assertEquals(2, d.getChangedPaths().size());
+
+        List<DiffChunk> chunks = d.getDiffChunks().get("/trunk/foo/A.java");
+        assertEquals(2, chunks.size());
+        DiffChunk c = chunks.get(0);
+        assertEquals(1, c.getSourceStartLine());
+        assertEquals(3, c.getSourceLenght());
+        assertEquals(4, c.getTargetLength());
+        assertEquals(2, c.getAddedLines());
+        assertEquals(1, c.getRemovedLines());
+        assertTrue(c.getChunk().contains("--- removed line"));
+        assertEquals(11, chunks.get(1).getTargetStartLine());
+
+        chunks = d.getDiffChunks().get("/trunk/foo/B.java");
+        assertEquals(1, chunks.size());
+        assertEquals(2, chunks.get(0).getRemovedLines());
+    }
+
+    @Test
+    public void testGitDiff() throws IOException {
+        DiffOutputStream out = DiffFactory.getInstance().newUnifiedDiffStream(null, null, "/", true);
+        out.write(GIT_DIFF.getBytes());
+        Diff d = out.getDiff();
+        assertNotNull(d);
+        assertEquals(2, d.getChangedPaths().size());
+        assertEquals(1, d.getDiffChunks().get("/README").size());
+        assertEquals("-a\n+b\n c\n", d.getDiffChunks().get("/README").get(0).getChunk());
+        assertEquals(1, d.getDiffChunks().get("/new.c").get(0).getAddedLines());
+    }
+
+    @Test
+    public void testWithoutText() throws IOException {
+        DiffOutputStream out = DiffFactory.getInstance().newUnifiedDiffStream(null, null, "/trunk", false);
+        //Write in small pieces, lines span writes
+        byte[] b = SVN_DIFF.getBytes();
+        for (int i = 0; i < b.length; i += 7)
+            out.write(b, i, Math.min(7, b.length - i));
+
+        Diff d = out.getDiff();
+        assertNotNull(d);
+        DiffChunk c = d.getDiffChunks().get("/trunk/foo/A.java").get(0);
+        assertNull(c.getChunk());
+        assertEquals(2, c.getAddedLines());
+        assertEquals(1, c.getRemovedLines());
+    }
+
+    @Test
+    public void testInvalidDiff() throws IOException {
+        DiffOutputStream out = DiffFactory.getInstance().newUnifiedDiffStream(null, null, "/", true);
+        out.write("not a diff\n".getBytes());
+        assertNull(out.getDiff());
+    }
+}
@@ -0,0 +1,70 @@
+package eu.sqooss.test.service.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import eu.sqooss.service.util.LongIdSet;
+import eu.sqooss.service.util.LongIterator;
+
+public class LongIdSetTest {
+
+    @Test
+    public void testAscendingDense() {
+        LongIdSet set = new LongIdSet();
+        for (long i = 0; i < 200000; i++)
+            assertTrue(set.add(i));
+        assertEquals(200000, set.size());
+        assertFalse(set.add(4097));
+        assertTrue(set.contains(65536));
+        assertFalse(set.contains(200000));
+
+        LongIterator i = set.iterator();
+        long expected = 0;
+        while (i.hasNext())
+            assertEquals(expected++, i.next());
+        assertEquals(200000, expected);
+    }
+
+    @Test
+    public void testRandomAgainstTreeSet() {
+        Random r = new Random(42);
+        LongIdSet set = new LongIdSet();
+        TreeSet<Long> ref = new TreeSet<Long>();
+        for (int i = 0; i < 50000; i++) {
+            //Mix dense and sparse ranges, and negative values
+            long v = (i % 2 == 0) ? r.nextInt(10000) : r.nextLong() >> 20;
+            assertEquals(ref.add(v), set.add(v));
+        }
+        assertEquals(ref.size(), set.size());
+
+        long[] expected = new long[ref.size()];
+        int n = 0;
+        for (Long l : ref)
+            expected[n++] = l;
+        assertArrayEquals(expected, set.toArray());
+    }
+
+    @Test
+    public void testShuffleIsPermutation() {
+        long[] a = new long[1000];
+        for (int i = 0; i < a.length; i++)
+            a[i] = i;
+        long[] b = a.clone();
+        LongIdSet.shuffle(b, new Random(1));
+        assertFalse(Arrays.equals(a, b));
+        Arrays.sort(b);
+        assertArrayEquals(a, b);
+
+        LongIdSet.reverse(b);
+        assertEquals(999, b[0]);
+        assertEquals(0, b[999]);
+    }
+}
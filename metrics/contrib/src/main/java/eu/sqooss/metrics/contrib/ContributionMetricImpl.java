@@ -32,8 +32,6 @@
 
 package eu.sqooss.metrics.contrib;
 
-import java.io.BufferedReader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -41,8 +39,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -68,6 +64,7 @@ import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.Developer;
 import eu.sqooss.service.db.HQLQueryInterface;
+import eu.sqooss.service.db.KeysetIdIterator;
 import eu.sqooss.service.db.MailMessage;
 import eu.sqooss.service.db.MailingList;
 import eu.sqooss.service.db.MailingListThread;
@@ -84,6 +81,7 @@ import eu.sqooss.service.pa.PluginInfo;
 import eu.sqooss.service.tds.Diff;
 import eu.sqooss.service.tds.DiffChunk;
 import eu.sqooss.service.tds.SCMAccessor;
+import eu.sqooss.service.util.LongIterator;
 
 @MetricDeclarations(metrics={
     @MetricDecl(mnemonic="CONTRIB", descr="Developer Contribution Metric",
@@ -173,29 +171,21 @@ public class ContributionMetricImpl extends AbstractMetric {
     }
 
     @Override
-    public Map<MetricType.Type, SortedSet<Long>> getObjectIdsToSync(StoredProject sp, Metric m) 
+    public Map<MetricType.Type, LongIterator> getObjectIdsToSync(StoredProject sp, Metric m) 
     	throws MetricActivationException {
-    	Map<MetricType.Type, SortedSet<Long>> IDs = new HashMap<Type, SortedSet<Long>>();
+    	Map<MetricType.Type, LongIterator> IDs = new HashMap<Type, LongIterator>();
+    	HQLQueryInterface qi = db.getQueryInterface(HQLQueryInterface.class);
     	Map<String, Object> params = new HashMap<String, Object>();
     	params.put("sp", sp);
     	
-    	String qVersionIDs = "select pv.id from ProjectVersion pv where pv.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:sp and ca.contribActionType.actionCategory='C') and pv.project = :sp order by pv.sequence";
-    	List<Long> objectIds = (List<Long>) db.getQueryInterface(HQLQueryInterface.class).doHQL(qVersionIDs, params);
-    	TreeSet<Long> ids = new TreeSet<Long>();
-    	ids.addAll(objectIds);
-    	IDs.put(MetricType.Type.PROJECT_VERSION, ids);
+    	String qVersionIDs = "select pv.id from ProjectVersion pv where pv.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:sp and ca.contribActionType.actionCategory='C') and pv.project = :sp and pv.id > :last order by pv.id asc";
+    	IDs.put(MetricType.Type.PROJECT_VERSION, new KeysetIdIterator(qi, qVersionIDs, params));
     	
-    	String qThreadIDs = "select mlt.id from MailingListThread mlt where mlt.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:sp and ca.contribActionType.actionCategory='M') and mlt.list.storedProject = :sp order by mlt.lastUpdated";
-    	objectIds = (List<Long>) db.getQueryInterface(HQLQueryInterface.class).doHQL(qThreadIDs, params);
-    	ids = new TreeSet<Long>();
-    	ids.addAll(objectIds);
-    	IDs.put(MetricType.Type.MAILTHREAD, ids);
+    	String qThreadIDs = "select mlt.id from MailingListThread mlt where mlt.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:sp and ca.contribActionType.actionCategory='M') and mlt.list.storedProject = :sp and mlt.id > :last order by mlt.id asc";
+    	IDs.put(MetricType.Type.MAILTHREAD, new KeysetIdIterator(qi, qThreadIDs, params));
     	
-    	String qBugIDs = "select b.id from Bug b where b.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:sp and ca.contribActionType.actionCategory='B') and b.project = :sp order by b.updateRun";
-    	objectIds = (List<Long>) db.getQueryInterface(HQLQueryInterface.class).doHQL(qBugIDs, params);
-    	ids = new TreeSet<Long>();
-    	ids.addAll(objectIds);
-    	IDs.put(MetricType.Type.BUG, ids);
+    	String qBugIDs = "select b.id from Bug b where b.id not in (select ca.changedResourceId from ContribAction ca where developer.storedProject =:sp and ca.contribActionType.actionCategory='B') and b.project = :sp and b.id > :last order by b.id asc";
+    	IDs.put(MetricType.Type.BUG, new KeysetIdIterator(qi, qBugIDs, params));
     	
     	return IDs;
     }
@@ -470,7 +460,7 @@ public class ContributionMetricImpl extends AbstractMetric {
                         SCMAccessor scm = AlitheiaCore.getInstance().getTDSService().getAccessor(pv.getProject().getId()).getSCMAccessor();
                         Diff d = scm.getDiff(pf.getFileName(), 
                         		scm.newRevision(prevFile.getProjectVersion().getRevisionId()),
-                        		scm.newRevision(pf.getProjectVersion().getRevisionId()));
+                        		scm.newRevision(pf.getProjectVersion().getRevisionId()), false);
                         Map<String, List<DiffChunk>> diff = d.getDiffChunks();
                         List<DiffChunk> chunks = diff.get(pf.getFileName());
                         
@@ -480,15 +470,8 @@ public class ContributionMetricImpl extends AbstractMetric {
                         int added = 0, removed = 0;
                         
                         for (DiffChunk chunk : chunks) {
-                        	String theDiff = chunk.getChunk();
-                        	BufferedReader r = new BufferedReader(new StringReader(theDiff));
-                    		String line;
-                    		while ((line = r.readLine()) != null) {
-                    			if (line.startsWith("+")) 
-                    				added ++;
-                    			if (line.startsWith("-"))
-                    				removed++;
-                    		}
+                        	added += chunk.getAddedLines();
+                        	removed += chunk.getRemovedLines();
                         }
                         
                         if (added != 0 && removed != 0 ) {
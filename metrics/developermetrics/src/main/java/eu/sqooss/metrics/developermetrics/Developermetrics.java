@@ -107,17 +107,17 @@ public class Developermetrics extends AbstractMetric {
         
         Metric m = Metric.getMetricByMnemonic(MNEM_TEAMSIZE1);
         ProjectVersionMeasurement pvmOne = new ProjectVersionMeasurement(
-                m, v, String.valueOf(commSize(v, oneMonth)));
+                m, v, commSize(v, oneMonth));
         db.getQueryInterface().addRecord(pvmOne);
         
         m = Metric.getMetricByMnemonic(MNEM_TEAMSIZE3);
         ProjectVersionMeasurement pvmThree = new ProjectVersionMeasurement(
-                m, v, String.valueOf(commSize(v, threeMonths)));
+                m, v, commSize(v, threeMonths));
         db.getQueryInterface().addRecord(pvmThree);
         
         m = Metric.getMetricByMnemonic(MNEM_TEAMSIZE6);
         ProjectVersionMeasurement pvmSix = new ProjectVersionMeasurement(
-                m, v, String.valueOf(commSize(v, sixMonths)));
+                m, v, commSize(v, sixMonths));
         db.getQueryInterface().addRecord(pvmSix);
     }
     
@@ -156,7 +156,7 @@ public class Developermetrics extends AbstractMetric {
         }
         
         ProjectFileMeasurement pfm = new ProjectFileMeasurement(m, a, 
-                String.valueOf(eyeballs));
+                (long) eyeballs);
         db.getQueryInterface().addRecord(pfm);
     }
 
@@ -136,7 +136,7 @@ public class DiscussionHeat extends AbstractMetric {
         Metric hotness = Metric.getMetricByMnemonic("HOTNESS");
         
         MailingListThreadMeasurement mm = new MailingListThreadMeasurement(
-                hotness, m, String.valueOf(score));
+                hotness, m, (long) score);
         
         dbs.getQueryInterface().addRecord(mm);
         
@@ -154,7 +154,7 @@ public class DiscussionHeat extends AbstractMetric {
         
         Metric hoteffect = Metric.getMetricByMnemonic("HOTEFFECT");
         MailingListThreadMeasurement mltm = new MailingListThreadMeasurement(
-                hoteffect, m, String.valueOf(result));
+                hoteffect, m, (long) result);
         
         dbs.getQueryInterface().addRecord(mltm);
     }
@@ -168,7 +168,7 @@ public class DiscussionHeat extends AbstractMetric {
             for (ProjectVersion version : versions) {
                 List<Result> r = getResult(version, metricList);
                 if (r != null && !r.isEmpty()) {
-                    result += (Integer)r.get(0).getResult();
+                    result += ((Number) r.get(0).getResult()).intValue();
                 }
             }
         } catch (MetricMismatchException e) {
@@ -282,7 +282,7 @@ public class DiscussionHeat extends AbstractMetric {
         }
 
         ProjectVersionMeasurement pvm = new ProjectVersionMeasurement(m, pv,
-                String.valueOf(linesChanged));
+                (long) linesChanged);
 
         dbs.getQueryInterface().addRecord(pvm);
     }
@@ -483,7 +483,7 @@ public class FindbugsMetrics extends AbstractMetric {
                 }
 
                 if(getResult(file, m).isEmpty())
-                    fileMeasurements.add(new ProjectFileMeasurement(m, file, results.get(key).get(fileName).toString()));
+                    fileMeasurements.add(new ProjectFileMeasurement(m, file, results.get(key).get(fileName).longValue()));
             }
         }
 
@@ -499,7 +499,7 @@ public class FindbugsMetrics extends AbstractMetric {
             for(Integer bugResult: results.get(key).values())
                 bugTotal += bugResult;
             if (bugTotal > 0 && !pvMeasurementExists(pv, m)) {
-                versionMeasurements.add(new ProjectVersionMeasurement(m, pv, bugTotal.toString()));
+                versionMeasurements.add(new ProjectVersionMeasurement(m, pv, bugTotal.longValue()));
             }
         }
         db.getQueryInterface().addRecords(fileMeasurements);
@@ -0,0 +1,109 @@
+package eu.sqooss.metrics.java;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import eu.sqooss.parsers.java.InheritanceExtractor.ClassInheritance;
+
+/**
+ * The class inheritance graph of a project, as of a specific project
+ * version. The graph is updated one file at a time, so that moving to the
+ * next version only requires parsing the files changed in it.
+ * <br/>
+ * Not thread safe, callers must synchronize on the instance.
+ */
+class ClassHierarchy {
+
+    static final String ROOT = "java.lang.Object";
+
+    /* Version the graph reflects, -1 if empty */
+    private long versionId = -1;
+
+    //Class -> Base
+    private Map<String, String> bases = new HashMap<String, String>();
+    //Base -> Classes
+    private Map<String, Set<String>> children = new HashMap<String, Set<String>>();
+    //File path -> Classes declared in it
+    private Map<String, Set<String>> files = new HashMap<String, Set<String>>();
+
+    long getVersionId() {
+        return versionId;
+    }
+
+    void setVersionId(long versionId) {
+        this.versionId = versionId;
+    }
+
+    void clear() {
+        bases.clear();
+        children.clear();
+        files.clear();
+        versionId = -1;
+    }
+
+    /**
+     * Replace the classes declared in a file.
+     */
+    void setFile(String path, Collection<ClassInheritance> classes) {
+        removeFile(path);
+        Set<String> declared = new HashSet<String>();
+        for (ClassInheritance ci : classes) {
+            String base = (ci.superClass == null) ? ROOT : ci.superClass;
+            bases.put(ci.className, base);
+            Set<String> c = children.get(base);
+            if (c == null) {
+                c = new HashSet<String>();
+                children.put(base, c);
+            }
+            c.add(ci.className);
+            declared.add(ci.className);
+        }
+        files.put(path, declared);
+    }
+
+    /**
+     * Forget the classes declared in a file.
+     */
+    void removeFile(String path) {
+        Set<String> declared = files.remove(path);
+        if (declared == null)
+            return;
+        for (String clazz : declared) {
+            String base = bases.remove(clazz);
+            if (base == null)
+                continue;
+            Set<String> c = children.get(base);
+            if (c != null) {
+                c.remove(clazz);
+                if (c.isEmpty())
+                    children.remove(base);
+            }
+        }
+    }
+
+    /**
+     * Depth of inheritance tree. The chain ends at java.lang.Object or at
+     * the first base class that is not part of the project.
+     */
+    int getDepth(String clazz) {
+        int dit = 1;
+        String base = bases.get(clazz);
+        //Guard against cycles in broken code
+        while (base != null && !base.equals(ROOT) && dit <= bases.size()) {
+            base = bases.get(base);
+            dit++;
+        }
+        return dit;
+    }
+
+    /**
+     * Number of classes directly extending a class.
+     */
+    int getChildCount(String clazz) {
+        Set<String> c = children.get(clazz);
+        return (c == null) ? 0 : c.size();
+    }
+}
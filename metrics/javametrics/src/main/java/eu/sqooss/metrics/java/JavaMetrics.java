@@ -1,6 +1,5 @@
 package eu.sqooss.metrics.java;
 
-import java.io.InputStream;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -8,9 +7,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import eu.sqooss.parsers.java.*;
-import eu.sqooss.service.fds.FDSService;
-import org.antlr.runtime.ANTLRInputStream;
-import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.tree.Tree;
 import org.osgi.framework.BundleContext;
 
@@ -47,10 +43,10 @@ import eu.sqooss.service.scheduler.SchedulerException;
 @SchedulerHints(activationOrder = {ProjectVersion.class, EncapsulationUnit.class})
 public class JavaMetrics extends AbstractMetric {
 
-    private List<ProjectFile> changedFiles;
     private ProjectVersion pv;
-    //Class -> Base 
-    private ConcurrentMap<String, String> reducer;
+    //Project -> Class graph of the last processed version
+    private ConcurrentMap<Long, ClassHierarchy> hierarchies = 
+        new ConcurrentHashMap<Long, ClassHierarchy>();
     private DBService db;
 
     public JavaMetrics(BundleContext bc) {
@@ -90,7 +86,7 @@ public class JavaMetrics extends AbstractMetric {
         this.pv = pv;
 
         Pattern p = Pattern.compile("([^\\s]+(\\.(?i)(java))$)");
-        changedFiles = new ArrayList<ProjectFile>();
+        List<ProjectFile> changedFiles = new ArrayList<ProjectFile>();
 
         for (ProjectFile pf : pv.getVersionFiles()) {
             Matcher m = p.matcher(pf.getName());
@@ -98,81 +94,170 @@ public class JavaMetrics extends AbstractMetric {
                 changedFiles.add(pf);
         }
 
+        ClassHierarchy hierarchy = getHierarchy(pv.getProject().getId());
+        ProjectVersion prev = pv.getPreviousVersion();
+
         //No Java files changed, skip parsing
         if (changedFiles.size() == 0) {
+            synchronized (hierarchy) {
+                //The graph is the same for this version
+                if (prev != null && prev.getId() == hierarchy.getVersionId())
+                    hierarchy.setVersionId(pv.getId());
+            }
             info("No Java files changed, skipping version");
             return;
         }
 
-        reducer = new ConcurrentHashMap<String, String>();
-        for (ProjectFile pf : pv.getFiles(p))
-        try {
-            if(!db.getSessionManager().isDBSessionActive()) db.getSessionManager().startDBSession();
-            parseFile(pf);
-        } catch (Exception e) {
-
-        } finally {
-            if(db.getSessionManager().isDBSessionActive()) db.getSessionManager().commitDBSession();
+        /*
+         * Parsing and storing measurements happen outside the lock, so 
+         * that jobs for other versions of the project can run meanwhile.
+         * The lock is only held while the graph is updated and read.
+         */
+        Map<String, Deque<InheritanceExtractor.ClassInheritance>> changes = 
+            parseFiles(changedFiles, true);
+        Map<String, Deque<InheritanceExtractor.ClassInheritance>> snapshot = null;
+
+        if(!db.getSessionManager().isDBSessionActive()) db.getSessionManager().startDBSession();
+        List<String> changedClasses = new ArrayList<String>();
+        for (ProjectFile pf : changedFiles) {
+            pf = db.getSessionManager().attachObjectToDBSession(pf);
+            for (EncapsulationUnit clazz : pf.getEncapsulationUnits())
+                changedClasses.add(clazz.getName());
         }
 
+        //Class -> {DIT, NOC}
+        Map<String, int[]> results = null;
+        while (results == null) {
+            synchronized (hierarchy) {
+                if (prev != null && prev.getId() == hierarchy.getVersionId()) {
+                    //The graph is at the previous version, apply the changes
+                    apply(hierarchy, changes);
+                    results = measure(hierarchy, changedClasses);
+                    hierarchy.setVersionId(pv.getId());
+                } else if (snapshot != null) {
+                    //First version seen or versions processed out of order, rebuild
+                    hierarchy.clear();
+                    apply(hierarchy, snapshot);
+                    apply(hierarchy, changes);
+                    results = measure(hierarchy, changedClasses);
+                    hierarchy.setVersionId(pv.getId());
+                }
+            }
 
-        List<EncapsulationUnit> changedClasses = new ArrayList<EncapsulationUnit>();
-        for (ProjectFile pf : changedFiles) {
-            pf = db.getSessionManager().attachObjectToDBSession(pf);
-            changedClasses.addAll(pf.getEncapsulationUnits());
+            if (results == null) {
+                //Parse the rest of the version's files for the rebuild
+                if(!db.getSessionManager().isDBSessionActive()) db.getSessionManager().startDBSession();
+                pv = db.getSessionManager().attachObjectToDBSession(pv);
+                Set<Long> changed = new HashSet<Long>();
+                for (ProjectFile pf : changedFiles)
+                    changed.add(pf.getId());
+                List<ProjectFile> unchanged = new ArrayList<ProjectFile>();
+                for (ProjectFile pf : pv.getFiles(p))
+                    if (!changed.contains(pf.getId()))
+                        unchanged.add(pf);
+                snapshot = parseFiles(unchanged, false);
+            }
         }
 
+        if(!db.getSessionManager().isDBSessionActive()) db.getSessionManager().startDBSession();
         Metric DIT = Metric.getMetricByMnemonic("DIT");
         Metric NOC = Metric.getMetricByMnemonic("NOC");
 
-        for (EncapsulationUnit clazz : changedClasses) {
-            String classname = clazz.getName();
-            String base = reducer.get(classname);
-            int dit = 1;
-            while (!base.equals("java.lang.Object")) {
-                base = reducer.get(base);
-                dit++;
-            }
-
-            int noc = 0;
-            for (String value : reducer.values())
-                if (value.equals(classname))
-                    noc++;
+        for (ProjectFile pf : changedFiles) {
+            pf = db.getSessionManager().attachObjectToDBSession(pf);
+            for (EncapsulationUnit clazz : pf.getEncapsulationUnits()) {
+                int[] res = results.get(clazz.getName());
 
-            EncapsulationUnitMeasurement eum = new EncapsulationUnitMeasurement(clazz, DIT, String.valueOf(dit));
-            db.getQueryInterface().addRecord(eum);
-            eum = new EncapsulationUnitMeasurement(clazz, NOC, String.valueOf(dit));
-            db.getQueryInterface().addRecord(eum);
+                EncapsulationUnitMeasurement eum = new EncapsulationUnitMeasurement(clazz, DIT, (long) res[0]);
+                db.getQueryInterface().addRecord(eum);
+                eum = new EncapsulationUnitMeasurement(clazz, NOC, (long) res[1]);
+                db.getQueryInterface().addRecord(eum);
+            }
         }
 
         db.getSessionManager().commitDBSession();
     }
 
-    protected void parseFile(ProjectFile pf) throws Exception {
+    private ClassHierarchy getHierarchy(Long projectId) {
+        ClassHierarchy h = hierarchies.get(projectId);
+        if (h == null) {
+            hierarchies.putIfAbsent(projectId, new ClassHierarchy());
+            h = hierarchies.get(projectId);
+        }
+        return h;
+    }
 
-        if (pf.getIsDirectory() || pf.isDeleted() ||
-                !pf.getName().endsWith(".java")) {
-            return;
+    /*
+     * Replace the classes of files in the class graph; files mapped to 
+     * null are removed. Callers must hold the graph lock.
+     */
+    private void apply(ClassHierarchy hierarchy,
+            Map<String, Deque<InheritanceExtractor.ClassInheritance>> files) {
+        for (Map.Entry<String, Deque<InheritanceExtractor.ClassInheritance>> e : files.entrySet()) {
+            if (e.getValue() == null)
+                hierarchy.removeFile(e.getKey());
+            else
+                hierarchy.setFile(e.getKey(), e.getValue());
         }
+    }
 
-        FDSService fds = AlitheiaCore.getInstance().getFDSService();
+    /*
+     * DIT and NOC of classes. Callers must hold the graph lock.
+     */
+    private Map<String, int[]> measure(ClassHierarchy hierarchy,
+            Collection<String> classes) {
+        Map<String, int[]> results = new HashMap<String, int[]>();
+        for (String clazz : classes) {
+            results.put(clazz, new int[] {hierarchy.getDepth(clazz),
+                    hierarchy.getChildCount(clazz)});
+        }
+        return results;
+    }
 
-        InputStream in = fds.getFileContents(pf);
-        if (in == null) {
-            return;
+    /*
+     * Parse files, storing the measurements of their classes when measure
+     * is true. Returns the classes declared per file path, null for files
+     * that do not exist in this version. Files that cannot be parsed are 
+     * left out, so their classes stay as they were in the graph.
+     */
+    private Map<String, Deque<InheritanceExtractor.ClassInheritance>> parseFiles(
+            Collection<ProjectFile> files, boolean measure) {
+        Map<String, Deque<InheritanceExtractor.ClassInheritance>> classes = 
+            new HashMap<String, Deque<InheritanceExtractor.ClassInheritance>>();
+        for (ProjectFile pf : files) {
+            try {
+                if(!db.getSessionManager().isDBSessionActive()) db.getSessionManager().startDBSession();
+                pf = db.getSessionManager().attachObjectToDBSession(pf);
+                classes.put(pf.getFileName(), parseFile(pf, measure));
+            } catch (Exception e) {
+                warn("Cannot parse file ", pf.getFileName(), ": ", e.getMessage());
+            } finally {
+                if(db.getSessionManager().isDBSessionActive()) db.getSessionManager().commitDBSession();
+            }
         }
+        return classes;
+    }
 
-        // Parse the input file
-        ANTLRInputStream input = new ANTLRInputStream(in);
-        JavaTreeLexer lexer = new JavaTreeLexer(input);
-        CommonTokenStream tokens = new CommonTokenStream(lexer);
-        JavaTreeParser parser = new JavaTreeParser(tokens);
-        SpanningNodeAdaptor adaptor = new SpanningNodeAdaptor();
-        parser.setTreeAdaptor(adaptor);
+    /**
+     * Parse a file, optionally storing the measurements for its classes 
+     * and methods.
+     * 
+     * @return The classes declared in the file, or null if the file
+     *  does not exist in this version or is not a Java file
+     */
+    protected Deque<InheritanceExtractor.ClassInheritance> parseFile(
+            ProjectFile pf, boolean measure) throws Exception {
 
-        JavaTreeParser.compilationUnit_return result = parser.compilationUnit();
+        if (pf.getIsDirectory() || pf.isDeleted() ||
+                !pf.getName().endsWith(".java")) {
+            return null;
+        }
 
-        Tree t = (Tree) result.getTree();
+        // Parse the input file, or get the tree of an identical one
+        Tree t = ParseTreeCache.getTree(pf);
+        if (t == null) {
+            return null;
+        }
 
         // Walkers for resulting tree
         ASTWalker walker = new ASTWalker();
@@ -188,18 +273,15 @@ public class JavaMetrics extends AbstractMetric {
         walker.addProcessor(cboCalculator);
         walker.walk(t);
 
-        //Data for associated classes/methods
-        List<ExecutionUnit> methods = pf.getChangedExecutionUnits();
-        Set<EncapsulationUnit> classes = pf.getEncapsulationUnits();
-        Set<String> foundClasses = entityExtractor.getResults().keySet();
-
-        //Make class graph
+        //Class graph
         Deque<InheritanceExtractor.ClassInheritance> classInheritance =
                 inheritanceExtractor.getResults();
 
-        for (InheritanceExtractor.ClassInheritance ci : classInheritance) {
-            reducer.put(ci.className, ci.superClass);
-        }
+        if (!measure)
+            return classInheritance;
+
+        //Data for associated classes/methods
+        Set<EncapsulationUnit> classes = pf.getEncapsulationUnits();
 
         // LCOM results
         writeClassResults(classes, lcomCalculator.getResults(), Metric.getMetricByMnemonic("LCOM"));
@@ -223,12 +305,12 @@ public class JavaMetrics extends AbstractMetric {
                 wmc += res;
                 ExecutionUnitMeasurement eum = new ExecutionUnitMeasurement(
                         method, Metric.getMetricByMnemonic("MCCABE"),
-                        res.toString());
+                        res.longValue());
                 db.getQueryInterface().addRecord(eum);
             }
 
             EncapsulationUnitMeasurement eum =
-                    new EncapsulationUnitMeasurement(clazz, m, wmc.toString());
+                    new EncapsulationUnitMeasurement(clazz, m, wmc.longValue());
             db.getQueryInterface().addRecord(eum);
         }
 
@@ -240,6 +322,7 @@ public class JavaMetrics extends AbstractMetric {
                             clazz.getExecUnits().toString());
             db.getQueryInterface().addRecord(eum);
         }
+        return classInheritance;
     }
 
     private void writeClassResults(Set<EncapsulationUnit> classes,
@@ -253,7 +336,7 @@ public class JavaMetrics extends AbstractMetric {
                 continue;
             }
 
-            EncapsulationUnitMeasurement eum = new EncapsulationUnitMeasurement(clazz, m, res.toString());
+            EncapsulationUnitMeasurement eum = new EncapsulationUnitMeasurement(clazz, m, res.longValue());
             db.getQueryInterface().addRecord(eum);
         }
     }
@@ -31,9 +31,7 @@
 package eu.sqooss.metrics.mi;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.osgi.framework.BundleContext;
 
@@ -45,12 +43,11 @@ import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
 import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.Directory;
-import eu.sqooss.service.db.HQLQueryInterface;
+import eu.sqooss.service.db.MeasurementAggregate;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.ProjectDirectory;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileMeasurement;
-import eu.sqooss.service.db.ProjectFileState;
 import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.ProjectVersionMeasurement;
 import eu.sqooss.service.fds.FileTypeMatcher;
@@ -207,8 +204,7 @@ public class Mi extends AbstractMetric {
             50 * Math.sin(Math.sqrt(2.4 * perCM));
         
         Metric m = Metric.getMetricByMnemonic(MNEMONIC_MODMI);
-        ProjectFileMeasurement pfm = new ProjectFileMeasurement(m, pf, 
-                String.valueOf(MI));
+        ProjectFileMeasurement pfm = new ProjectFileMeasurement(m, pf, MI);
         db.getQueryInterface().addRecord(pfm);
     }
 
@@ -218,73 +214,23 @@ public class Mi extends AbstractMetric {
 
     public void run(ProjectVersion pv) throws AlreadyProcessingException {
         
-        String paramIsDirectory = "is_directory";
-        String paramMNOL = "paramMNOL";
-        String paramISSRCDIR = "paramISSRCDIR";
-        String paramVersionId = "paramVersionId";
-        String paramProjectId = "paramProjectId";
-        String paramState = "paramStatus";
-        
-        StringBuffer q = new StringBuffer("select pfm ");
-        Map<String,Object> params = new HashMap<String,Object>();
-
-        if (pv.getSequence() == ProjectVersion.getLastProjectVersion(pv.getProject()).getSequence()) {
-            q.append(" from ProjectFile pf, ProjectFileMeasurement pfm");
-            q.append(" where pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf, ");
-            q.append(" ProjectFileMeasurement pfm ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and pf.validFrom.id = pv2.id");
-            q.append(" and pf.validUntil.id = pv3.id");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-           
-            params.put(paramProjectId, pv.getProject().getId());
-            params.put(paramVersionId, pv.getId());
-        }
-        
-        q.append(" and pf.state <> :").append(paramState);
-        q.append(" and pf.isDirectory = :").append(paramIsDirectory);
-        q.append(" and pfm.projectFile = pf");
-        q.append(" and pfm.metric = :").append(paramMNOL);
-        q.append(" and exists (select pfm1 ");
-        q.append(" from ProjectFileMeasurement pfm1 ");
-        q.append(" where pfm1.projectFile = pfm.projectFile ");
-        q.append(" and pfm1.metric = :").append(paramISSRCDIR).append(")");
-        
-
-        params.put(paramState, ProjectFileState.deleted());
-        params.put(paramIsDirectory, true);
-        params.put(paramMNOL, Metric.getMetricByMnemonic(MNEMONIC_MODMI));
-        params.put(paramISSRCDIR, Metric.getMetricByMnemonic(MNEM_ISSRC));
-        
-        // Get the list of folders which exist in this project version.
-        List<ProjectFileMeasurement> srcDirs = 
-            (List<ProjectFileMeasurement>) db.getQueryInterface(HQLQueryInterface.class).doHQL(q.toString(), params);
-
-        // Calculate the metric results
-        double miTotal = 0;
-       
-        //For source directory directory
-        for (ProjectFileMeasurement pfm : srcDirs) {
-            double mi = Double.parseDouble(pfm.getResult());
-            // Try to retrieve the MNOL measurement for this folder
-            if (mi > 0)
-                miTotal += mi;
-        } 
+        /*
+         * Average the MI of the source folders in this version, in the DB.
+         * Only positive folder MIs are summed, but the sum is divided by
+         * the number of all source folders.
+         */
+        Metric modmi = Metric.getMetricByMnemonic(MNEMONIC_MODMI);
+        Metric issrc = Metric.getMetricByMnemonic(MNEM_ISSRC);
+        MeasurementAggregate srcDirs = pv.aggregateFileMeasurements(
+                modmi, null, null, true, issrc);
+        MeasurementAggregate positive = pv.aggregateFileMeasurements(
+                modmi, null, null, true, issrc, true);
         
-        if (miTotal > 0) {
+        if (positive.getSum() > 0) {
 
             Metric metric = Metric.getMetricByMnemonic(MNEMONIC_MI);
             ProjectVersionMeasurement ams = new ProjectVersionMeasurement(
-                    metric, pv, String.valueOf(0));
-            
-            ams.setResult(String.valueOf(((float) (miTotal / srcDirs.size()))));
+                    metric, pv, positive.getSum() / srcDirs.getTotalCount());
             db.getQueryInterface().addRecord(ams);
         }
     }
@@ -320,14 +266,18 @@ public class Mi extends AbstractMetric {
             if (r == null || r.isEmpty())
                 return null;
 
+            Object o = r.get(0).getResult();
+            Number n = (o instanceof Number) ? (Number) o 
+                    : new Double(o.toString());
+
             if (resultType.equals(Double.class))
-                return (E) new Double(r.get(0).getResult().toString());
+                return (E) new Double(n.doubleValue());
 
             if (resultType.equals(Integer.class))
-                return (E) new Integer(r.get(0).getResult().toString());
+                return (E) new Integer(n.intValue());
 
             if (resultType.equals(Float.class))
-                return (E) new Float(r.get(0).getResult().toString());
+                return (E) new Float(n.floatValue());
             
             return null;
         } catch (Exception e) {
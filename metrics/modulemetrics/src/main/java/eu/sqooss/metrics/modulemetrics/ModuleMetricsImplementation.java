@@ -34,9 +34,7 @@
 package eu.sqooss.metrics.modulemetrics;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
@@ -49,12 +47,11 @@ import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
 import eu.sqooss.service.db.Directory;
-import eu.sqooss.service.db.HQLQueryInterface;
+import eu.sqooss.service.db.MeasurementAggregate;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.ProjectDirectory;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileMeasurement;
-import eu.sqooss.service.db.ProjectFileState;
 import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.ProjectVersionMeasurement;
 import eu.sqooss.service.fds.FileTypeMatcher;
@@ -136,17 +133,15 @@ public class ModuleMetricsImplementation extends AbstractMetric {
         if (foundSource) {
             Metric m = Metric.getMetricByMnemonic(MET_ISSRCMOD);
 
-            ProjectFileMeasurement pfm = new ProjectFileMeasurement(m, pf, String.valueOf(1));
+            ProjectFileMeasurement pfm = new ProjectFileMeasurement(m, pf, 1L);
             db.getQueryInterface().addRecord(pfm);
             
             m = Metric.getMetricByMnemonic(MET_MNOL);
-            pfm = new ProjectFileMeasurement(m, pf,
-                    String.valueOf(mnol));
+            pfm = new ProjectFileMeasurement(m, pf, mnol);
             db.getQueryInterface().addRecord(pfm);
             
             m = Metric.getMetricByMnemonic(MET_MNOF);
-            pfm = new ProjectFileMeasurement(m, pf,
-                    String.valueOf(mnof));
+            pfm = new ProjectFileMeasurement(m, pf, mnof);
             db.getQueryInterface().addRecord(pfm);
 
         }
@@ -154,72 +149,17 @@ public class ModuleMetricsImplementation extends AbstractMetric {
 
     public void run(ProjectVersion pv) throws AlreadyProcessingException {
         
-        String paramIsDirectory = "is_directory";
-        String paramMNOL = "paramMNOL";
-        String paramISSRCDIR = "paramISSRCDIR";
-        String paramVersionId = "paramVersionId";
-        String paramProjectId = "paramProjectId";
-        String paramState = "paramStatus";
-        Map<String,Object> params = new HashMap<String,Object>();
-
-        StringBuffer q = new StringBuffer("select pfm ");
-        if (pv.getSequence() == ProjectVersion.getLastProjectVersion(pv.getProject()).getSequence()) {
-            q.append(" from ProjectFile pf, ProjectFileMeasurement pfm");
-            q.append(" where pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf, ");
-            q.append(" ProjectFileMeasurement pfm ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and pf.validFrom.id = pv2.id");
-            q.append(" and pf.validUntil.id = pv3.id");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-            
-            params.put(paramProjectId, pv.getProject().getId());
-            params.put(paramVersionId, pv.getId());
-        }
-
-        q.append(" and pf.state <> :").append(paramState);
-        q.append(" and pf.isDirectory = :").append(paramIsDirectory);
-        q.append(" and pfm.projectFile = pf");
-        q.append(" and pfm.metric = :").append(paramMNOL);
-        q.append(" and exists (select pfm1 ");
-        q.append(" from ProjectFileMeasurement pfm1 ");
-        q.append(" where pfm1.projectFile = pfm.projectFile ");
-        q.append(" and pfm1.metric = :").append(paramISSRCDIR).append(")");
-        
-        params.put(paramState, ProjectFileState.deleted());
-        params.put(paramIsDirectory, true);
-        params.put(paramMNOL, Metric.getMetricByMnemonic(MET_MNOL));
-        params.put(paramISSRCDIR, Metric.getMetricByMnemonic(MET_ISSRCMOD));
-        
-        // Get the list of folders which exist in this project version.
-        List<ProjectFileMeasurement> srcDirs = 
-            (List<ProjectFileMeasurement>) db.getQueryInterface(HQLQueryInterface.class).doHQL(q.toString(), params);
-
-        // Calculate the metric results
-        int locs = 0;
-       
-        //For source directory directory
-        for (ProjectFileMeasurement pfm : srcDirs) {
-            log.debug("Reading measurement for dir " + pfm.getProjectFile().getFileName());
-            int mnolValue = Integer.parseInt(pfm.getResult());
-            // Try to retrieve the MNOL measurement for this folder
-            if (mnolValue > 0)
-                locs += mnolValue;
-        } 
+        // Sum the MNOL of the source folders in this version, in the DB
+        MeasurementAggregate mnol = pv.aggregateFileMeasurements(
+                Metric.getMetricByMnemonic(MET_MNOL), null, null, true,
+                Metric.getMetricByMnemonic(MET_ISSRCMOD));
+        long locs = mnol.getLongSum();
 
         if (locs > 0) {
             // Store the "AMS" metric result
             Metric metric = Metric.getMetricByMnemonic(MET_AMS);
             ProjectVersionMeasurement ams = new ProjectVersionMeasurement(
-                    metric, pv, String.valueOf(0));
-            
-            ams.setResult(String.valueOf(((float) (locs / srcDirs.size()))));
+                    metric, pv, (double) (locs / mnol.getCount()));
             db.getQueryInterface().addRecord(ams);
         }
     }
@@ -478,11 +478,11 @@ public class Structural extends AbstractMetric {
             etotal += i;
         }
         
-        addRecord(MNEM_CC_MAX, fileDAO.get(), String.valueOf(max));
-        addRecord(MNEM_CC_T, fileDAO.get(), String.valueOf(total));
-        addRecord(MNEM_NUM_FUN, fileDAO.get(), String.valueOf(numMethods));
-        addRecord(MNEM_ECC_MAX, fileDAO.get(), String.valueOf(emax));
-        addRecord(MNEM_ECC_T, fileDAO.get(), String.valueOf(etotal));
+        addRecord(MNEM_CC_MAX, fileDAO.get(), max);
+        addRecord(MNEM_CC_T, fileDAO.get(), total);
+        addRecord(MNEM_NUM_FUN, fileDAO.get(), numMethods);
+        addRecord(MNEM_ECC_MAX, fileDAO.get(), emax);
+        addRecord(MNEM_ECC_T, fileDAO.get(), etotal);
     }
     
     private void incResult(HashMap<String, Integer> result, int value,  String key) {
@@ -603,14 +603,14 @@ public class Structural extends AbstractMetric {
         /* Bugs */
         double B = (double)(( E * (double)(2/3) ) / 3000);
         
-        addRecord(MNEM_HN, fileDAO.get(), String.valueOf(N));
-        addRecord(MNEM_HVS, fileDAO.get(), String.valueOf(n));
-        addRecord(MNEM_HV, fileDAO.get(), String.valueOf(V));
-        addRecord(MNEM_HD, fileDAO.get(), String.valueOf(D));
-        addRecord(MNEM_HL, fileDAO.get(), String.valueOf(L));
-        addRecord(MNEM_HE, fileDAO.get(), String.valueOf(E));
-        addRecord(MNEM_HT, fileDAO.get(), String.valueOf(T));
-        addRecord(MNEM_HB, fileDAO.get(), String.valueOf(B));
+        addRecord(MNEM_HN, fileDAO.get(), N);
+        addRecord(MNEM_HVS, fileDAO.get(), n);
+        addRecord(MNEM_HV, fileDAO.get(), V);
+        addRecord(MNEM_HD, fileDAO.get(), D);
+        addRecord(MNEM_HL, fileDAO.get(), L);
+        addRecord(MNEM_HE, fileDAO.get(), E);
+        addRecord(MNEM_HT, fileDAO.get(), T);
+        addRecord(MNEM_HB, fileDAO.get(), B);
     }
     
     private Set<String> uniq(List<String> arlList) {
@@ -618,7 +618,13 @@ public class Structural extends AbstractMetric {
         return h;
     }
     
-    private void addRecord(String mnem, ProjectFile pf, String value) {
+    private void addRecord(String mnem, ProjectFile pf, long value) {
+        Metric m = Metric.getMetricByMnemonic(mnem);
+        ProjectFileMeasurement pfm = new ProjectFileMeasurement(m, pf, value);
+        db.getQueryInterface().addRecord(pfm); 
+    }
+    
+    private void addRecord(String mnem, ProjectFile pf, double value) {
         Metric m = Metric.getMetricByMnemonic(mnem);
         ProjectFileMeasurement pfm = new ProjectFileMeasurement(m, pf, value);
         db.getQueryInterface().addRecord(pfm); 
@@ -150,7 +150,7 @@ public class TestabilityImplementation extends AbstractMetric {
             // Store the results
             Metric metric = Metric.getMetricByMnemonic(MNEMONIC_NCASES);
             ProjectFileMeasurement ncases = new ProjectFileMeasurement(
-                    metric,pf,String.valueOf(numTestCases));
+                    metric,pf,(long) numTestCases);
             db.getQueryInterface().addRecord(ncases);
         } catch (IOException e) {
             log.error(this.getClass().getName() + " IO Error <" + e
@@ -39,7 +39,6 @@ import java.io.LineNumberReader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -53,11 +52,10 @@ import eu.sqooss.service.abstractmetric.AlreadyProcessingException;
 import eu.sqooss.service.abstractmetric.MetricDecl;
 import eu.sqooss.service.abstractmetric.MetricDeclarations;
 import eu.sqooss.service.abstractmetric.Result;
-import eu.sqooss.service.db.HQLQueryInterface;
+import eu.sqooss.service.db.MeasurementAggregate;
 import eu.sqooss.service.db.Metric;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectFileMeasurement;
-import eu.sqooss.service.db.ProjectFileState;
 import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.ProjectVersionMeasurement;
 import eu.sqooss.service.fds.FDSService;
@@ -124,7 +122,7 @@ public class WcImplementation extends AbstractMetric {
             db.getQueryInterface().findObjectsByProperties(ProjectFileMeasurement.class, filter);
         
         for (ProjectFileMeasurement pfm : measurement) 
-            results.add(new Result(a, m, pfm.getResult(), Result.ResultType.INTEGER));
+            results.add(new Result(a, m, pfm.getResult(Result.ResultType.INTEGER), Result.ResultType.INTEGER));
         
     	return results;
     }
@@ -252,25 +250,25 @@ public class WcImplementation extends AbstractMetric {
         List<Metric> toUpdate = new ArrayList<Metric>();
         Metric metric = Metric.getMetricByMnemonic(MNEMONIC_WC_LOC);
         ProjectFileMeasurement locm = new ProjectFileMeasurement(
-                metric,pf,String.valueOf(results[0]));
+                metric,pf,results[0]);
         db.getQueryInterface().addRecord(locm);
         toUpdate.add(metric);
 
         metric = Metric.getMetricByMnemonic(MNEMONIC_WC_LOCOM);
         ProjectFileMeasurement locc = new ProjectFileMeasurement(
-                metric,pf,String.valueOf(results[1]));
+                metric,pf,results[1]);
         db.getQueryInterface().addRecord(locc);
         toUpdate.add(metric);
         
         metric = Metric.getMetricByMnemonic(MNEMONIC_WC_LONB);
         ProjectFileMeasurement lonb = new ProjectFileMeasurement(
-                metric,pf,String.valueOf(results[2]));
+                metric,pf,results[2]);
         db.getQueryInterface().addRecord(lonb);
         toUpdate.add(metric);
 
         metric = Metric.getMetricByMnemonic(MNEMONIC_WC_WORDS);
         ProjectFileMeasurement words_measure = new ProjectFileMeasurement(
-                metric,pf,String.valueOf(results[3]));
+                metric,pf,results[3]);
         db.getQueryInterface().addRecord(words_measure);
         toUpdate.add(metric);
     }
@@ -394,90 +392,41 @@ public class WcImplementation extends AbstractMetric {
             db.getQueryInterface().findObjectsByProperties(ProjectVersionMeasurement.class, filter);
         
         for (ProjectVersionMeasurement pfm : measurement) 
-            results.add(new Result(p, m, pfm.getResult(), Result.ResultType.INTEGER));
+            results.add(new Result(p, m, pfm.getResult(Result.ResultType.INTEGER), Result.ResultType.INTEGER));
         
         return results;
     }
 
     public void run(ProjectVersion v) throws AlreadyProcessingException {
         
-        String paramVersionId = "paramVersion";
-        String paramMetricLoC = "paramMetricLoC";
-        String paramMetricLoCom = "paramMetricLoCom";
-        String paramIsDirectory = "paramIsDirectory";
-        String paramProjectId = "paramProjectId";
-        String paramState = "paramState";
-        Map<String, Object> params = new HashMap<String, Object>();
-       
-        /* Get all measurements for live version files for metrics LoC and LoCom*/ 
-        StringBuffer q = new StringBuffer("select pfm ");
-        if (v.getSequence() == ProjectVersion.getLastProjectVersion(v.getProject()).getSequence()) {
-            q.append(" from ProjectFile pf, ProjectFileMeasurement pfm");
-            q.append(" where pf.validUntil is null ");
-        } else {
-            q.append(" from ProjectVersion pv, ProjectVersion pv2,");
-            q.append(" ProjectVersion pv3, ProjectFile pf, ProjectFileMeasurement pfm ");
-            q.append(" where pv.project.id = :").append(paramProjectId);
-            q.append(" and pv.id = :").append(paramVersionId);
-            q.append(" and pv2.project.id = :").append(paramProjectId);
-            q.append(" and pv3.project.id = :").append(paramProjectId);
-            q.append(" and pf.validFrom.id = pv2.id");
-            q.append(" and pf.validUntil.id = pv3.id");
-            q.append(" and pv2.sequence <= pv.sequence");
-            q.append(" and pv3.sequence >= pv.sequence");
-            
-            params.put(paramProjectId, v.getProject().getId());
-            params.put(paramVersionId, v.getId());
-        }
-        q.append(" and pfm.projectFile = pf ");
-        q.append(" and pf.state <> :").append(paramState);
-        q.append(" and pf.isDirectory = :").append(paramIsDirectory);
-        q.append(" and (pfm.metric.id = :").append(paramMetricLoC);
-        q.append(" or pfm.metric.id = :").append(paramMetricLoCom).append(")");
-
-        params.put(paramMetricLoC, Metric.getMetricByMnemonic(MNEMONIC_WC_LOC).getId());
-        params.put(paramMetricLoCom, Metric.getMetricByMnemonic(MNEMONIC_WC_LOCOM).getId());
-        params.put(paramIsDirectory, Boolean.FALSE);
-        params.put(paramState, ProjectFileState.deleted());
-        
-        List<ProjectFileMeasurement> results = 
-            (List<ProjectFileMeasurement>) db.getQueryInterface(HQLQueryInterface.class).doHQL(q.toString(), params);
-        
-        long nof = 0;            //Number of files
-        int nosf = 0;           //Number of source code files
-        int nodf = 0;           //Number of documentation files
-        int totalLoC = 0;       //Total Lines of code
-        int totalLoComm = 0;    //Total Lines of comments
-        int totalLocDoc = 0;    //Total Lines of doc
+        Metric loc = Metric.getMetricByMnemonic(MNEMONIC_WC_LOC);
+        Metric locom = Metric.getMetricByMnemonic(MNEMONIC_WC_LOCOM);
         
-        params.remove(paramMetricLoCom);
-        params.remove(paramMetricLoC);
-        nof = v.getLiveFilesCount();
+        /* Aggregate LoC and LoCom over the live files, in the database */
+        MeasurementAggregate srcLoC = 
+            v.aggregateFileMeasurements(loc, FileTypeMatcher.FileType.SRC);
+        MeasurementAggregate srcLoCom = 
+            v.aggregateFileMeasurements(locom, FileTypeMatcher.FileType.SRC);
+        MeasurementAggregate docLoC = 
+            v.aggregateFileMeasurements(loc, FileTypeMatcher.FileType.DOC);
+        MeasurementAggregate docLoCom = 
+            v.aggregateFileMeasurements(locom, FileTypeMatcher.FileType.DOC);
         
-        for (ProjectFileMeasurement pfm : results) {
-            String fname = pfm.getProjectFile().getName();
-            int result = Integer.parseInt(pfm.getResult());
-            if (ftm.getFileType(fname).equals(
-                            FileTypeMatcher.FileType.SRC)) {
-                nosf ++;
-                if (pfm.getMetric().getMnemonic().equals(MNEMONIC_WC_LOC)) {
-                    totalLoC += result;
-                } else {
-                    totalLoComm += result;
-                }
-            }
-            
-            if (ftm.getFileType(fname).equals(
-                            FileTypeMatcher.FileType.DOC)) {
-                nodf ++;
-                totalLocDoc += result;
-            }
-        }
+        /* NOSF and NODF have always counted the LoC and LoCom results */
+        long nof = v.getLiveFilesCount();             //Number of files
+        long nosf = srcLoC.getTotalCount() 
+            + srcLoCom.getTotalCount();               //Number of source code files
+        long nodf = docLoC.getTotalCount() 
+            + docLoCom.getTotalCount();               //Number of documentation files
+        long totalLoC = srcLoC.getLongSum();          //Total Lines of code
+        long totalLoComm = srcLoCom.getLongSum();     //Total Lines of comments
+        long totalLocDoc = docLoC.getLongSum() 
+            + docLoCom.getLongSum();                  //Total Lines of doc
         
         List<Metric> toUpdate = new ArrayList<Metric>();
         
         toUpdate.add(addPVMeasurement(MNEMONIC_WC_PV_NODF, v, nodf));
-        toUpdate.add(addPVMeasurement(MNEMONIC_WC_PV_NOF, v, (int)nof));
+        toUpdate.add(addPVMeasurement(MNEMONIC_WC_PV_NOF, v, nof));
         toUpdate.add(addPVMeasurement(MNEMONIC_WC_PV_NOSF, v, nosf));
         toUpdate.add(addPVMeasurement(MNEMONIC_WC_PV_TL, v, totalLocDoc + totalLoC));
         toUpdate.add(addPVMeasurement(MNEMONIC_WC_PV_TLDOC, v, totalLocDoc));
@@ -485,10 +434,10 @@ public class WcImplementation extends AbstractMetric {
         toUpdate.add(addPVMeasurement(MNEMONIC_WC_PV_TLOCOM, v, totalLoComm));
     }
     
-    private Metric addPVMeasurement(String s, ProjectVersion pv, int value) {
+    private Metric addPVMeasurement(String s, ProjectVersion pv, long value) {
         Metric m = Metric.getMetricByMnemonic(s); 
         ProjectVersionMeasurement pvm = new ProjectVersionMeasurement(m , pv, 
-                String.valueOf(value));
+                value);
         db.getQueryInterface().addRecord(pvm);
         return m;
     }
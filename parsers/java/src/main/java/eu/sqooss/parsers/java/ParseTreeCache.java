@@ -0,0 +1,126 @@
+package eu.sqooss.parsers.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.antlr.runtime.ANTLRInputStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.tree.Tree;
+
+import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.cache.CacheService;
+import eu.sqooss.service.db.ProjectFile;
+import eu.sqooss.service.fds.FDSService;
+
+/**
+ * Parse trees of Java files, shared by everything that walks them. Trees are
+ * kept in the {@link CacheService} in their {@link SpanningTreeCodec} form,
+ * keyed by the hash of the file contents, so a file revision is lexed and
+ * parsed once no matter how many plug-ins and metrics look at it. Since the
+ * key is the contents, unchanged files carried over to new versions, copies
+ * and reverts also hit the cache.
+ */
+public class ParseTreeCache {
+
+    private static final String CACHE_PREFIX =
+        "javatree:" + SpanningTreeCodec.VERSION + ":";
+
+    /**
+     * Get the parse tree of a file revision, parsing it if it is not cached.
+     *
+     * @return The tree or null if the file contents cannot be retrieved
+     */
+    public static Tree getTree(ProjectFile pf)
+        throws IOException, RecognitionException {
+        byte[] contents = getContents(pf);
+        if (contents == null)
+            return null;
+        return getTree(contents);
+    }
+
+    /**
+     * Get the contents of a file revision.
+     *
+     * @return The contents or null if they cannot be retrieved
+     */
+    public static byte[] getContents(ProjectFile pf) throws IOException {
+        FDSService fds = AlitheiaCore.getInstance().getFDSService();
+        InputStream in = fds.getFileContents(pf);
+        if (in == null)
+            return null;
+        return readFully(in);
+    }
+
+    /**
+     * Get the parse tree of Java source code, parsing it if it is not
+     * cached. Does not access the database, so it can be called from any
+     * thread.
+     */
+    public static Tree getTree(byte[] contents)
+        throws IOException, RecognitionException {
+        CacheService cache = AlitheiaCore.getInstance().getCacheService();
+        if (cache == null)
+            return parse(contents);
+
+        String key = CACHE_PREFIX + contentHash(contents);
+        byte[] cached = cache.get(key);
+        if (cached != null) {
+            try {
+                return SpanningTreeCodec.decode(cached);
+            } catch (IOException e) {
+                //Corrupt entry, parse again and replace it
+            }
+        }
+
+        Tree t = parse(contents);
+        cache.set(key, SpanningTreeCodec.encode(t));
+        return t;
+    }
+
+    /**
+     * Lex and parse Java source code.
+     */
+    public static Tree parse(byte[] contents)
+        throws IOException, RecognitionException {
+        ANTLRInputStream input =
+            new ANTLRInputStream(new ByteArrayInputStream(contents));
+        JavaTreeLexer lexer = new JavaTreeLexer(input);
+        CommonTokenStream tokens = new CommonTokenStream(lexer);
+        JavaTreeParser parser = new JavaTreeParser(tokens);
+        SpanningNodeAdaptor adaptor = new SpanningNodeAdaptor();
+        parser.setTreeAdaptor(adaptor);
+
+        JavaTreeParser.compilationUnit_return result = parser.compilationUnit();
+        return (Tree) result.getTree();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream buff = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            int read;
+            while ((read = in.read(b)) != -1)
+                buff.write(b, 0, read);
+            return buff.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String contentHash(byte[] contents) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            StringBuilder hex = new StringBuilder();
+            for (byte b : md.digest(contents))
+                hex.append(String.format("%02x", b & 0xff));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
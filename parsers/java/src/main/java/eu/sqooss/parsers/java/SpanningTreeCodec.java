@@ -0,0 +1,163 @@
+package eu.sqooss.parsers.java;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.Tree;
+
+/**
+ * Compact binary form of a parse tree built by the {@link SpanningNodeAdaptor}.
+ * Only what the tree processors look at survives the round trip: token type,
+ * token text and the line span of each node.
+ * <br/>
+ * The format is a table of the distinct token texts, followed by the nodes
+ * in pre-order. Identifiers repeat a lot within a file, so storing them once
+ * keeps the encoded tree a fraction of the size of the source file.
+ */
+public class SpanningTreeCodec {
+
+    /** Bump when the format changes */
+    public static final int VERSION = 1;
+
+    /**
+     * Encode a parse tree.
+     */
+    public static byte[] encode(Tree tree) {
+        Map<String, Integer> strings = new HashMap<String, Integer>();
+        List<String> table = new ArrayList<String>();
+        ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+
+        try {
+            DataOutputStream out = new DataOutputStream(nodes);
+            encode(tree, out, strings, table);
+            out.flush();
+
+            ByteArrayOutputStream buff = new ByteArrayOutputStream(
+                    nodes.size() + table.size() * 16);
+            out = new DataOutputStream(buff);
+            writeInt(out, VERSION);
+            writeInt(out, table.size());
+            for (String s : table) {
+                byte[] b = s.getBytes("UTF-8");
+                writeInt(out, b.length);
+                out.write(b);
+            }
+            nodes.writeTo(out);
+            out.flush();
+            return buff.toByteArray();
+        } catch (IOException e) {
+            //Cannot happen when writing to memory
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Rebuild a parse tree from its encoded form.
+     *
+     * @throws IOException if the data are truncated or of another version
+     */
+    public static Tree decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(data));
+        int version = readInt(in);
+        if (version != VERSION)
+            throw new IOException("Unsupported parse tree version " + version);
+
+        String[] table = new String[readInt(in)];
+        for (int i = 0; i < table.length; i++) {
+            byte[] b = new byte[readInt(in)];
+            in.readFully(b);
+            table[i] = new String(b, "UTF-8");
+        }
+        return decode(in, table);
+    }
+
+    private static void encode(Tree t, DataOutputStream out,
+            Map<String, Integer> strings, List<String> table)
+            throws IOException {
+        if (t.isNil()) {
+            writeInt(out, 0);
+        } else {
+            //EOF is -1, shift to keep 0 for nil nodes
+            writeInt(out, t.getType() + 2);
+            String text = t.getText();
+            if (text == null) {
+                writeInt(out, 0);
+            } else {
+                Integer idx = strings.get(text);
+                if (idx == null) {
+                    table.add(text);
+                    idx = table.size();
+                    strings.put(text, idx);
+                }
+                writeInt(out, idx);
+            }
+        }
+
+        int start = 0, end = 0;
+        if (t instanceof SpanningNode) {
+            start = ((SpanningNode) t).getStartLine();
+            end = ((SpanningNode) t).getEndLine();
+        }
+        writeInt(out, start);
+        writeInt(out, Math.max(end - start, 0));
+
+        writeInt(out, t.getChildCount());
+        for (int i = 0; i < t.getChildCount(); i++)
+            encode(t.getChild(i), out, strings, table);
+    }
+
+    private static SpanningNode decode(DataInputStream in, String[] table)
+            throws IOException {
+        int type = readInt(in);
+        Token token = null;
+        if (type != 0) {
+            int idx = readInt(in);
+            if (idx > table.length)
+                throw new IOException("Corrupt parse tree");
+            token = new CommonToken(type - 2,
+                    (idx == 0) ? null : table[idx - 1]);
+        }
+
+        int start = readInt(in);
+        int end = start + readInt(in);
+        if (token != null)
+            token.setLine(start);
+        SpanningNode node = new SpanningNode(token, start, end);
+
+        int children = readInt(in);
+        for (int i = 0; i < children; i++)
+            node.addChild(decode(in, table));
+        return node;
+    }
+
+    /* Variable length, non negative ints: 7 bits per byte */
+    private static void writeInt(DataOutputStream out, int v)
+            throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    private static int readInt(DataInputStream in) throws IOException {
+        int v = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return v;
+        }
+        throw new IOException("Corrupt parse tree");
+    }
+}
@@ -15,6 +15,7 @@ import java.util.List;
 import eu.sqooss.service.tds.AccessorException;
 import eu.sqooss.service.tds.AnnotatedLine;
 import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogIterator;
 import eu.sqooss.service.tds.Diff;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
@@ -95,15 +96,29 @@ public class SkelAccessor implements SCMAccessor {
                InvalidRepositoryException,
                FileNotFoundException {return;}
 
+    public String getContentId(String repoPath, Revision revision)
+        throws InvalidRepositoryException {return null;}
+
     public CommitLog getCommitLog(String repoPath, Revision r1, Revision r2)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException {return null;}
 
+    public CommitLogIterator getCommitLogIterator(String repoPath, 
+            Revision r1, Revision r2)
+        throws InvalidProjectRevisionException,
+               InvalidRepositoryException {return null;}
+
     public Diff getDiff(String repoPath, Revision r1, Revision r2)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
                FileNotFoundException {return null;}
 
+    public Diff getDiff(String repoPath, Revision r1, Revision r2, 
+            boolean keepText)
+        throws InvalidProjectRevisionException,
+               InvalidRepositoryException,
+               FileNotFoundException {return null;}
+
     public Diff getChange(String repoPath, Revision r)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
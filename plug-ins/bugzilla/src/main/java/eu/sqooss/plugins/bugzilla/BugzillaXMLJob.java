@@ -76,6 +76,11 @@ public class BugzillaXMLJob extends Job {
         return 3;
     }
 
+    @Override
+    public Workload workload() {
+        return Workload.IO;
+    }
+
     @Override
     protected void run() throws Exception {
 
@@ -38,9 +38,14 @@ import eu.sqooss.plugins.tds.git.GitAccessor;
 import eu.sqooss.plugins.updater.git.GitUpdater;
 import eu.sqooss.service.tds.TDSService;
 import eu.sqooss.service.updater.UpdaterService;
+import eu.sqooss.service.util.NamedThreadPool;
 
 public class Activator implements BundleActivator {
 
+    /** Threads shared by the Git accessors and updaters of the plug-in */
+    public static final NamedThreadPool workers =
+        new NamedThreadPool("Git worker");
+
     public void start(BundleContext bc) throws Exception {
         /* 
          * List of data protocols implemented by this plug-in
@@ -68,6 +73,8 @@ public class Activator implements BundleActivator {
         
         TDSService tds = AlitheiaCore.getInstance().getTDSService();
         tds.unregisterPlugin(GitAccessor.class);
+        
+        workers.shutdown();
     }
 }
 
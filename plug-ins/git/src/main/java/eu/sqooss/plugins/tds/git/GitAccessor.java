@@ -33,24 +33,33 @@ package eu.sqooss.plugins.tds.git;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.diff.DiffFormatter;
+import org.eclipse.jgit.errors.RevWalkException;
 import org.eclipse.jgit.lib.AnyObjectId;
 import org.eclipse.jgit.lib.Constants;
 import org.eclipse.jgit.lib.FileMode;
 import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
 import org.eclipse.jgit.lib.RepositoryBuilder;
@@ -66,12 +75,16 @@ import org.eclipse.jgit.treewalk.filter.PathFilter;
 import org.eclipse.jgit.treewalk.filter.TreeFilter;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.plugins.git.Activator;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.tds.AccessorException;
 import eu.sqooss.service.tds.AnnotatedLine;
 import eu.sqooss.service.tds.CommitCopyEntry;
 import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogIterator;
 import eu.sqooss.service.tds.Diff;
+import eu.sqooss.service.tds.DiffFactory;
+import eu.sqooss.service.tds.DiffOutputStream;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
 import eu.sqooss.service.tds.PathChangeType;
@@ -79,6 +92,7 @@ import eu.sqooss.service.tds.Revision;
 import eu.sqooss.service.tds.SCMAccessor;
 import eu.sqooss.service.tds.SCMNode;
 import eu.sqooss.service.tds.SCMNodeType;
+import eu.sqooss.service.util.FileUtils;
 
 /**
  * An accessor for Git repositories. Encapsulates the functionality provided by
@@ -95,6 +109,16 @@ import eu.sqooss.service.tds.SCMNodeType;
  */
 public class GitAccessor implements SCMAccessor {
     public static String ACCESSOR_NAME = "GitAccessor";
+    /* Orders commits by author date, as GitRevision does */
+    private static final Comparator<RevCommit> BY_AUTHOR_DATE = 
+        new Comparator<RevCommit>() {
+        public int compare(RevCommit a, RevCommit b) {
+            return a.getAuthorIdent().getWhen().compareTo(
+                    b.getAuthorIdent().getWhen());
+        }
+    };
+    /* Minimum number of files to write per thread on checkouts */
+    private static final int FILES_PER_THREAD = 64;
     private static List<URI> supportedSchemes;
     
     private URI uri;
@@ -102,6 +126,14 @@ public class GitAccessor implements SCMAccessor {
     private Repository git = null;
     private Logger logger = null;
     
+    /*
+     * The commit graph index: commits parsed so far, tags and commit 
+     * children. It is shared by all callers, filled in lazily and 
+     * dropped by refresh(). Guarded by indexLock.
+     */
+    private final Object indexLock = new Object();
+    private RevWalk commits;
+    private Map<String, String> tags;
     private Map<String, List<String>> childrenOf;
     
     static {
@@ -295,32 +327,198 @@ public class GitAccessor implements SCMAccessor {
         return ((GitRevision)r).isResolved();
     }
     
+    /**
+     * {@inheritDoc}
+     * The tree is read straight from the object database and its files
+     * are written out in parallel; no working copy or index is involved.
+     */
     public void getCheckout(String repoPath, Revision revision, File localPath)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
-               FileNotFoundException {return;}
+               FileNotFoundException {
+        long time = System.currentTimeMillis();
+        RevCommit c = resolveCommit(revision);
+        TreeEntry node = findPath(toGitPath(repoPath), c);
+
+        if (node == null) {
+            warn("Requested path " + repoPath + " does not exist.");
+            throw new FileNotFoundException(repoPath);
+        }
+        if (!node.isTree()) {
+            getFile(repoPath, revision, new File(localPath, repoPath));
+            return;
+        }
+        if (!localPath.isDirectory() && !localPath.mkdirs()) {
+            throw new FileNotFoundException(localPath.getPath());
+        }
+
+        List<TreeEntry> files = new ArrayList<TreeEntry>();
+        TreeWalk tw = new TreeWalk(git);
+        try {
+            tw.addTree(node.id);
+            tw.setRecursive(true);
+            while (tw.next()) {
+                FileMode fm = tw.getFileMode(0);
+                if (fm.equals(FileMode.GITLINK)) {
+                    new File(localPath, tw.getPathString()).mkdirs();
+                    continue;
+                }
+                files.add(new TreeEntry(tw.getPathString(), 
+                        tw.getObjectId(0), fm));
+            }
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    e.getMessage());
+        } finally {
+            tw.release();
+        }
 
+        writeFiles(files, localPath);
+        debug("getCheckout(): " + files.size() + " files, " 
+                + (System.currentTimeMillis() - time) + "ms");
+    }
+
+    /**
+     * {@inheritDoc}
+     * Only the files that differ between the two trees are touched.
+     */
     public void updateCheckout(String repoPath, Revision src,
         Revision dst, File localPath)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
-               FileNotFoundException {return;}
+               FileNotFoundException {
+        long time = System.currentTimeMillis();
+        RevCommit from = resolveCommit(src);
+        RevCommit to = resolveCommit(dst);
+        String path = toGitPath(repoPath);
+        TreeEntry target = findPath(path, to);
+
+        if (target == null) {
+            warn("Requested path " + repoPath + " does not exist.");
+            throw new FileNotFoundException(repoPath);
+        }
+        if (!target.isTree()) {
+            getFile(repoPath, dst, new File(localPath, repoPath));
+            return;
+        }
+        if (!localPath.isDirectory()) {
+            throw new FileNotFoundException(localPath.getPath());
+        }
 
+        TreeEntry source = findPath(path, from);
+        if (source == null || !source.isTree()) {
+            getCheckout(repoPath, dst, localPath);
+            return;
+        }
+
+        List<TreeEntry> files = new ArrayList<TreeEntry>();
+        TreeWalk tw = new TreeWalk(git);
+        try {
+            tw.addTree(source.id);
+            tw.addTree(target.id);
+            tw.setRecursive(true);
+            tw.setFilter(TreeFilter.ANY_DIFF);
+            while (tw.next()) {
+                File f = new File(localPath, tw.getPathString());
+                FileMode fm = tw.getFileMode(1);
+                /*
+                 * Deletions go first, so that a path that turns from a 
+                 * file to a directory (or the other way round) is free 
+                 * when the new contents are written.
+                 */
+                if (fm.equals(FileMode.MISSING)) {
+                    deleteFile(f, localPath);
+                } else if (fm.equals(FileMode.GITLINK)) {
+                    f.mkdirs();
+                } else {
+                    files.add(new TreeEntry(tw.getPathString(),
+                            tw.getObjectId(1), fm));
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    e.getMessage());
+        } finally {
+            tw.release();
+        }
+
+        writeFiles(files, localPath);
+        debug("updateCheckout(): " + files.size() + " files, " 
+                + (System.currentTimeMillis() - time) + "ms");
+    }
+
+    /** {@inheritDoc} */
     public void getFile(String repoPath, Revision revision, File localPath)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
-               FileNotFoundException {return;}
+               FileNotFoundException {
+        File parent = localPath.getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            parent.mkdirs();
+        }
+
+        OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(localPath));
+        try {
+            getFile(repoPath, revision, out);
+        } finally {
+            try {
+                out.close();
+            } catch (IOException e) {
+                warn("Cannot close file " + localPath + ": " + e.getMessage());
+            }
+        }
+    }
 
+    /**
+     * {@inheritDoc}
+     * The blob is streamed from the object database, large blobs are not
+     * loaded in memory.
+     */
     public void getFile(String repoPath, Revision revision, OutputStream stream)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
-               FileNotFoundException {return;}
+               FileNotFoundException {
+        TreeEntry file = findPath(toGitPath(repoPath), resolveCommit(revision));
+
+        if (file == null || file.isTree() || file.mode.equals(FileMode.GITLINK)) {
+            throw new FileNotFoundException(repoPath);
+        }
+
+        ObjectReader reader = git.newObjectReader();
+        try {
+            reader.open(file.id, Constants.OBJ_BLOB).copyTo(stream);
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    "Cannot read " + repoPath + ": " + e.getMessage());
+        } finally {
+            reader.release();
+        }
+    }
     
     public CommitLog getCommitLog(String repoPath, Revision r1, Revision r2)
     throws InvalidProjectRevisionException, InvalidRepositoryException  {
     	long time = System.currentTimeMillis();
+        CommitLogIterator i = getCommitLogIterator(repoPath, r1, r2);
+        GitCommitLog log = new GitCommitLog();
+        try {
+            while (i.hasNext()) {
+                log.entries().add(i.next());
+            }
+            return log;
+        } finally {
+            i.close();
+            debug("getCommitLog(): " + (System.currentTimeMillis() - time) + "ms");
+        }
+    }
+
+    /** {@inheritDoc} */
+    public CommitLogIterator getCommitLogIterator(String repoPath, 
+            Revision r1, Revision r2)
+    throws InvalidProjectRevisionException, InvalidRepositoryException  {
         repoPath = toGitPath(repoPath);
         RevWalk rw = new RevWalk(git);
+        boolean ok = false;
         try {
             
             if (r1 == null) {
@@ -344,41 +542,131 @@ public class GitAccessor implements SCMAccessor {
                 rw.setRevFilter(exact);
             }
             
-            if (r2 == null)
-                rw.markStart(rw.parseCommit(git.resolve(r1.getUniqueId())));
-            else if (r2.getUniqueId().equals(getHeadRevision().getUniqueId())) {
-                rw.markStart(rw.parseCommit(git.resolve(r2.getUniqueId())));
-            } else{
-                rw.markStart(rw.parseCommit(git.resolve(getNextRevision(r2).getUniqueId())));
-            }
+            rw.sort(RevSort.TOPO);
             
-            Iterator<RevCommit> i = rw.iterator();
-
-            GitCommitLog log = new GitCommitLog();
-
-            while (i.hasNext()) {
-                Revision r = getRevision(i.next(), false);
-                log.entries().add(r);
-                if (r2 == null)
-                    break;
+            GitCommitLogIterator i;
+            if (r2 == null) {
+                rw.markStart(rw.parseCommit(git.resolve(r1.getUniqueId())));
+                i = new GitCommitLogIterator(rw, 1);
+            } else {
+                if (r2.getUniqueId().equals(getHeadRevision().getUniqueId())) {
+                    rw.markStart(rw.parseCommit(git.resolve(r2.getUniqueId())));
+                } else {
+                    rw.markStart(rw.parseCommit(git.resolve(getNextRevision(r2).getUniqueId())));
+                }
+                //Parents before children
+                rw.sort(RevSort.REVERSE, true);
+                i = new GitCommitLogIterator(rw, -1);
             }
-
-            Collections.reverse(log.entries());
-            return log;
-
+            ok = true;
+            return i;
         } catch (IOException ew) {
             throw new InvalidRepositoryException(this.uri.toString(),
                     ew.getMessage());
         } finally {
-            rw.release();
-            debug("getCommitLog(): " + (System.currentTimeMillis() - time) + "ms");
+            if (!ok)
+                rw.release();
+        }
+    }
+
+    /*
+     * Converts the commits returned by a walk to revisions as they are 
+     * requested. Sorting makes the walk buffer the commit graph, but
+     * revisions are only created for the entries being consumed.
+     */
+    private class GitCommitLogIterator implements CommitLogIterator {
+        private RevWalk rw;
+        private Iterator<RevCommit> commits;
+        private int remaining;
+        
+        GitCommitLogIterator(RevWalk rw, int limit) {
+            this.rw = rw;
+            this.commits = rw.iterator();
+            this.remaining = limit;
+        }
+        
+        public boolean hasNext() throws InvalidRepositoryException {
+            if (rw == null)
+                return false;
+            try {
+                if (remaining != 0 && commits.hasNext())
+                    return true;
+            } catch (RevWalkException e) {
+                close();
+                throw new InvalidRepositoryException(uri.toString(), 
+                        e.getMessage());
+            }
+            close();
+            return false;
+        }
+
+        public Revision next() throws InvalidRepositoryException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            remaining--;
+            return getRevision(commits.next(), false);
+        }
+
+        public void close() {
+            if (rw != null) {
+                rw.release();
+                rw = null;
+            }
         }
     }
 
+    /** {@inheritDoc} */
     public Diff getDiff(String repoPath, Revision r1, Revision r2)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
-               FileNotFoundException {return null;}
+               FileNotFoundException {
+        return getDiff(repoPath, r1, r2, true);
+    }
+
+    /** {@inheritDoc} */
+    public Diff getDiff(String repoPath, Revision r1, Revision r2, 
+            boolean keepText)
+        throws InvalidProjectRevisionException,
+               InvalidRepositoryException,
+               FileNotFoundException {
+        RevCommit from = resolveCommit(r1);
+
+        if (r2 == null) {
+            if (r1.getUniqueId().equals(getHeadRevision().getUniqueId())) {
+                r2 = r1;
+            } else {
+                r2 = getNextRevision(r1);
+            }
+        }
+        RevCommit to = resolveCommit(r2);
+        String path = toGitPath(repoPath);
+
+        if (findPath(path, from) == null && findPath(path, to) == null) {
+            info("Requested path " + repoPath + " does not exist.");
+            throw new FileNotFoundException(repoPath);
+        }
+
+        //The parser understands Git diff headers, stream the diff to it
+        DiffOutputStream diff = DiffFactory.getInstance().newUnifiedDiffStream(
+                r1, r2, "/", keepText);
+        DiffFormatter diffFmt = new DiffFormatter(diff);
+        diffFmt.setRepository(git);
+        try {
+            for (DiffEntry ent : diffFmt.scan(from.getTree(), to.getTree())) {
+                if (isUnder(ent.getOldPath(), path) 
+                        || isUnder(ent.getNewPath(), path)) {
+                    diffFmt.format(ent);
+                }
+            }
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    e.getMessage());
+        } finally {
+            diffFmt.release();
+        }
+
+        return diff.getDiff();
+    }
 
     public SCMNodeType getNodeType(String repoPath, Revision r)
         throws InvalidRepositoryException {
@@ -400,39 +688,95 @@ public class GitAccessor implements SCMAccessor {
             if (tw == null) 
                 return SCMNodeType.UNKNOWN;
             
+            return toNodeType(tw.getFileMode(0));
+        } catch (Exception e) {
+            warn("Path " + repoPath + " does not exist in revision " 
+                    + r.getUniqueId() + ":" + e.getMessage());
+        } finally {
+            if (tw != null) tw.release();
+        }
+        return SCMNodeType.UNKNOWN;
+    }
+
+    /** The blob id of the file, files with the same contents share it */
+    public String getContentId(String repoPath, Revision r)
+        throws InvalidRepositoryException {
+
+        if (!isValidRevision(r))
+            throw new InvalidRepositoryException(repoPath, 
+                    "The provided revision is not valid: " + r);
+
+        RevCommit c = resolveGitRev(r.getUniqueId());
+        String path = toGitPath(repoPath);
+        if (c == null || path == null || path.isEmpty())
+            return null;
+
+        TreeWalk tw = null;
+        try {
+            tw = TreeWalk.forPath(git, path, c.getTree());
+
+            if (tw == null)
+                return null;
+
             FileMode fm = tw.getFileMode(0);
+            if (fm.equals(FileMode.TREE) || fm.equals(FileMode.GITLINK))
+                return null;
 
-            if (fm.equals(FileMode.REGULAR_FILE))
-            	return SCMNodeType.FILE;
-            if (fm.equals(FileMode.TREE))
-            	return SCMNodeType.DIR;
-            if(fm.equals(FileMode.GITLINK))
-            	return SCMNodeType.DIR;
-            if (fm.equals(FileMode.SYMLINK))
-            	return SCMNodeType.FILE; //FIXME: Need to track down link target
-            
+            return tw.getObjectId(0).name();
         } catch (Exception e) {
             warn("Path " + repoPath + " does not exist in revision " 
                     + r.getUniqueId() + ":" + e.getMessage());
         } finally {
             if (tw != null) tw.release();
         }
-        return SCMNodeType.UNKNOWN;
+        return null;
     }
 
     public String getSubProjectPath() throws InvalidRepositoryException 
         {return null;}
     
+    /** {@inheritDoc} */
     public List<SCMNode> listDirectory(SCMNode dir)
         throws InvalidRepositoryException,
         InvalidProjectRevisionException  {
-        return null;
+        List<SCMNode> contents = new ArrayList<SCMNode>();
+        TreeEntry node = findPath(toGitPath(dir.getPath()), 
+                resolveCommit(dir.getRevision()));
+
+        if (node == null) 
+            return contents;
+
+        if (!node.isTree()) {
+            contents.add(dir);
+            return contents;
+        }
+
+        TreeWalk tw = new TreeWalk(git);
+        try {
+            tw.addTree(node.id);
+            tw.setRecursive(false);
+            while (tw.next()) {
+                contents.add(new SCMNode(
+                        FileUtils.appendPath(dir.getPath(), tw.getPathString()),
+                        toNodeType(tw.getFileMode(0)), dir.getRevision()));
+            }
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    e.getMessage());
+        } finally {
+            tw.release();
+        }
+        return contents;
     }
     
-    @Override
+    /** {@inheritDoc} */
     public SCMNode getNode(String path, Revision r)
             throws InvalidRepositoryException, InvalidProjectRevisionException {
-        // TODO Auto-generated method stub
+        SCMNodeType t = getNodeType(path, r);
+
+        if (!t.equals(SCMNodeType.UNKNOWN)) 
+            return new SCMNode(path, t, r);
+
         return null;
     }
     
@@ -440,22 +784,45 @@ public class GitAccessor implements SCMAccessor {
     
     /*Methods available only to clients GitAccessor clients*/
     
+    /**
+     * Drop the commit graph index, that is the parsed commits, the tags 
+     * and the commit children, so that it is rebuilt from the current 
+     * state of the repository the next time it is used. To be called 
+     * before processing new commits, e.g. at the start of an update. 
+     */
+    public void refresh() {
+        synchronized (indexLock) {
+            if (commits != null)
+                commits.release();
+            commits = null;
+            tags = null;
+            childrenOf = null;
+        }
+    }
+    
     /**
      * Get a Map <code>{revisionId -> tagname}</code> for all revisions that 
-     * are marked with a tag 
+     * are marked with a tag. The map is built once and kept until 
+     * {@link #refresh()} is called.
      */
     public Map<String, String> allTags() {
-    	Map<String, Ref> all = git.getAllRefs();
-		Map<String, String> result = new HashMap<String, String>();
-		
-		for (String ref : all.keySet()) {
-			if (!ref.contains("/tags/"))
-				continue;
-			String tagname = ref.substring(ref.lastIndexOf('/') + 1);
-			result.put(all.get(ref).getObjectId().getName(), tagname);
-		}
-		
-		return result;
+        synchronized (indexLock) {
+            if (tags != null)
+                return tags;
+
+            Map<String, Ref> all = git.getAllRefs();
+            Map<String, String> result = new HashMap<String, String>();
+
+            for (String ref : all.keySet()) {
+                if (!ref.contains("/tags/"))
+                    continue;
+                String tagname = ref.substring(ref.lastIndexOf('/') + 1);
+                result.put(all.get(ref).getObjectId().getName(), tagname);
+            }
+
+            tags = Collections.unmodifiableMap(result);
+            return tags;
+        }
     }
     
     /**
@@ -466,37 +833,45 @@ public class GitAccessor implements SCMAccessor {
      * 
      * <b>Warning:</b> This method can cause the accessor to use a lot 
      * of memory in very large repositories, as it calculates and 
-     * caches all parent-childrelationships beforehand. 
+     * caches all parent-childrelationships beforehand, until 
+     * {@link #refresh()} is called. 
      * 
      * @throws AccessorException When an error occurs during 
      */
     public String[] getCommitChidren(String revisionId) throws AccessorException {
-    	if (childrenOf == null) {
-            childrenOf = new HashMap<String, List<String>>();
-    		resolveChildren();
-    	}
-    	
-    	Revision[] children = new Revision[childrenOf.get(revisionId).size()];
-    	int i = 0;
-    	for (String childid : childrenOf.get(revisionId)) {
-    		children[i] = getRevision(resolveGitRev(childid), false);
-    		i++;
-    	}
-    	
-    	Arrays.sort(children, children[0]);
-    	
-    	String[] chIds = new String[children.length];
-    	i = 0;
-    	for (Revision r : children) {
-    		chIds[i] = r.getUniqueId();
-    		i++;
-    	}
-    	
-    	return chIds;
+        List<String> childIds;
+        synchronized (indexLock) {
+            if (childrenOf == null) {
+                childrenOf = resolveChildren();
+            }
+            childIds = childrenOf.get(revisionId);
+        }
+        
+        if (childIds == null)
+            return new String[0];
+        
+        RevCommit[] children = new RevCommit[childIds.size()];
+        int i = 0;
+        for (String childid : childIds) {
+            children[i] = resolveGitRev(childid);
+            i++;
+        }
+        
+        Arrays.sort(children, BY_AUTHOR_DATE);
+        
+        String[] chIds = new String[children.length];
+        i = 0;
+        for (RevCommit c : children) {
+            chIds[i] = c.getName();
+            i++;
+        }
+        
+        return chIds;
     }
     
-    private void resolveChildren() throws AccessorException {
+    private Map<String, List<String>> resolveChildren() throws AccessorException {
     	Long start = System.currentTimeMillis();
+    	Map<String, List<String>> children = new HashMap<String, List<String>>();
     	RevWalk rw = new RevWalk(git);
     	try {
     		ObjectId revId = git.resolve(Constants.HEAD);
@@ -506,10 +881,10 @@ public class GitAccessor implements SCMAccessor {
             
             while((c = rw.next()) != null) {
             	for (RevCommit parent : c.getParents()) {
-            		if (!childrenOf.containsKey(parent.getName())) {
-            			childrenOf.put(parent.getName(), new ArrayList<String>());
+            		if (!children.containsKey(parent.getName())) {
+            			children.put(parent.getName(), new ArrayList<String>());
             		}
-            		childrenOf.get(parent.getName()).add(c.getName());
+            		children.get(parent.getName()).add(c.getName());
             	}
             }
     	} catch (Exception e) {
@@ -520,6 +895,7 @@ public class GitAccessor implements SCMAccessor {
     	}
     	Long msec = System.currentTimeMillis() - start;
     	debug("resolveChildren(): " + msec + " msec");
+    	return children;
     }
     
     /* Accessor internal methods*/
@@ -656,21 +1032,171 @@ public class GitAccessor implements SCMAccessor {
         return gitrev;
     }
     
+    /*
+     * Resolve a revision string to a commit. Commits are parsed once, by 
+     * the walk of the commit graph index, and shared afterwards.
+     */
     private RevCommit resolveGitRev(String rev) {
-        RevWalk rw = new RevWalk(git);
-
         try {
             ObjectId obj = git.resolve(rev);
-            RevCommit c = rw.parseCommit(obj);
-            return c;
+            synchronized (indexLock) {
+                if (commits == null)
+                    commits = new RevWalk(git);
+                return commits.parseCommit(obj);
+            }
         } catch (Exception e) {
             warn("Cannot resolve revision: " + rev);
             return null;
-        } finally {
-            rw.release();
         }
     }
     
+    /*
+     * Resolve the commit a revision points to. Unlike isValidRevision(), 
+     * this does not resolve the revision's changed paths.
+     */
+    private RevCommit resolveCommit(Revision r) 
+        throws InvalidProjectRevisionException {
+        if (r == null)
+            throw new InvalidProjectRevisionException("Invalid revision " + r,
+                    getClass());
+
+        RevCommit c = resolveGitRev(r.getUniqueId());
+        if (c == null)
+            throw new InvalidProjectRevisionException(r.getUniqueId(),
+                    getClass());
+        return c;
+    }
+
+    /* 
+     * Find the tree or blob that a path points to in a commit, null if 
+     * the path does not exist. The empty path is the commit's root tree.
+     */
+    private TreeEntry findPath(String path, RevCommit c)
+        throws InvalidRepositoryException {
+        if (path == null || path.isEmpty())
+            return new TreeEntry(path, c.getTree().getId(), FileMode.TREE);
+
+        TreeWalk tw = null;
+        try {
+            tw = TreeWalk.forPath(git, path, c.getTree());
+            if (tw == null)
+                return null;
+            return new TreeEntry(path, tw.getObjectId(0), tw.getFileMode(0));
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    e.getMessage());
+        } finally {
+            if (tw != null) tw.release();
+        }
+    }
+
+    /*
+     * Write blobs under a local directory. Large sets of files are split
+     * among the plug-in's threads, each part with its own object reader,
+     * as reads from the pack files are independent.
+     */
+    private void writeFiles(List<TreeEntry> files, final File localPath)
+        throws InvalidRepositoryException {
+        int threads = Math.min(Runtime.getRuntime().availableProcessors(),
+                1 + files.size() / FILES_PER_THREAD);
+
+        if (threads <= 1) {
+            writeBlobs(files, localPath);
+            return;
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int i = 0; i < threads; i++) {
+            final List<TreeEntry> part = files.subList(
+                    i * files.size() / threads, 
+                    (i + 1) * files.size() / threads);
+            tasks.add(new Callable<Void>() {
+                public Void call() throws InvalidRepositoryException {
+                    writeBlobs(part, localPath);
+                    return null;
+                }
+            });
+        }
+
+        ExecutorService pool = Activator.workers.get();
+        try {
+            for (Future<Void> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InvalidRepositoryException(uri.toString(), 
+                    "Interrupted while writing files to " + localPath);
+        } catch (ExecutionException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    e.getCause().getMessage());
+        }
+    }
+
+    private void writeBlobs(List<TreeEntry> files, File localPath) 
+        throws InvalidRepositoryException {
+        ObjectReader reader = git.newObjectReader();
+        File f = null;
+        try {
+            for (TreeEntry e : files) {
+                f = new File(localPath, e.path);
+                if (f.isDirectory()) {
+                    FileUtils.deleteRecursive(f);
+                } else if (!f.getParentFile().isDirectory()) {
+                    f.getParentFile().mkdirs();
+                }
+
+                OutputStream out = new BufferedOutputStream(
+                        new FileOutputStream(f));
+                try {
+                    reader.open(e.id, Constants.OBJ_BLOB).copyTo(out);
+                } finally {
+                    out.close();
+                }
+                if (e.mode.equals(FileMode.EXECUTABLE_FILE))
+                    f.setExecutable(true);
+            }
+        } catch (IOException e) {
+            throw new InvalidRepositoryException(uri.toString(), 
+                    "Cannot write " + f + ": " + e.getMessage());
+        } finally {
+            reader.release();
+        }
+    }
+
+    /* Delete a file and any directories it leaves empty, up to root */
+    private void deleteFile(File f, File root) {
+        if (f.isDirectory()) {
+            FileUtils.deleteRecursive(f);
+        } else {
+            f.delete();
+        }
+
+        File parent = f.getParentFile();
+        while (parent != null && !parent.equals(root) && parent.delete()) {
+            parent = parent.getParentFile();
+        }
+    }
+
+    private static boolean isUnder(String path, String dir) {
+        if (dir == null || dir.isEmpty())
+            return true;
+        return path.equals(dir) || path.startsWith(dir + "/");
+    }
+
+    private static SCMNodeType toNodeType(FileMode fm) {
+        if (fm.equals(FileMode.REGULAR_FILE) 
+                || fm.equals(FileMode.EXECUTABLE_FILE))
+            return SCMNodeType.FILE;
+        if (fm.equals(FileMode.TREE))
+            return SCMNodeType.DIR;
+        if (fm.equals(FileMode.GITLINK))
+            return SCMNodeType.DIR;
+        if (fm.equals(FileMode.SYMLINK))
+            return SCMNodeType.FILE; //FIXME: Need to track down link target
+        return SCMNodeType.UNKNOWN;
+    }
+
     private String toGitPath(String path) {
         
         if (path == null)
@@ -713,6 +1239,23 @@ public class GitAccessor implements SCMAccessor {
         else 
         	System.err.println("GIT: " + msg);
     }
+
+    /* A path in a tree, with the object and mode it points to */
+    private static class TreeEntry {
+        final String path;
+        final ObjectId id;
+        final FileMode mode;
+
+        TreeEntry(String path, ObjectId id, FileMode mode) {
+            this.path = path;
+            this.id = id;
+            this.mode = mode;
+        }
+
+        boolean isTree() {
+            return mode.equals(FileMode.TREE);
+        }
+    }
 }
 
 // vi: ai nosi sw=4 ts=4 expandtab
@@ -33,14 +33,20 @@ package eu.sqooss.plugins.updater.git;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.plugins.git.Activator;
 import eu.sqooss.plugins.tds.git.GitAccessor;
 import eu.sqooss.service.db.Branch;
 import eu.sqooss.service.db.DBService;
@@ -55,7 +61,7 @@ import eu.sqooss.service.db.Tag;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.tds.AccessorException;
 import eu.sqooss.service.tds.CommitCopyEntry;
-import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogIterator;
 import eu.sqooss.service.tds.InvalidAccessorException;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
@@ -63,6 +69,8 @@ import eu.sqooss.service.tds.Revision;
 import eu.sqooss.service.tds.SCMAccessor;
 import eu.sqooss.service.tds.SCMNodeType;
 import eu.sqooss.service.updater.MetadataUpdater;
+import eu.sqooss.service.updater.PathStateIndex;
+import eu.sqooss.service.updater.PathStateIndex.PathState;
 import eu.sqooss.service.updater.Updater;
 import eu.sqooss.service.updater.UpdaterService.UpdaterStage;
 import eu.sqooss.service.util.FileUtils;
@@ -77,9 +85,13 @@ import eu.sqooss.service.util.Pair;
         stage = UpdaterStage.IMPORT)
 public class GitUpdater implements MetadataUpdater {
     
+    /* Number of revisions prepared ahead of the DB writer, per thread */
+    private static final int PREFETCH_PER_THREAD = 4;
+    
     private StoredProject project;
     private Logger log;
     private GitAccessor git;
+    private PathStateIndex paths;
     private DBService dbs;
     private float progress;
     
@@ -150,6 +162,8 @@ public class GitUpdater implements MetadataUpdater {
 
     public void update() throws Exception {
        
+        //Pick up commits, tags and branches added since the last update
+        git.refresh();
         dbs.getSessionManager().startDBSession();
         project = dbs.getSessionManager().attachObjectToDBSession(project);
         
@@ -187,34 +201,112 @@ public class GitUpdater implements MetadataUpdater {
             return;
         int numRevisions = 0;
 
-        CommitLog commitLog = git.getCommitLog("", from, to);
+        /* Stream the log, instead of loading it all in memory */
+        CommitLogIterator commitLog = git.getCommitLogIterator("", from, to);
         if(!dbs.getSessionManager().isDBSessionActive()) dbs.getSessionManager().startDBSession();
 
-        for (Revision entry : commitLog) {
-        	if (ProjectVersion.getVersionByRevision(project, entry.getUniqueId()) != null) {
-        		info("Skipping processed revision: " + entry.getUniqueId());
-        		continue;
-        	}
-        	
-            ProjectVersion pv = processOneRevision(entry);
-            
-            processCopiedFiles(git, entry, pv, pv.getPreviousVersion());
-            
-            processRevisionFiles(git, entry, pv);
-            
-            replayLog(pv);
-            
-            updateValidUntil(pv, pv.getVersionFiles());
+        paths = new PathStateIndex(project, 
+                ProjectVersion.getLastProjectVersion(project));
+        long start = from.getDate().getTime();
+        long span = to.getDate().getTime() - start;
 
-            if (!dbs.getSessionManager().commitDBSession()) {
-                warn("Intermediate commit failed, failing update");
-                return;
+        /*
+         * Diffing, rename detection and node type lookups only read the 
+         * repository, so the plug-in's threads run them ahead of this thread,
+         * which writes the results to the DB in commit log order.
+         */
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Activator.workers.get();
+        LinkedList<Pair<Revision, Future<Map<String, SCMNodeType>>>> ahead = 
+            new LinkedList<Pair<Revision, Future<Map<String, SCMNodeType>>>>();
+        
+        try {
+            while (true) {
+                /* The log is only read as far as the lookahead window */
+                while (ahead.size() < threads * PREFETCH_PER_THREAD 
+                        && commitLog.hasNext()) {
+                    Revision next = commitLog.next();
+                    if (ProjectVersion.getVersionByRevision(project, next.getUniqueId()) != null) {
+                        info("Skipping processed revision: " + next.getUniqueId());
+                        continue;
+                    }
+                    ahead.add(new Pair<Revision, Future<Map<String, SCMNodeType>>>(
+                            next, pool.submit(prepare(next))));
+                }
+                if (ahead.isEmpty())
+                    break;
+                
+                Pair<Revision, Future<Map<String, SCMNodeType>>> prepared = 
+                    ahead.removeFirst();
+                Revision entry = prepared.first;
+                Map<String, SCMNodeType> nodeTypes = 
+                    waitFor(prepared.second, entry);
+                
+                ProjectVersion pv = processOneRevision(entry);
+                
+                processCopiedFiles(git, entry, pv, pv.getPreviousVersion());
+                
+                processRevisionFiles(git, entry, pv, nodeTypes);
+                
+                replayLog(pv);
+                
+                updateValidUntil(pv, pv.getVersionFiles());
+
+                if (!dbs.getSessionManager().commitDBSession()) {
+                    warn("Intermediate commit failed, failing update");
+                    return;
+                }
+                paths.commit(pv, pv.getVersionFiles());
+                
+                dbs.getSessionManager().startDBSession();
+                numRevisions++;
+                if (span > 0)
+                    progress = (float) (((double)(entry.getDate().getTime() - start) / (double)span) * 100);
             }
-            
-            dbs.getSessionManager().startDBSession();
-            progress = (float) (((double)numRevisions / (double)commitLog.size()) * 100);
-            
-            numRevisions++;
+            info("Processed " + numRevisions + " revisions");
+        } finally {
+            /* The pool is shared, only drop the work of this update */
+            for (Pair<Revision, Future<Map<String, SCMNodeType>>> p : ahead)
+                p.second.cancel(true);
+            commitLog.close();
+        }
+    }
+
+    /*
+     * Compute the changed paths and copies of a revision, along with the 
+     * node type of each changed path. Runs on the prefetch threads.
+     */
+    private Callable<Map<String, SCMNodeType>> prepare(final Revision entry) {
+        return new Callable<Map<String, SCMNodeType>>() {
+            public Map<String, SCMNodeType> call() 
+                throws InvalidRepositoryException {
+                Map<String, SCMNodeType> nodeTypes = 
+                    new HashMap<String, SCMNodeType>();
+                entry.getCopyOperations();
+                for (String chPath : entry.getChangedPaths()) {
+                    nodeTypes.put(chPath, git.getNodeType(chPath, entry));
+                }
+                return nodeTypes;
+            }
+        };
+    }
+    
+    private Map<String, SCMNodeType> waitFor(
+            Future<Map<String, SCMNodeType>> f, Revision entry) 
+        throws InvalidRepositoryException, AccessorException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AccessorException(getClass(), 
+                    "Interrupted while processing revision " 
+                    + entry.getUniqueId());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InvalidRepositoryException)
+                throw (InvalidRepositoryException) e.getCause();
+            throw new AccessorException(getClass(), "Error processing " +
+                    "revision " + entry.getUniqueId() + ": " 
+                    + e.getCause().getMessage());
         }
     }
 
@@ -402,8 +494,8 @@ public class GitUpdater implements MetadataUpdater {
             debug("copyFiles(): Copying " + cce.fromPath() + "->" + cce.toPath());
             if (copyFrom.getIsDirectory()) {
                     
-                Directory from = Directory.getDirectory(cce.fromPath(), false);
-                Directory to = Directory.getDirectory(cce.toPath(), true);
+                Directory from = paths.getDirectory(cce.fromPath(), false);
+                Directory to = paths.getDirectory(cce.toPath(), true);
 
                 /*
                  * Recursively copy contents and mark files as modified
@@ -441,11 +533,14 @@ public class GitUpdater implements MetadataUpdater {
     }
     
     private void processRevisionFiles(SCMAccessor scm, Revision entry,
-            ProjectVersion curVersion) throws InvalidRepositoryException {
+            ProjectVersion curVersion, Map<String, SCMNodeType> nodeTypes) 
+        throws InvalidRepositoryException {
        
         for (String chPath : entry.getChangedPaths()) {
             
-            SCMNodeType t = scm.getNodeType(chPath, entry);
+            SCMNodeType t = nodeTypes.get(chPath);
+            if (t == null)
+                t = scm.getNodeType(chPath, entry);
 
             ProjectFile file = addFile(curVersion, chPath,
                     ProjectFileState.fromPathChangeType(entry.getChangedPathsStatus().get(chPath)), 
@@ -458,7 +553,7 @@ public class GitUpdater implements MetadataUpdater {
              * entry, it may be shared with another project; this case is
              * examined upon entering
              */
-            if (file.isDeleted() && (Directory.getDirectory(chPath, false) != null)) {
+            if (file.isDeleted() && (paths.getDirectory(chPath, false) != null)) {
                 /*
                  * Directories, when they are deleted, do not have type DIR,
                  * but something else. So we need to check on deletes
@@ -613,20 +708,19 @@ public class GitUpdater implements MetadataUpdater {
          * file has been processed before whithin this revision
          * or the previous file version
          */
-        ProjectFile cur = ProjectFile.findFile(project.getId(), fname,
-        		path, version.getRevisionId(), true);
+        PathState cur = paths.get(fPath);
 
         if (cur != null && 
-        	!cur.getProjectVersion().getRevisionId().equals(version.getRevisionId()) &&
-        	!isValidStateTransition(cur.getState(), status)) {
-        	ProjectFileState newstatus = ProjectFileState.fromStatus(invTransitionFix.get(cur.getState().getStatus()));
-        	debug("addFile(): Invalid state transition (" + cur.getState() + 
+        	!cur.getRevisionId().equals(version.getRevisionId()) &&
+        	!isValidStateTransition(cur.getStatus(), status.getStatus())) {
+        	ProjectFileState newstatus = ProjectFileState.fromStatus(invTransitionFix.get(cur.getStatus()));
+        	debug("addFile(): Invalid state transition (" + cur.getStatus() + 
         			"->" + status + ") for path " + fPath + ". Setting " + 
         			"status to " + newstatus);
         	status = newstatus;
         }
         
-        Directory dir = Directory.getDirectory(path, true);
+        Directory dir = paths.getDirectory(path, true);
         pf.setName(fname);
         pf.setDir(dir);
         pf.setState(status);
@@ -638,7 +732,7 @@ public class GitUpdater implements MetadataUpdater {
         
 		if (t == SCMNodeType.UNKNOWN) {
 			if (status.getStatus() == ProjectFileState.STATE_DELETED)
-				decided = (cur.getIsDirectory() == true ? 
+				decided = (cur.isDirectory() == true ? 
 						SCMNodeType.DIR : SCMNodeType.FILE);
 			else 
 				decided = SCMNodeType.DIR;
@@ -654,6 +748,7 @@ public class GitUpdater implements MetadataUpdater {
         
         debug("addFile(): Adding entry " + pf + "(" + decided + ")");
         version.getVersionFiles().add(pf);
+        paths.stage(pf);
 
         return pf;
     }
@@ -667,18 +762,12 @@ public class GitUpdater implements MetadataUpdater {
     	String pathname = FileUtils.dirname(path);
     	String filename = FileUtils.basename(path);
     	
-    	ProjectVersion previous = pv.getPreviousVersion();
-
-        if (previous == null) { // Special case for first version
-            previous = pv;
-        }
-        
-    	ProjectFile prev = ProjectFile.findFile(project.getId(),
-    			filename, pathname, previous.getRevisionId());
+    	/* State as of the previous version, deleted paths count as missing */
+    	PathState prev = paths.getCommitted(path);
     	
     	ProjectFile pf = new ProjectFile(pv);
     	
-    	if (prev == null) {
+    	if (prev == null || prev.isDeleted()) {
             pf.setState(ProjectFileState.added());
             //Recursion reached the root directory
             if (!(pathname.equals("/") && filename.equals(""))) 
@@ -689,7 +778,7 @@ public class GitUpdater implements MetadataUpdater {
     	}
 
         pf.setDirectory(true);
-        pf.setDir(Directory.getDirectory(pathname, true));
+        pf.setDir(paths.getDirectory(pathname, true));
         pf.setName(filename);
         pf.setValidFrom(pv);
         
@@ -736,7 +825,7 @@ public class GitUpdater implements MetadataUpdater {
         
         debug("Deleting directory " + pf.getFileName() + " ID "
                 + pf.getId());
-        Directory d = Directory.getDirectory(pf.getFileName(), false);
+        Directory d = paths.getDirectory(pf.getFileName(), false);
         if (d == null) {
             warn("Directory entry " + pf.getFileName() + " in project "
                     + pf.getProjectVersion().getProject().getName()
@@ -763,10 +852,10 @@ public class GitUpdater implements MetadataUpdater {
      * Checks whether file state transitions are valid, at least for what 
      * Alitheia Core expects.
      */
-    private boolean isValidStateTransition(ProjectFileState a, ProjectFileState b) {
+    private boolean isValidStateTransition(int a, int b) {
     	for (Pair<Integer, Integer> p: validStateTransitions) {
-    		if (p.first == a.getStatus())
-    			if (p.second == b.getStatus())
+    		if (p.first == a)
+    			if (p.second == b)
     				return true;
     	}
     	return false;
@@ -787,8 +876,8 @@ public class GitUpdater implements MetadataUpdater {
         List<ProjectFile> fromPF = fromVersion.getFiles(from, ProjectVersion.MASK_DIRECTORIES);
         
         for (ProjectFile f : fromPF) {
-            handleDirCopy(pv, fromVersion, Directory.getDirectory(f.getFileName(), false), 
-            		Directory.getDirectory(to.getPath() + "/" + f.getName(), true), f);
+            handleDirCopy(pv, fromVersion, paths.getDirectory(f.getFileName(), false), 
+            		paths.getDirectory(to.getPath() + "/" + f.getName(), true), f);
         }
         
         fromPF = fromVersion.getFiles(from, ProjectVersion.MASK_FILES);
@@ -1,5 +1,6 @@
 package eu.sqooss.plugins.git.test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
@@ -7,10 +8,16 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
@@ -34,11 +41,15 @@ import eu.sqooss.plugins.tds.git.GitRevision;
 import eu.sqooss.service.tds.AccessorException;
 import eu.sqooss.service.tds.CommitCopyEntry;
 import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogIterator;
+import eu.sqooss.service.tds.Diff;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
 import eu.sqooss.service.tds.PathChangeType;
 import eu.sqooss.service.tds.Revision;
+import eu.sqooss.service.tds.SCMNode;
 import eu.sqooss.service.tds.SCMNodeType;
+import eu.sqooss.service.util.FileUtils;
 
 public class TestGitAccessor extends TestGitSetup {
     
@@ -264,6 +275,35 @@ public class TestGitAccessor extends TestGitSetup {
         assertNotNull(l);
     }
 
+    @Test
+    public void testGetCommitLogIterator() 
+    throws InvalidProjectRevisionException, InvalidRepositoryException {
+        Revision r1 = git.newRevision("6683463ed6b2da9eed309c305806f9393d1ae728");
+        Revision r2 = git.newRevision("839a7a06f35bf8cd563a41d6db97f453ab108129");
+        
+        //Same entries, in the same order, as the materialised log
+        CommitLog l = git.getCommitLog("", r1, r2);
+        CommitLogIterator i = git.getCommitLogIterator("", r1, r2);
+        for (Revision r : l) {
+            assertTrue(i.hasNext());
+            assertEquals(r.getUniqueId(), i.next().getUniqueId());
+        }
+        assertFalse(i.hasNext());
+        i.close();
+        
+        //Single entry when the second argument is null
+        r1 = git.newRevision("98327e5891471e7baceda5c6543a387f0dd21d3a");
+        i = git.getCommitLogIterator("", r1, null);
+        assertTrue(i.hasNext());
+        assertEquals("98327e5891471e7baceda5c6543a387f0dd21d3a", i.next().getUniqueId());
+        assertFalse(i.hasNext());
+        
+        //Closed iterators return no more entries
+        i = git.getCommitLogIterator("", r1, r2);
+        i.close();
+        assertFalse(i.hasNext());
+    }
+
     @Test
     public void testGetNodeType() throws InvalidRepositoryException, MissingObjectException, 
     IncorrectObjectTypeException, CorruptObjectException, IOException, URISyntaxException {
@@ -351,28 +391,106 @@ public class TestGitAccessor extends TestGitSetup {
     }
 
     @Test
-    public void testGetCheckout() {
-        fail("Not yet implemented");
+    public void testRefresh() throws AccessorException, InvalidRepositoryException {
+        Map<String, String> tags = git.allTags();
+        assertTrue(tags == git.allTags());
+        String[] children = git.getCommitChidren("6683463ed6b2da9eed309c305806f9393d1ae728");
+        
+        git.refresh();
+        assertEquals(tags, git.allTags());
+        assertArrayEquals(children, 
+                git.getCommitChidren("6683463ed6b2da9eed309c305806f9393d1ae728"));
+        
+        //HEAD has no children
+        assertEquals(0, git.getCommitChidren(
+                git.getHeadRevision().getUniqueId()).length);
     }
 
     @Test
-    public void testUpdateCheckout() {
-        fail("Not yet implemented");
+    public void testGetCheckout() throws Exception {
+        Revision r = git.getFirstRevision();
+        File co = tempDir("checkout");
+        try {
+            git.getCheckout("/", r, co);
+            assertEquals(11, co.list().length);
+            assertArrayEquals(fileContents("/README", r), 
+                    readFile(new File(co, "README")));
+        } finally {
+            FileUtils.deleteRecursive(co);
+        }
+        
+        //Checkout of a subdirectory
+        r = git.newRevision("33a59fd07d8d75e58a5b1edbcc3c5798c98aa8bf");
+        co = tempDir("checkout");
+        try {
+            git.getCheckout("/contrib/colordiff", r, co);
+            assertArrayEquals(fileContents("/contrib/colordiff/README", r), 
+                    readFile(new File(co, "README")));
+        } finally {
+            FileUtils.deleteRecursive(co);
+        }
     }
 
     @Test
-    public void testGetFileStringRevisionFile() {
-        fail("Not yet implemented");
+    public void testUpdateCheckout() throws Exception {
+        Revision r1 = git.getFirstRevision();
+        Revision r2 = git.getNextRevision(r1);
+        File updated = tempDir("update");
+        File fresh = tempDir("fresh");
+        try {
+            git.getCheckout("/", r1, updated);
+            git.updateCheckout("/", r1, r2, updated);
+            git.getCheckout("/", r2, fresh);
+            assertSameTree(fresh, updated);
+        } finally {
+            FileUtils.deleteRecursive(updated);
+            FileUtils.deleteRecursive(fresh);
+        }
     }
 
     @Test
-    public void testGetFileStringRevisionOutputStream() {
-        fail("Not yet implemented");
+    public void testGetFileStringRevisionFile() throws Exception {
+        Revision r = git.getFirstRevision();
+        File dir = tempDir("file");
+        try {
+            File f = new File(dir, "README");
+            git.getFile("/README", r, f);
+            assertArrayEquals(fileContents("/README", r), readFile(f));
+        } finally {
+            FileUtils.deleteRecursive(dir);
+        }
     }
 
     @Test
-    public void testGetDiff() {
-        fail("Not yet implemented");
+    public void testGetFileStringRevisionOutputStream() throws Exception {
+        Revision r = git.getFirstRevision();
+        String readme = new String(fileContents("/README", r));
+        assertTrue(readme.contains("GIT - the stupid content tracker"));
+        
+        try {
+            fileContents("/alitheia/core/test", r);
+            fail("Expected FileNotFoundException");
+        } catch (FileNotFoundException e) {}
+    }
+
+    @Test
+    public void testGetDiff() throws Exception {
+        Revision r1 = git.getFirstRevision();
+        Revision r2 = git.getNextRevision(r1);
+        
+        Diff d = git.getDiff("/", r1, r2);
+        assertNotNull(d);
+        assertFalse(d.getChangedPaths().isEmpty());
+        assertTrue(r2.getChangedPaths().containsAll(d.getChangedPaths()));
+        for (String path : d.getChangedPaths()) {
+            assertFalse(d.getDiffChunks().get(path).isEmpty());
+        }
+        
+        //Diff of a single file
+        String path = d.getChangedPaths().iterator().next();
+        d = git.getDiff(path, r1, r2);
+        assertEquals(1, d.getChangedPaths().size());
+        assertTrue(d.getChangedPaths().contains(path));
     }
 
     @Test
@@ -386,13 +504,40 @@ public class TestGitAccessor extends TestGitSetup {
     }
 
     @Test
-    public void testListDirectory() {
-        fail("Not yet implemented");
+    public void testListDirectory() throws Exception {
+        Revision r = git.getFirstRevision();
+        List<SCMNode> nodes = git.listDirectory(git.getNode("/", r));
+        assertEquals(11, nodes.size());
+        for (SCMNode n : nodes) {
+            assertEquals(SCMNodeType.FILE, n.getType());
+        }
+        
+        r = git.newRevision("33a59fd07d8d75e58a5b1edbcc3c5798c98aa8bf");
+        nodes = git.listDirectory(git.getNode("/compat", r));
+        assertFalse(nodes.isEmpty());
+        for (SCMNode n : nodes) {
+            assertTrue(n.getPath().startsWith("/compat/"));
+        }
+        
+        //Listing a file returns the file itself
+        SCMNode file = git.getNode("/contrib/colordiff/README", r);
+        nodes = git.listDirectory(file);
+        assertEquals(1, nodes.size());
+        assertEquals(file.getPath(), nodes.get(0).getPath());
     }
 
     @Test
-    public void testGetNode() {
-        fail("Not yet implemented");
+    public void testGetNode() throws Exception {
+        Revision r = git.newRevision("33a59fd07d8d75e58a5b1edbcc3c5798c98aa8bf");
+        SCMNode n = git.getNode("/contrib/colordiff/README", r);
+        assertNotNull(n);
+        assertEquals(SCMNodeType.FILE, n.getType());
+        
+        n = git.getNode("/compat", r);
+        assertNotNull(n);
+        assertEquals(SCMNodeType.DIR, n.getType());
+        
+        assertNull(git.getNode("/alitheia/core/test", r));
     }
 
     @Test
@@ -404,4 +549,45 @@ public class TestGitAccessor extends TestGitSetup {
     public void testGetNodeAnnotations() {
         fail("Not yet implemented");
     }
+    
+    private static byte[] fileContents(String path, Revision r) 
+    throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        git.getFile(path, r, out);
+        return out.toByteArray();
+    }
+    
+    private static byte[] readFile(File f) throws IOException {
+        byte[] contents = new byte[(int) f.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+            in.readFully(contents);
+        } finally {
+            in.close();
+        }
+        return contents;
+    }
+    
+    private static File tempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+    
+    private static void assertSameTree(File expected, File actual) 
+    throws IOException {
+        String[] e = expected.list(), a = actual.list();
+        Arrays.sort(e);
+        Arrays.sort(a);
+        assertArrayEquals(e, a);
+        for (String name : e) {
+            File ef = new File(expected, name), af = new File(actual, name);
+            assertEquals(ef.isDirectory(), af.isDirectory());
+            if (ef.isDirectory())
+                assertSameTree(ef, af);
+            else 
+                assertArrayEquals(readFile(ef), readFile(af));
+        }
+    }
 }
@@ -6,9 +6,13 @@ import org.osgi.framework.BundleContext;
 import eu.sqooss.core.AlitheiaCore;
 
 import eu.sqooss.service.updater.UpdaterService;
+import eu.sqooss.service.util.NamedThreadPool;
 
 public class Activator implements BundleActivator {
 
+    /** Threads that parse the files of a version */
+    static final NamedThreadPool parsers = new NamedThreadPool("Java parser");
+
     public void start(BundleContext bc) throws Exception {
         
         /*
@@ -21,6 +25,7 @@ public class Activator implements BundleActivator {
     public void stop(BundleContext context) throws Exception {
         UpdaterService us = AlitheiaCore.getInstance().getUpdater();
         us.unregisterUpdaterService(JavaUpdater.class);
+        parsers.shutdown();
     }
 }
 
@@ -1,25 +1,30 @@
 package eu.sqooss.plugins.javaparser;
 
 import java.io.FileNotFoundException;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-import org.antlr.runtime.ANTLRInputStream;
-import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.tree.Tree;
 
 import eu.sqooss.parsers.java.ASTWalker;
 import eu.sqooss.parsers.java.CodeFragment;
 import eu.sqooss.parsers.java.EntityExtractor;
-import eu.sqooss.parsers.java.JavaTreeLexer;
-import eu.sqooss.parsers.java.JavaTreeParser;
-import eu.sqooss.parsers.java.SpanningNodeAdaptor;
+import eu.sqooss.parsers.java.ParseTreeCache;
 
 import eu.sqooss.core.AlitheiaCore;
+import eu.sqooss.service.db.DAObject;
 import eu.sqooss.service.db.DBService;
 import eu.sqooss.service.db.EncapsulationUnit;
 import eu.sqooss.service.db.ExecutionUnit;
@@ -28,7 +33,6 @@ import eu.sqooss.service.db.NameSpace;
 import eu.sqooss.service.db.ProjectFile;
 import eu.sqooss.service.db.ProjectVersion;
 import eu.sqooss.service.db.StoredProject;
-import eu.sqooss.service.fds.FDSService;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.scheduler.Job;
 import eu.sqooss.service.tds.Diff;
@@ -37,6 +41,7 @@ import eu.sqooss.service.tds.InvalidAccessorException;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
 import eu.sqooss.service.tds.SCMAccessor;
+import eu.sqooss.service.util.Pair;
 
 public class JavaUpdaterJob extends Job {
 
@@ -46,6 +51,17 @@ public class JavaUpdaterJob extends Job {
     DBService db;
     float progress = 0;
     Pattern functionname = Pattern.compile("^.*::([a-zA-Z0-9:\\[\\]\\,\\ ]*)$");
+
+    /* Files parsed ahead of the DB writer, per thread */
+    private static final int PREFETCH_PER_THREAD = 4;
+
+    /* The classes and methods of a file, as extracted from its parse tree */
+    private static class ParsedFile {
+        String packageName;
+        Map<String, Deque<CodeFragment>> entities;
+        int lines;
+        long parseTime;
+    }
     
     public JavaUpdaterJob(StoredProject sp, 
             ProjectVersion pv, Logger log) {
@@ -66,77 +82,89 @@ public class JavaUpdaterJob extends Job {
         sp = db.getSessionManager().attachObjectToDBSession(sp);
         pv = db.getSessionManager().attachObjectToDBSession(pv);
         Pattern p = Pattern.compile(".*\\.java$");
-        FDSService fds = AlitheiaCore.getInstance().getFDSService();
 
         debug("Parsing files in version ", pv.toString());
         Set<ProjectFile> files = pv.getVersionFiles(p);
-        int processed = 0;
         
-        for (ProjectFile pf : files) {
-            if (pf.getIsDirectory() || pf.isDeleted())
-                continue;
-            debug("Parsing file ", pf.toString());
-            processed++;
-            progress = (float) (((double)processed / (double)files.size()) * 100);
-            
-            if (pf.isDeleted() || pf.getIsDirectory() == true)
-                continue;
+        /*
+         * Lexing, parsing and walking the trees does not touch the DB, so 
+         * the plug-in's threads do it while this thread reads the file 
+         * contents. The results are then written to the DB in one batch.
+         */
+        ExecutorService pool = Activator.parsers.get();
+        int threads = Runtime.getRuntime().availableProcessors();
+        LinkedList<Pair<ProjectFile, Future<ParsedFile>>> ahead = 
+            new LinkedList<Pair<ProjectFile, Future<ParsedFile>>>();
+        List<Pair<ProjectFile, ParsedFile>> parsed = 
+            new ArrayList<Pair<ProjectFile, ParsedFile>>();
+        Long ts = System.currentTimeMillis();
+        
+        try {
+            for (ProjectFile pf : files) {
+                if (pf.getIsDirectory() || pf.isDeleted())
+                    continue;
 
-            Long ts = System.currentTimeMillis();
-            InputStream is = fds.getFileContents(pf);
+                byte[] contents = ParseTreeCache.getContents(pf);
+                if (contents == null) {
+                    err("Null contents for file ", pf.toString());
+                    continue;
+                }
+                ahead.add(new Pair<ProjectFile, Future<ParsedFile>>(pf,
+                        pool.submit(parse(contents))));
 
-            if (is == null) {
-                err("Null contents for file ", pf.toString());
-                continue;
+                /* Bound the number of file contents held in memory */
+                while (ahead.size() >= threads * PREFETCH_PER_THREAD)
+                    collect(ahead.removeFirst(), parsed, files.size());
             }
-            // Parse the input file
-            Tree t = null;
-            JavaTreeLexer lexer = null;
-            try {
-                ANTLRInputStream input = new ANTLRInputStream(is);
-                lexer = new JavaTreeLexer(input);
-                CommonTokenStream tokens = new CommonTokenStream(lexer);
-                JavaTreeParser parser = new JavaTreeParser(tokens);
-                SpanningNodeAdaptor adaptor = new SpanningNodeAdaptor();
-                parser.setTreeAdaptor(adaptor);
+            while (!ahead.isEmpty())
+                collect(ahead.removeFirst(), parsed, files.size());
+        } finally {
+            //Left over if collecting failed
+            for (Pair<ProjectFile, Future<ParsedFile>> f : ahead)
+                f.second.cancel(true);
+        }
+        
+        long lines = 0;
+        for (Pair<ProjectFile, ParsedFile> result : parsed)
+            lines += result.second.lines;
+        long time = System.currentTimeMillis() - ts;
+        info("Parsed ", String.valueOf(parsed.size()), " files, ", 
+                String.valueOf(lines), " lines in ", String.valueOf(time), 
+                " ms (", String.valueOf(lines * 1000 / Math.max(time, 1)), 
+                " lines/sec)");
 
-                JavaTreeParser.compilationUnit_return result =
-                        parser.compilationUnit();
-                t = (Tree) result.getTree();
-            } catch (Exception e) {
-                warn("Cannot parse file ", pf.toString(), ": ", e.getMessage());
-            } finally {
+        Map<String, NameSpace> namespaces = new HashMap<String, NameSpace>();
+        List<DAObject> records = new ArrayList<DAObject>();
+        
+        for (Pair<ProjectFile, ParsedFile> result : parsed) {
+            ProjectFile pf = result.first;
+            ParsedFile parsedFile = result.second;
 
-                debug("parseSource(", pf.toString() ,"): ", String.valueOf(System.currentTimeMillis() - ts),
-                        " ms, lines: ", String.valueOf(lexer.getLine()));
+            NameSpace ns = namespaces.get(parsedFile.packageName);
+            if (ns == null) {
+                ns = NameSpace.findByVersionName(pf.getProjectVersion(), 
+                        parsedFile.packageName);
             }
-
-            // Walk resulting tree
-            ASTWalker walker = new ASTWalker();
-            EntityExtractor ee = new EntityExtractor();
-            walker.addProcessor(ee);
-            walker.walk(t);
-
-            NameSpace ns = NameSpace.findByVersionName(pf.getProjectVersion(), 
-                    ee.getPackageName());
             
             if (ns == null) {
                 ns = new NameSpace();
-                ns.setName(ee.getPackageName());
+                ns.setName(parsedFile.packageName);
                 ns.setChangeVersion(pf.getProjectVersion());
                 ns.setLang(Language.JAVA);
-                db.getQueryInterface().addRecord(ns);
+                records.add(ns);
             }
+            namespaces.put(parsedFile.packageName, ns);
             
-            for (String clazz : ee.getResults().keySet()) {
-                List<String> changedMethods = getChangedMethods(ee, pf, clazz);
+            Set<String> changedMethods = 
+                getChangedMethods(parsedFile.entities, pf);
+            for (String clazz : parsedFile.entities.keySet()) {
                 EncapsulationUnit eu = new EncapsulationUnit(pf);
                 eu.setName(clazz);
                 eu.setNamespace(ns);
                 eu.setFile(pf);
-                db.getQueryInterface().addRecord(eu);
+                records.add(eu);
 
-                for (CodeFragment fragment : ee.getResults().get(clazz)) {
+                for (CodeFragment fragment : parsedFile.entities.get(clazz)) {
                     ExecutionUnit exu = new ExecutionUnit(eu);
                     exu.setName(getMethodName(fragment, pf));
                     exu.setFile(pf);
@@ -148,37 +176,104 @@ public class JavaUpdaterJob extends Job {
                                 pf.getProjectVersion().toString());
                         exu.setChanged(true);
                     }
-                    db.getQueryInterface().addRecord(exu);
+                    records.add(exu);
                 }
             }
         }
+
+        //Records are in creation order, so parents are saved first
+        if (!db.getQueryInterface().addRecords(records)) {
+            throw new Exception("Failed to store the parsing results for " 
+                    + pv);
+        }
         db.getSessionManager().commitDBSession();
     }
     
-    private List<String> getChangedMethods(EntityExtractor ee, ProjectFile pf, 
-            String clazz) 
+    /*
+     * Parse a file and extract its classes and methods. Runs on the pool 
+     * threads, so it must not access the DB.
+     */
+    private Callable<ParsedFile> parse(final byte[] contents) {
+        return new Callable<ParsedFile>() {
+            public ParsedFile call() throws Exception {
+                long ts = System.currentTimeMillis();
+                // Parse the input file, or get the tree of an identical one
+                Tree t = ParseTreeCache.getTree(contents);
+
+                // Walk resulting tree
+                ASTWalker walker = new ASTWalker();
+                EntityExtractor ee = new EntityExtractor();
+                walker.addProcessor(ee);
+                walker.walk(t);
+
+                ParsedFile result = new ParsedFile();
+                result.packageName = ee.getPackageName();
+                result.entities = ee.getResults();
+                result.lines = countLines(contents);
+                result.parseTime = System.currentTimeMillis() - ts;
+                return result;
+            }
+        };
+    }
+    
+    private void collect(Pair<ProjectFile, Future<ParsedFile>> f,
+            List<Pair<ProjectFile, ParsedFile>> parsed, int total) 
+        throws InterruptedException {
+        ProjectFile pf = f.first;
+        try {
+            ParsedFile result = f.second.get();
+            debug("parseSource(", pf.toString() ,"): ", 
+                    String.valueOf(result.parseTime), " ms, lines: ", 
+                    String.valueOf(result.lines), ", ",
+                    String.valueOf(result.lines * 1000 / Math.max(result.parseTime, 1)),
+                    " lines/sec");
+            parsed.add(new Pair<ProjectFile, ParsedFile>(pf, result));
+        } catch (ExecutionException e) {
+            warn("Cannot parse file ", pf.toString(), ": ", 
+                    e.getCause().getMessage());
+        }
+        progress = (float) (((double)parsed.size() / (double)total) * 100);
+    }
+    
+    private static int countLines(byte[] contents) {
+        int lines = 0;
+        for (byte b : contents) {
+            if (b == '\n')
+                lines++;
+        }
+        return lines;
+    }
+    
+    /*
+     * The methods of all classes in a file that changed in its version.
+     * The file's diff is only fetched once.
+     */
+    private Set<String> getChangedMethods(
+            Map<String, Deque<CodeFragment>> entities, ProjectFile pf) 
         throws InvalidAccessorException, InvalidProjectRevisionException, 
                InvalidRepositoryException, FileNotFoundException {
         Long ts = System.currentTimeMillis();
-        List<String> changedMethods = new ArrayList<String>();
+        Set<String> changedMethods = new HashSet<String>();
         ProjectFile prev = pf.getPreviousFileVersion();
         
         if (prev == null) {
             if (!pf.isAdded())
                 warn("Cannot find previous version for file ", pf.toString());
                 
-            for (CodeFragment method : ee.getResults().get(clazz)) {
-                
-                if (method.getFullyQualifiedName() == null) {
-                    warn("Name from fragment [" + method.getStartLine() + ","
-                            + method.getEndLine() + "] in file: " + pf + " is null");
-                    continue; //TODO: This is a bug
+            for (Deque<CodeFragment> fragments : entities.values()) {
+                for (CodeFragment method : fragments) {
+
+                    if (method.getFullyQualifiedName() == null) {
+                        warn("Name from fragment [" + method.getStartLine() + ","
+                                + method.getEndLine() + "] in file: " + pf + " is null");
+                        continue; //TODO: This is a bug
+                    }
+
+                    if (!method.getFullyQualifiedName().contains("::"))
+                        continue; //Class fragment
+
+                    changedMethods.add(method.getFullyQualifiedName());
                 }
-                
-                if (!method.getFullyQualifiedName().contains("::"))
-                    continue; //Class fragment
-            
-                changedMethods.add(method.getFullyQualifiedName());
             }
             return changedMethods;
         }
@@ -186,25 +281,28 @@ public class JavaUpdaterJob extends Job {
         SCMAccessor scm = AlitheiaCore.getInstance().getTDSService().getAccessor(
                 pf.getProjectVersion().getProject().getId()).getSCMAccessor();
         
+        //Only the changed line ranges are needed, not the diff text
         Diff diff = scm.getDiff(pf.getFileName(),
                 scm.newRevision(prev.getProjectVersion().getRevisionId()),
-                scm.newRevision(pf.getProjectVersion().getRevisionId()));
+                scm.newRevision(pf.getProjectVersion().getRevisionId()), false);
 
         for (DiffChunk d : diff.getDiffChunks().get(pf.getFileName())) {
-            for (CodeFragment fragment : ee.getResults().get(clazz)) {
+            for (Deque<CodeFragment> fragments : entities.values()) {
+                for (CodeFragment fragment : fragments) {
 
-                if (fragment.getFullyQualifiedName() == null) {
-                    warn("Name from fragment [" + fragment.getStartLine() + ","
-                            + fragment.getEndLine() + "] in file: " + pf + " is null");
-                    continue; //TODO: This is a bug
-                }
-                
-                if (!fragment.getFullyQualifiedName().contains("::"))
-                    continue; // Class fragment
+                    if (fragment.getFullyQualifiedName() == null) {
+                        warn("Name from fragment [" + fragment.getStartLine() + ","
+                                + fragment.getEndLine() + "] in file: " + pf + " is null");
+                        continue; //TODO: This is a bug
+                    }
 
-                if (d.getTargetStartLine() > fragment.getStartLine()
-                        && d.getTargetStartLine() < fragment.getEndLine()) {
-                    changedMethods.add(fragment.getFullyQualifiedName());
+                    if (!fragment.getFullyQualifiedName().contains("::"))
+                        continue; // Class fragment
+
+                    if (d.getTargetStartLine() > fragment.getStartLine()
+                            && d.getTargetStartLine() < fragment.getEndLine()) {
+                        changedMethods.add(fragment.getFullyQualifiedName());
+                    }
                 }
             }
         }
@@ -77,6 +77,11 @@ public class MailMessageJob extends Job{
         return 3;
     }
 
+    @Override
+    public Workload workload() {
+        return Workload.IO;
+    }
+
     @Override
     protected void run() throws Exception {
         
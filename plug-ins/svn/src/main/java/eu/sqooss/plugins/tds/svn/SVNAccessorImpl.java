@@ -33,7 +33,6 @@
 
 package eu.sqooss.plugins.tds.svn;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -47,13 +46,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Vector;
 
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNDirEntry;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNLogEntry;
 import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNProperty;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.SVNURL;
@@ -75,8 +78,10 @@ import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.tds.AccessorException;
 import eu.sqooss.service.tds.AnnotatedLine;
 import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogIterator;
 import eu.sqooss.service.tds.Diff;
 import eu.sqooss.service.tds.DiffFactory;
+import eu.sqooss.service.tds.DiffOutputStream;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
 import eu.sqooss.service.tds.PathChangeType;
@@ -93,6 +98,9 @@ public class SVNAccessorImpl implements SCMAccessor {
     private Logger logger = null;
 
     private static List<URI> supportedSchemes;
+
+    /* Number of log entries retrieved at once by commit log iterators */
+    private static final int LOG_BATCH_SIZE = 200;
     
     static {
         // Initialize access methods for all the repo types
@@ -550,8 +558,12 @@ public class SVNAccessorImpl implements SCMAccessor {
         }
     }
 
-    /**{@inheritDoc}*/
-    public void getFile(String repoPath, Revision revision, OutputStream stream)
+    /**
+     * {@inheritDoc}
+     * SVNKit repository connections are not thread safe, so requests for
+     * files of the same project are serialized.
+     */
+    public synchronized void getFile(String repoPath, Revision revision, OutputStream stream)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
                FileNotFoundException {
@@ -609,6 +621,31 @@ public class SVNAccessorImpl implements SCMAccessor {
         }
     }
 
+    /**{@inheritDoc}*/
+    public synchronized String getContentId(String repoPath, Revision revision)
+        throws InvalidRepositoryException {
+        if (svnRepository == null) {
+            connectToRepository();
+        }
+
+        SVNProjectRevision svnrev = resolveRevision(revision);
+        if (svnrev == null) {
+            return null;
+        }
+
+        /* Only fetch the file properties, which include its MD5 checksum */
+        try {
+            SVNProperties props = new SVNProperties();
+            svnRepository.getFile(repoPath, svnrev.getSVNRevision(), props,
+                    null);
+            return props.getStringValue(SVNProperty.CHECKSUM);
+        } catch (SVNException e) {
+            logger.debug(projectname + ": No checksum for " + repoPath + "@"
+                    + revision.getUniqueId() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
     /**{@inheritDoc}*/
     public void getFile(String repoPath,
             Revision revision, File localPath)
@@ -629,6 +666,23 @@ public class SVNAccessorImpl implements SCMAccessor {
 
     /**{@inheritDoc}*/
     public CommitLog getCommitLog(String repoPath, Revision r1, Revision r2)
+        throws InvalidProjectRevisionException,
+               InvalidRepositoryException {
+        CommitLogIterator i = getCommitLogIterator(repoPath, r1, r2);
+        SVNCommitLogImpl result = new SVNCommitLogImpl();
+        try {
+            while (i.hasNext()) {
+                result.getEntries().add(i.next());
+            }
+        } finally {
+            i.close();
+        }
+        return result;
+    }
+
+    /**{@inheritDoc}*/
+    public CommitLogIterator getCommitLogIterator(String repoPath, 
+            Revision r1, Revision r2)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException {
         if (svnRepository == null) {
@@ -656,21 +710,76 @@ public class SVNAccessorImpl implements SCMAccessor {
             logger.debug("End revision for log " + r2);
         }
 
-        List<SVNLogEntry> l = getSVNLog(repoPath, revstart.getSVNRevision(), 
+        return new SVNCommitLogIterator(repoPath, revstart.getSVNRevision(), 
                 revend.getSVNRevision());
-        
-        Iterator<SVNLogEntry> i = l.iterator();
-        SVNCommitLogImpl result = new SVNCommitLogImpl();
-        while (i.hasNext()) {
-            SVNLogEntry entry = i.next();
-            result.getEntries().add(new SVNProjectRevision(entry, ""));
+    }
+
+    /*
+     * Retrieves a log from the repository in batches of LOG_BATCH_SIZE
+     * entries, the next batch being requested when the previous one 
+     * has been consumed.
+     */
+    private class SVNCommitLogIterator implements CommitLogIterator {
+        private String repoPath;
+        private long next;
+        private long end;
+        private boolean ascending;
+        private LinkedList<SVNLogEntry> batch = new LinkedList<SVNLogEntry>();
+
+        SVNCommitLogIterator(String repoPath, long start, long end) {
+            this.repoPath = repoPath;
+            this.next = start;
+            this.end = end;
+            this.ascending = (start <= end);
+        }
+
+        public boolean hasNext() throws InvalidRepositoryException {
+            if (batch.isEmpty() && (ascending ? next <= end : next >= end)) {
+                try {
+                    svnRepository.log(new String[] { repoPath }, next, end,
+                            true, true, LOG_BATCH_SIZE, 
+                            new ISVNLogEntryHandler() {
+                        public void handleLogEntry(SVNLogEntry e) {
+                            batch.add(e);
+                        }
+                    });
+                } catch (SVNException e) {
+                    throw new InvalidRepositoryException(url, e.getMessage());
+                }
+                
+                if (batch.isEmpty()) {
+                    close();
+                } else {
+                    long last = batch.getLast().getRevision();
+                    next = ascending ? last + 1 : last - 1;
+                }
+            }
+            return !batch.isEmpty();
+        }
+
+        public Revision next() throws InvalidRepositoryException {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return new SVNProjectRevision(batch.removeFirst(), "");
+        }
+
+        public void close() {
+            batch.clear();
+            next = ascending ? end + 1 : end - 1;
         }
-        
-        return result;
     }
 
     /**{@inheritDoc}*/
     public Diff getDiff(String repoPath, Revision r1, Revision r2 )
+        throws InvalidProjectRevisionException,
+               InvalidRepositoryException,
+               FileNotFoundException {
+        return getDiff(repoPath, r1, r2, true);
+    }
+
+    /**{@inheritDoc}*/
+    public Diff getDiff(String repoPath, Revision r1, Revision r2, 
+            boolean keepText)
         throws InvalidProjectRevisionException,
                InvalidRepositoryException,
                FileNotFoundException {
@@ -719,7 +828,10 @@ public class SVNAccessorImpl implements SCMAccessor {
 
         try {
             SVNDiffClient d = new SVNDiffClient(svnRepository.getAuthenticationManager(),null);
-            ByteArrayOutputStream diff = new ByteArrayOutputStream();
+            //Parse the diff while SVNKit produces it
+            DiffOutputStream diff = DiffFactory.getInstance().newUnifiedDiffStream(
+                    (SVNProjectRevision)r1, (SVNProjectRevision)r2, 
+                    FileUtils.dirname(repoPath), keepText);
             SVNURL u = svnRepository.getLocation().appendPath(repoPath,true);
             d.doDiff(u,
                 SVNRevision.create(revstart),
@@ -728,11 +840,7 @@ public class SVNAccessorImpl implements SCMAccessor {
                 true,
                 false,
                 diff);
-            // Store the diff
-            Diff theDiff = DiffFactory.getInstance().doUnifiedDiff((SVNProjectRevision)r1, 
-            		(SVNProjectRevision)r2, FileUtils.dirname(repoPath), diff.toString());
-           
-            return theDiff;
+            return diff.getDiff();
         } catch (SVNException e) {
             logger.warn(e.getMessage());
             throw new InvalidRepositoryException(url,e.getMessage());
@@ -39,8 +39,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.collections.LRUMap;
-
 import eu.sqooss.core.AlitheiaCore;
 import eu.sqooss.service.db.Branch;
 import eu.sqooss.service.db.DBService;
@@ -55,7 +53,7 @@ import eu.sqooss.service.db.ConfigOption;
 import eu.sqooss.service.db.Tag;
 import eu.sqooss.service.logging.Logger;
 import eu.sqooss.service.tds.CommitCopyEntry;
-import eu.sqooss.service.tds.CommitLog;
+import eu.sqooss.service.tds.CommitLogIterator;
 import eu.sqooss.service.tds.InvalidProjectRevisionException;
 import eu.sqooss.service.tds.InvalidRepositoryException;
 import eu.sqooss.service.tds.PathChangeType;
@@ -65,6 +63,8 @@ import eu.sqooss.service.tds.SCMNode;
 import eu.sqooss.service.tds.SCMNodeType;
 import eu.sqooss.service.tds.TDSService;
 import eu.sqooss.service.updater.MetadataUpdater;
+import eu.sqooss.service.updater.PathStateIndex;
+import eu.sqooss.service.updater.PathStateIndex.PathState;
 import eu.sqooss.service.updater.Updater;
 import eu.sqooss.service.updater.UpdaterService.UpdaterStage;
 import eu.sqooss.service.util.FileUtils;
@@ -115,8 +115,8 @@ public class SVNUpdaterImpl implements MetadataUpdater {
     
     private boolean ommitFileless = false;
     
-    /* Avoid Hibernate thrashing by caching frequently accessed directories */
-    private LRUMap dirCache = new LRUMap(200);
+    /* Avoid Hibernate thrashing by caching directories and path states */
+    private PathStateIndex paths;
     
     /* Container for all project file records for each processed version*/
     private List<ProjectFile> versionFiles = new ArrayList<ProjectFile>();
@@ -182,12 +182,13 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         info("Running source update for project " + project.getName() 
                 + " ID " + project.getId());
         
-        CommitLog commitLog = null;
+        CommitLogIterator commitLog = null;
         
         try {
             // This is the last version we actually know about
             ProjectVersion latestVersion = ProjectVersion.getLastProjectVersion(project);
             scm = tds.getAccessor(project.getId()).getSCMAccessor();
+            paths = new PathStateIndex(project, latestVersion);
             if (latestVersion != null) {  
                 Revision r = scm.getHeadRevision();
                 
@@ -209,22 +210,30 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                 dbs.getQueryInterface().addRecord(zero);
                 ProjectFile root = new ProjectFile(zero);
                 root.setIsDirectory(true);
-                root.setDir(getDirectory("/", true));
+                root.setDir(paths.getDirectory("/", true));
                 root.setName("");
                 root.setState(ProjectFileState.added());
                 root.setValidFrom(zero);
                 root.setValidUntil(zero);
                 dbs.getQueryInterface().addRecord(root);
                 dbs.getSessionManager().commitDBSession();
+                paths.commit(zero, Collections.singletonList(root));
                 dbs.getSessionManager().startDBSession();
                 latestVersion = ProjectVersion.getLastProjectVersion(project);
             }
-            commitLog = scm.getCommitLog("", scm.getNextRevision(
-                    scm.newRevision(latestVersion.getRevisionId())), 
-                    scm.getHeadRevision());
-            info("New revisions: " + commitLog.size());
+            Revision from = scm.getNextRevision(
+                    scm.newRevision(latestVersion.getRevisionId()));
+            Revision to = scm.getHeadRevision();
+            /* Revision numbers are dense, as the log covers the whole repository */
+            long first = Long.parseLong(from.getUniqueId());
+            long total = Long.parseLong(to.getUniqueId()) - first + 1;
+            info("New revisions: " + total);
+            
+            /* Stream the log, instead of loading it all in memory */
+            commitLog = scm.getCommitLogIterator("", from, to);
             
-            for (Revision entry : commitLog) {
+            while (commitLog.hasNext()) {
+                Revision entry = commitLog.next();
                 versionFiles.clear();
                 commitLogEntry = entry;
                 ProjectVersion curVersion = processCommit(scm, entry);
@@ -275,6 +284,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                 		debug(msg + ". Removing");
                 		//dbs.deleteRecord(curVersion);
                 		dbs.getSessionManager().rollbackDBSession();
+                		paths.rollback();
                         dbs.getSessionManager().startDBSession();
                         continue;
                 	}
@@ -288,15 +298,15 @@ public class SVNUpdaterImpl implements MetadataUpdater {
               	updateValidUntil(curVersion);
 
                 numRevisions++;
-                dirCache.clear();
 
                 if (!dbs.getSessionManager().commitDBSession()) {
                     warn("Intermediate commit failed, failing update");
                     //restart();
                     return;
                 }
+                paths.commit(curVersion, versionFiles);
                 dbs.getSessionManager().startDBSession();
-                progress = (float) (((double)numRevisions / (double)commitLog.size()) * 100);
+                progress = (float) (((double)(Long.parseLong(entry.getUniqueId()) - first + 1) / (double)total) * 100);
             }
             info("Processed " + numRevisions + " revisions");
         } catch (InvalidRepositoryException e) {
@@ -305,7 +315,10 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         } catch (InvalidProjectRevisionException e) {
             err("Not such repository revision:" + e.getMessage());
             throw e;
-        } 
+        } finally {
+            if (commitLog != null)
+                commitLog.close();
+        }
         dbs.getSessionManager().commitDBSession();
     }
 
@@ -498,8 +511,8 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                 
             if (copyFrom.getIsDirectory()) {
                     
-                Directory from = getDirectory(cce.fromPath(), false);
-                Directory to = getDirectory(cce.toPath(), true);
+                Directory from = paths.getDirectory(cce.fromPath(), false);
+                Directory to = paths.getDirectory(cce.toPath(), true);
 
                 /*
                  * Recursively copy contents and mark files as modified
@@ -557,7 +570,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
              * entry, it may be shared with another project; this case is
              * examined upon entering
              */
-            if (toAdd.isDeleted() && (getDirectory(chPath, false) != null)) {
+            if (toAdd.isDeleted() && (paths.getDirectory(chPath, false) != null)) {
                 /*
                  * Directories, when they are deleted, do not have type DIR,
                  * but something else. So we need to check on deletes
@@ -685,10 +698,11 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         List<ProjectFile> chFiles = new ArrayList<ProjectFile>(this.versionFiles);
         
         for (ProjectFile pf : chFiles) {
-            ProjectFile parent = pf.getEnclosingDirectory();
+            String parentPath = pf.getDir().getPath();
+            PathState parent = paths.getCommitted(parentPath);
             
             //Parent dir not in the DB, it should be added in this revision
-            if (parent == null) {
+            if (parent == null || !parent.isDirectory()) {
               continue;  
             }
             
@@ -698,14 +712,14 @@ public class SVNUpdaterImpl implements MetadataUpdater {
                 //Only search directories
                 if (!dir.getIsDirectory())
                     continue;
-                if (parent.getFileName().equals(dir.getFileName())) {
+                if (parentPath.equals(dir.getFileName())) {
                     exists = true;
                     break;
                 }
             }
             if (!exists) {
                 //Create it!
-                addFile(pv, parent.getFileName(), ProjectFileState.modified(), 
+                addFile(pv, parentPath, ProjectFileState.modified(), 
                         SCMNodeType.DIR, null);
             }
         }
@@ -722,7 +736,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         String path = FileUtils.dirname(fPath);
         String fname = FileUtils.basename(fPath);
 
-        Directory dir = getDirectory(path, true);
+        Directory dir = paths.getDirectory(path, true);
         pf.setName(fname);
         pf.setDir(dir);
         pf.setState(status);
@@ -732,7 +746,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         
         if (t == SCMNodeType.DIR) {
             pf.setIsDirectory(true);
-            getDirectory(pf.getFileName(), true);
+            paths.getDirectory(pf.getFileName(), true);
         } else {
             pf.setIsDirectory(false);
         }
@@ -775,7 +789,7 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         
         debug("Deleting directory " + pf.getFileName() + " ID "
                 + pf.getId());
-        Directory d = getDirectory(pf.getFileName(), false);
+        Directory d = paths.getDirectory(pf.getFileName(), false);
         if (d == null) {
             warn("Directory entry " + pf.getFileName() + " in project "
                     + pf.getProjectVersion().getProject().getName()
@@ -850,8 +864,8 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         List<ProjectFile> fromPF = fromVersion.getFiles(from, ProjectVersion.MASK_DIRECTORIES);
         
         for (ProjectFile f : fromPF) {
-            handleDirCopy(pv, fromVersion, getDirectory(f.getFileName(), false), 
-                    getDirectory(to.getPath() + "/" + f.getName(), true), f);
+            handleDirCopy(pv, fromVersion, paths.getDirectory(f.getFileName(), false), 
+                    paths.getDirectory(to.getPath() + "/" + f.getName(), true), f);
         }
         
         fromPF = fromVersion.getFiles(from, ProjectVersion.MASK_FILES);
@@ -1019,24 +1033,6 @@ public class SVNUpdaterImpl implements MetadataUpdater {
         return prev;
     }
     
-    /**
-     * Wrapper around 
-     * {@link eu.sqooss.service.db.Directory#getDirectory(String, boolean)} 
-     * that uses the local object cache before hitting the DB. 
-     */
-    private Directory getDirectory(String path, boolean create) {
-       
-        Directory dir = null;
-        dir = (Directory) dirCache.get(path);
-        if (dir == null) {
-            dir = Directory.getDirectory(path, create);
-            if (dir != null) {
-                dirCache.put(path, dir);
-            }
-        } 
-        return dir;
-    }
-    
     @Override
     public String toString() {
         return "SVNUpdater - Project:{" + project +"}, " + progress + "%";